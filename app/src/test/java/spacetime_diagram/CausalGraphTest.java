@@ -0,0 +1,147 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the transitive reduction of the causal graph against the definition,
+ * looking at every pair and every event between them, on small diagrams
+ * 
+ * @author Jonathan Elsner
+ */
+class CausalGraphTest {
+
+    @Test
+    void transitiveReductionOfRandomEvents() throws InterruptedException {
+        Random random = new Random(1);
+
+        for (int trial = 0; trial < 50; trial++) {
+            List<SpacetimeEvent> events = new ArrayList<>();
+            for (int i = random.nextInt(60); i > 0; i--) {
+                events.add(new SpacetimeEvent("e", 100 * random.nextDouble(), 100 * random.nextDouble() - 50));
+            }
+
+            checkReduction(events, 1);
+        }
+    }
+
+    @Test
+    void transitiveReductionOfIntegerGrid() throws InterruptedException {
+        Random random = new Random(2);
+
+        // Few distinct coordinates, so many events share a u, a v, or a point, and
+        // many pairs are lightlike
+        for (int trial = 0; trial < 200; trial++) {
+            List<SpacetimeEvent> events = new ArrayList<>();
+            for (int i = random.nextInt(40); i > 0; i--) {
+                if (random.nextInt(8) == 0) {
+                    events.add(new SpacetimeTraveller("traveller", 0.5, random.nextInt(5), random.nextInt(5)));
+                } else {
+                    events.add(new SpacetimeEvent("e", random.nextInt(5), random.nextInt(7) - 3));
+                }
+            }
+
+            checkReduction(events, 1 + random.nextInt(2));
+        }
+    }
+
+    @Test
+    void graphOfStoreMatchesGraphOfList() throws InterruptedException {
+        Random random = new Random(3);
+
+        List<SpacetimeEvent> events = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            events.add(new SpacetimeEvent("e", random.nextInt(6), random.nextInt(6)));
+        }
+
+        SpacetimeEventStore store = new SpacetimeEventStore();
+        store.addAll(events);
+
+        int[][] fromList = new CausalGraph(events, 1).transitiveReduction(done -> {
+        });
+        int[][] fromStore = new CausalGraph(store, 1).transitiveReduction(done -> {
+        });
+        assertEquals(fromList.length, fromStore.length);
+        for (int i = 0; i < fromList.length; i++) {
+            assertArrayEquals(fromList[i], fromStore[i]);
+        }
+    }
+
+    /**
+     * Compares the reduction with the edges from each event to the events after
+     * it that have no other event in between
+     */
+    private static void checkReduction(List<SpacetimeEvent> events, double c) throws InterruptedException {
+        CausalGraph graph = new CausalGraph(events, c);
+        int n = graph.size();
+
+        double[] u = new double[n];
+        double[] v = new double[n];
+        for (int i = 0; i < n; i++) {
+            SpacetimeEvent evt = events.get(graph.getRow(i));
+            u[i] = c * evt.getRestT() - evt.getRestX();
+            v[i] = c * evt.getRestT() + evt.getRestX();
+        }
+
+        int[][] reduction = graph.transitiveReduction(done -> {
+        });
+        assertEquals(n, reduction.length);
+
+        for (int i = 0; i < n; i++) {
+            List<Integer> expected = new ArrayList<>();
+            for (int j = 0; j < n; j++) {
+                if (!precedes(u, v, i, j)) {
+                    continue;
+                }
+
+                boolean direct = true;
+                for (int k = 0; k < n && direct; k++) {
+                    direct = !(precedes(u, v, i, k) && precedes(u, v, k, j));
+                }
+                if (direct) {
+                    expected.add(j);
+                }
+            }
+
+            int[] actual = reduction[i].clone();
+            Arrays.sort(actual);
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), actual, "Edges from " + i);
+        }
+    }
+
+    /**
+     * Whether there is an edge from event i to event j: j is in the closed future
+     * light cone of i, with events at the same point ordered by number
+     */
+    private static boolean precedes(double[] u, double[] v, int i, int j) {
+        if (u[i] > u[j] || v[i] > v[j]) {
+            return false;
+        }
+
+        return u[i] < u[j] || v[i] < v[j] || i < j;
+    }
+}
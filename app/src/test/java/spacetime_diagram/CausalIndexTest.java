@@ -0,0 +1,147 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the light cones found by the index against a test of every event
+ * 
+ * @author Jonathan Elsner
+ */
+class CausalIndexTest {
+
+    @Test
+    void conesOfRandomPoints() {
+        Random random = new Random(1);
+
+        for (int trial = 0; trial < 50; trial++) {
+            List<SpacetimeEvent> events = new ArrayList<>();
+            for (int i = random.nextInt(200); i > 0; i--) {
+                events.add(new SpacetimeEvent("e", 100 * random.nextDouble(), 100 * random.nextDouble() - 50));
+            }
+
+            double c = 0.5 + random.nextDouble();
+            CausalIndex index = new CausalIndex(events, c);
+            for (int q = 0; q < 20; q++) {
+                checkCones(index, events, c, 100 * random.nextDouble(), 100 * random.nextDouble() - 50);
+            }
+        }
+    }
+
+    @Test
+    void conesOfIntegerGrid() {
+        Random random = new Random(2);
+
+        // Few distinct coordinates, so many events are on the edges of the cones or
+        // at the point itself
+        for (int trial = 0; trial < 200; trial++) {
+            List<SpacetimeEvent> events = new ArrayList<>();
+            for (int i = random.nextInt(80); i > 0; i--) {
+                if (random.nextInt(8) == 0) {
+                    events.add(new SpacetimeTraveller("traveller", 0.5, random.nextInt(5), random.nextInt(5)));
+                } else {
+                    events.add(new SpacetimeEvent("e", random.nextInt(5), random.nextInt(7) - 3));
+                }
+            }
+
+            SpacetimeEventStore store = new SpacetimeEventStore();
+            store.addAll(events);
+
+            double c = 1 + random.nextInt(2);
+            CausalIndex index = new CausalIndex(trial % 2 == 0 ? events : store, c);
+            for (SpacetimeEvent evt : events) {
+                checkCones(index, events, c, evt.getRestT(), evt.getRestX());
+            }
+            checkCones(index, events, c, random.nextInt(5), random.nextInt(7) - 3);
+        }
+    }
+
+    @Test
+    void conesOfIndexBuiltInParallel() {
+        Random random = new Random(3);
+
+        int n = CausalIndex.PARALLEL_THRESHOLD + 1000;
+        double[] t = new double[n];
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            t[i] = random.nextInt(1000);
+            x[i] = random.nextInt(1000) - 500;
+        }
+
+        // Every tenth row is left out, as travellers are
+        CausalIndex index = new CausalIndex(t, x, n, i -> i % 10 != 0, 1);
+        for (int q = 0; q < 20; q++) {
+            double t0 = random.nextInt(1000);
+            double x0 = random.nextInt(1000) - 500;
+
+            BitSet future = new BitSet(n);
+            BitSet past = new BitSet(n);
+            for (int i = 0; i < n; i++) {
+                if (i % 10 != 0) {
+                    future.set(i, inFuture(t[i], x[i], t0, x0, 1));
+                    past.set(i, inFuture(t0, x0, t[i], x[i], 1));
+                }
+            }
+
+            assertEquals(future, index.future(t0, x0));
+            assertEquals(past, index.past(t0, x0));
+        }
+    }
+
+    /**
+     * Compares the cones of a point with a test of every event that is not a
+     * traveller
+     */
+    private static void checkCones(CausalIndex index, List<SpacetimeEvent> events, double c, double t, double x) {
+        BitSet future = new BitSet();
+        BitSet past = new BitSet();
+        BitSet elsewhere = new BitSet();
+
+        for (int i = 0; i < events.size(); i++) {
+            SpacetimeEvent evt = events.get(i);
+            if (evt instanceof SpacetimeTraveller) {
+                continue;
+            }
+
+            boolean inFuture = inFuture(evt.getRestT(), evt.getRestX(), t, x, c);
+            boolean inPast = inFuture(t, x, evt.getRestT(), evt.getRestX(), c);
+            future.set(i, inFuture);
+            past.set(i, inPast);
+            elsewhere.set(i, !inFuture && !inPast);
+        }
+
+        assertEquals(future, index.future(t, x), "Future of (" + t + ", " + x + ")");
+        assertEquals(past, index.past(t, x), "Past of (" + t + ", " + x + ")");
+        assertEquals(elsewhere, index.elsewhere(t, x), "Elsewhere of (" + t + ", " + x + ")");
+    }
+
+    /**
+     * Whether the first point is in the closed future light cone of the second
+     */
+    private static boolean inFuture(double t, double x, double t0, double x0, double c) {
+        return c * t - x >= c * t0 - x0 && c * t + x >= c * t0 + x0;
+    }
+}
@@ -0,0 +1,221 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Records random edits to a diagram in a journal, and checks that recovering
+ * the journal gives back the diagram
+ * 
+ * @author Jonathan Elsner
+ */
+class EditJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoverReplaysEveryEdit() throws IOException, InterruptedException {
+        Random random = new Random(1);
+        File snapshot = dir.resolve("autosave.diagram").toFile();
+        File journalFile = dir.resolve("autosave.journal").toFile();
+
+        SpacetimeEventStore diagram = new SpacetimeEventStore();
+        for (int i = 0; i < 20; i++) {
+            diagram.add(randomEvent(random));
+        }
+
+        EditJournal journal = new EditJournal(snapshot, journalFile, diagram, ex -> {
+            throw new AssertionError(ex);
+        });
+        for (int edit = 0; edit < 2000; edit++) {
+            edit(random, diagram, journal);
+
+            if (edit % 500 == 499) {
+                journal.compact(diagram);
+            }
+        }
+        journal.close();
+
+        assertFalse(journal.hasFailed());
+        assertSameEvents(diagram, EditJournal.recover(snapshot, journalFile));
+    }
+
+    @Test
+    void recoverIgnoresPartlyWrittenFrame() throws IOException, InterruptedException {
+        Random random = new Random(2);
+        File snapshot = dir.resolve("autosave.diagram").toFile();
+        File journalFile = dir.resolve("autosave.journal").toFile();
+
+        SpacetimeEventStore diagram = new SpacetimeEventStore();
+        for (int i = 0; i < 20; i++) {
+            diagram.add(randomEvent(random));
+        }
+
+        EditJournal journal = new EditJournal(snapshot, journalFile, diagram, ex -> {
+            throw new AssertionError(ex);
+        });
+        for (int edit = 0; edit < 100; edit++) {
+            edit(random, diagram, journal);
+        }
+
+        // The last edit is an add, which has the longest frame
+        SpacetimeEventStore before = new SpacetimeEventStore();
+        before.addAll(diagram);
+        long lengthBefore = journal.getLength();
+
+        SpacetimeEvent added = randomEvent(random);
+        diagram.add(3, added);
+        journal.recordAdd(3, added);
+        long lengthAfter = journal.getLength();
+        journal.close();
+
+        assertSameEvents(diagram, EditJournal.recover(snapshot, journalFile));
+
+        // Cut the journal anywhere in the last frame, as a crash while writing it
+        // would. The frame is ignored, and so are the last bytes of its CRC.
+        long header = journalFile.length() - lengthAfter;
+        for (long cut = lengthAfter - 1; cut >= lengthBefore; cut -= 7) {
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+                file.setLength(header + cut);
+            }
+
+            assertSameEvents(before, EditJournal.recover(snapshot, journalFile));
+        }
+    }
+
+    @Test
+    void recoverIgnoresFrameWithBadChecksum() throws IOException, InterruptedException {
+        File snapshot = dir.resolve("autosave.diagram").toFile();
+        File journalFile = dir.resolve("autosave.journal").toFile();
+
+        SpacetimeEventStore diagram = new SpacetimeEventStore();
+        diagram.add(new SpacetimeEvent("a", 1, 2));
+
+        EditJournal journal = new EditJournal(snapshot, journalFile, diagram, ex -> {
+            throw new AssertionError(ex);
+        });
+        SpacetimeEvent added = new SpacetimeEvent("b", 3, 4);
+        journal.recordAdd(1, added);
+        journal.close();
+
+        // Change the last byte of the name
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.seek(file.length() - 5);
+            file.write('c');
+        }
+
+        assertSameEvents(diagram, EditJournal.recover(snapshot, journalFile));
+    }
+
+    @Test
+    void discardDeletesBothFiles() throws InterruptedException {
+        File snapshot = dir.resolve("autosave.diagram").toFile();
+        File journalFile = dir.resolve("autosave.journal").toFile();
+
+        SpacetimeEventStore diagram = new SpacetimeEventStore();
+        diagram.add(new SpacetimeEvent("a", 1, 2));
+
+        EditJournal journal = new EditJournal(snapshot, journalFile, diagram, ex -> {
+            throw new AssertionError(ex);
+        });
+        journal.recordAdd(1, new SpacetimeEvent("b", 3, 4));
+        assertTrue(journal.discard(10_000));
+
+        assertFalse(EditJournal.exists(snapshot, journalFile));
+    }
+
+    /**
+     * Makes a random change to the diagram and records it in the journal
+     */
+    private static void edit(Random random, SpacetimeEventStore diagram, EditJournal journal) {
+        int i = diagram.isEmpty() ? -1 : random.nextInt(diagram.size());
+        int operation = i < 0 ? 0 : random.nextInt(5);
+
+        if (operation == 0) {
+            int index = random.nextInt(diagram.size() + 1);
+            SpacetimeEvent evt = randomEvent(random);
+            diagram.add(index, evt);
+            journal.recordAdd(index, evt);
+        } else if (operation == 1) {
+            journal.recordRemove(i, diagram.remove(i).getUUID());
+        } else if (operation == 2) {
+            String name = "renamed " + random.nextInt(10);
+            diagram.get(i).setName(name);
+            journal.recordRename(i, diagram.get(i).getUUID(), name);
+        } else if (diagram.getKind(i) == SpacetimeEventStore.PIECEWISE) {
+            // Piecewise travellers are moved by replacing their worldline, which is
+            // recorded as adding them again
+            PiecewiseTraveller traveller = (PiecewiseTraveller) diagram.get(i);
+            traveller.setWorldline(traveller.getWorldline().translate(1, -1));
+            journal.recordAdd(i, traveller);
+        } else if (operation == 3 || diagram.getKind(i) == SpacetimeEventStore.EVENT) {
+            double t = random.nextDouble();
+            double x = random.nextDouble();
+            diagram.get(i).setRestCoordinates(t, x);
+            journal.recordMove(i, diagram.get(i).getUUID(), t, x);
+        } else {
+            double beta = random.nextDouble() - 0.5;
+            ((SpacetimeTraveller) diagram.get(i)).setRestBeta(beta);
+            journal.recordBeta(i, diagram.get(i).getUUID(), beta);
+        }
+    }
+
+    private static SpacetimeEvent randomEvent(Random random) {
+        String name = "event " + random.nextInt(10) + " \u00e9";
+        double t = 100 * random.nextDouble();
+        double x = 100 * random.nextDouble() - 50;
+
+        switch (random.nextInt(3)) {
+            case 0:
+                return new SpacetimeEvent(name, t, x);
+            case 1:
+                return new SpacetimeTraveller(name, random.nextDouble() - 0.5, t, x);
+            default:
+                double[] times = { t, t + 1 + random.nextInt(5), t + 10 };
+                double[] betas = { 0.5, -0.25, random.nextDouble() - 0.5 };
+                return new PiecewiseTraveller(name, new PiecewiseWorldline(times, betas, x));
+        }
+    }
+
+    static void assertSameEvents(SpacetimeEventStore expected, SpacetimeEventStore actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getUUID(i), actual.getUUID(i), "UUID of event " + i);
+            assertEquals(expected.getKind(i), actual.getKind(i), "Kind of event " + i);
+            assertEquals(expected.getName(i), actual.getName(i), "Name of event " + i);
+            assertEquals(expected.getRestT(i), actual.getRestT(i), "t of event " + i);
+            assertEquals(expected.getRestX(i), actual.getRestX(i), "x of event " + i);
+            assertEquals(expected.getRestBeta(i), actual.getRestBeta(i), "Speed of event " + i);
+            assertEquals(expected.getWorldline(i), actual.getWorldline(i), "Worldline of event " + i);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saves diagrams in the binary format and checks that reading them gives back
+ * the same events, including the segment table of piecewise travellers
+ * 
+ * @author Jonathan Elsner
+ */
+class EventIOTest {
+
+    // Where the records start, and how long each is
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 48;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripStore() throws IOException {
+        File file = dir.resolve("diagram.diagram").toFile();
+        SpacetimeEventStore diagram = randomDiagram(new Random(1), 500);
+
+        EventIO.saveSpacetimeEvents(file, diagram, done -> {
+        });
+
+        EditJournalTest.assertSameEvents(diagram, EventIO.readSpacetimeEventStore(file));
+    }
+
+    @Test
+    void roundTripList() throws IOException {
+        File file = dir.resolve("diagram.diagram").toFile();
+        SpacetimeEventStore diagram = randomDiagram(new Random(2), 100);
+
+        // Events that are not in a store are copied into one to be written
+        List<SpacetimeEvent> events = new ArrayList<>();
+        for (int i = 0; i < diagram.size(); i++) {
+            events.add(diagram.get(i));
+        }
+        assertTrue(EventIO.saveSpacetimeEvents(file, events));
+
+        EditJournalTest.assertSameEvents(diagram, EventIO.readSpacetimeEventStore(file));
+    }
+
+    @Test
+    void roundTripEmpty() throws IOException {
+        File file = dir.resolve("diagram.diagram").toFile();
+
+        EventIO.saveSpacetimeEvents(file, new SpacetimeEventStore(), done -> {
+        });
+
+        assertEquals(0, EventIO.readSpacetimeEventStore(file).size());
+    }
+
+    @Test
+    void readInChunks() throws IOException {
+        File file = dir.resolve("diagram.diagram").toFile();
+        SpacetimeEventStore diagram = randomDiagram(new Random(3), 3000);
+
+        EventIO.saveSpacetimeEvents(file, diagram, done -> {
+        });
+
+        SpacetimeEventStore read = new SpacetimeEventStore();
+        assertTrue(EventIO.readSpacetimeEvents(file, 100, chunk -> {
+            assertTrue(chunk.size() <= 100);
+            read.addAll(chunk);
+        }));
+
+        EditJournalTest.assertSameEvents(diagram, read);
+    }
+
+    @Test
+    void truncatedFileIsNotRead() throws IOException {
+        File file = dir.resolve("diagram.diagram").toFile();
+        SpacetimeEventStore diagram = randomDiagram(new Random(4), 50);
+
+        EventIO.saveSpacetimeEvents(file, diagram, done -> {
+        });
+
+        // Cut into the segment table at the end of the file
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(out.length() - 4);
+        }
+
+        assertThrows(IOException.class, () -> EventIO.readSpacetimeEventStore(file));
+    }
+
+    @Test
+    void duplicateUUIDIsNotRead() throws IOException {
+        File file = dir.resolve("diagram.diagram").toFile();
+        SpacetimeEventStore diagram = randomDiagram(new Random(5), 10);
+
+        EventIO.saveSpacetimeEvents(file, diagram, done -> {
+        });
+
+        // Give the second record the UUID of the first
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            byte[] uuid = new byte[16];
+            out.seek(HEADER_SIZE);
+            out.readFully(uuid);
+            out.seek(HEADER_SIZE + RECORD_SIZE);
+            out.write(uuid);
+        }
+
+        assertThrows(IOException.class, () -> EventIO.readSpacetimeEventStore(file));
+    }
+
+    /**
+     * Makes a diagram of events, travellers and piecewise travellers with up to
+     * a few dozen segments, sharing a few names
+     */
+    private static SpacetimeEventStore randomDiagram(Random random, int n) {
+        SpacetimeEventStore diagram = new SpacetimeEventStore(n);
+
+        for (int i = 0; i < n; i++) {
+            String name = random.nextInt(4) == 0 ? "event " + i + " \u00e9\u4e8b" : "shared " + random.nextInt(5);
+            double t = 1000 * random.nextDouble() - 500;
+            double x = 1000 * random.nextDouble() - 500;
+
+            int kind = random.nextInt(3);
+            if (kind == 0) {
+                diagram.add(new SpacetimeEvent(name, t, x));
+            } else if (kind == 1) {
+                diagram.add(new SpacetimeTraveller(name, 1.8 * random.nextDouble() - 0.9, t, x));
+            } else {
+                int segments = 1 + random.nextInt(40);
+                double[] times = new double[segments];
+                double[] betas = new double[segments];
+                for (int s = 0; s < segments; s++) {
+                    times[s] = t + s + random.nextDouble();
+                    betas[s] = 1.8 * random.nextDouble() - 0.9;
+                }
+                times[0] = t;
+
+                diagram.add(new PiecewiseTraveller(name, new PiecewiseWorldline(times, betas, x)));
+            }
+        }
+
+        return diagram;
+    }
+}
@@ -0,0 +1,187 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the meetings found by the sweep against the meeting time of every pair
+ * of travellers
+ * 
+ * @author Jonathan Elsner
+ */
+class WorldlineIntersectionsTest {
+
+    private static final double[] GRID_BETAS = { -0.5, -0.25, 0, 0.25, 0.5 };
+
+    @Test
+    void meetingsOfRandomTravellers() {
+        Random random = new Random(1);
+
+        for (int trial = 0; trial < 100; trial++) {
+            List<SpacetimeEvent> events = new ArrayList<>();
+            for (int i = random.nextInt(40); i > 0; i--) {
+                events.add(new SpacetimeTraveller("traveller", 1.8 * random.nextDouble() - 0.9,
+                        100 * random.nextDouble() - 50, 100 * random.nextDouble() - 50));
+            }
+
+            checkMeetings(events, -20, 20, 1e-6);
+        }
+    }
+
+    @Test
+    void meetingsOfIntegerGrid() {
+        Random random = new Random(2);
+
+        // Few speeds and positions, so many travellers share a speed or a place, and
+        // several meet at once, often right at the ends of the window
+        for (int trial = 0; trial < 300; trial++) {
+            List<SpacetimeEvent> events = new ArrayList<>();
+            for (int i = random.nextInt(30); i > 0; i--) {
+                if (random.nextInt(8) == 0) {
+                    events.add(new SpacetimeEvent("e", random.nextInt(5), random.nextInt(5)));
+                } else {
+                    events.add(new SpacetimeTraveller("traveller", GRID_BETAS[random.nextInt(GRID_BETAS.length)], 0,
+                            random.nextInt(7) - 3));
+                }
+            }
+
+            int tMin = random.nextInt(9) - 4;
+            checkMeetings(events, tMin, tMin + random.nextInt(5), 0);
+        }
+    }
+
+    @Test
+    void meetingsFromStoreMatchList() {
+        Random random = new Random(3);
+
+        List<SpacetimeEvent> events = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            events.add(new SpacetimeTraveller("t" + i, GRID_BETAS[random.nextInt(GRID_BETAS.length)], 0,
+                    random.nextInt(7) - 3));
+        }
+
+        SpacetimeEventStore store = new SpacetimeEventStore();
+        store.addAll(events);
+
+        assertEquals(new WorldlineIntersections(events).findEvents(-4, 4).toString(),
+                new WorldlineIntersections(store).findEvents(-4, 4).toString());
+    }
+
+    @Test
+    void timeRangeOfIntegerGrid() {
+        Random random = new Random(4);
+
+        for (int trial = 0; trial < 300; trial++) {
+            List<SpacetimeEvent> events = new ArrayList<>();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                events.add(new SpacetimeTraveller("traveller", GRID_BETAS[random.nextInt(GRID_BETAS.length)],
+                        random.nextInt(5), random.nextInt(7) - 3));
+            }
+
+            WorldlineIntersections intersections = new WorldlineIntersections(events);
+            double first = Double.POSITIVE_INFINITY;
+            double last = Double.NEGATIVE_INFINITY;
+            for (SpacetimeEvent a : events) {
+                for (SpacetimeEvent b : events) {
+                    double betaA = ((SpacetimeTraveller) a).getRestBeta();
+                    double betaB = ((SpacetimeTraveller) b).getRestBeta();
+                    if (betaA < betaB) {
+                        double t = (a.getRestX() - betaA * a.getRestT() - b.getRestX() + betaB * b.getRestT())
+                                / (betaB - betaA);
+                        first = Math.min(first, t);
+                        last = Math.max(last, t);
+                    }
+                }
+            }
+
+            double[] range = intersections.getTimeRange();
+            if (first > last) {
+                assertNull(range);
+            } else {
+                assertEquals(first, range[0], 1e-9);
+                assertEquals(last, range[1], 1e-9);
+            }
+        }
+    }
+
+    /**
+     * Compares the meetings found in the window with the pairs of travellers whose
+     * worldlines cross in it. Pairs meeting within {@code tolerance} of either end
+     * may or may not be found.
+     */
+    private static void checkMeetings(List<SpacetimeEvent> events, double tMin, double tMax, double tolerance) {
+        WorldlineIntersections intersections = new WorldlineIntersections(events);
+        int n = intersections.size();
+
+        double[] intercepts = new double[n];
+        double[] betas = new double[n];
+        for (int i = 0; i < n; i++) {
+            SpacetimeTraveller traveller = (SpacetimeTraveller) events.get(intersections.getRow(i));
+            betas[i] = traveller.getRestBeta();
+            intercepts[i] = traveller.getRestX() - betas[i] * traveller.getRestT();
+        }
+
+        Set<Long> found = new HashSet<>();
+        double[] last = { Double.NEGATIVE_INFINITY };
+        long count = intersections.find(tMin, tMax, (first, second, t, x) -> {
+            assertTrue(found.add(pair(first, second)), "Met twice: " + first + " and " + second);
+            assertTrue(tMin <= t && t <= tMax, "Outside the window: " + t);
+            assertTrue(t >= last[0], "Out of order: " + t + " after " + last[0]);
+            last[0] = t;
+
+            // The traveller on the left is the one catching up
+            assertTrue(betas[first] > betas[second]);
+            double scale = 1 + Math.abs(x);
+            assertEquals(intercepts[first] + betas[first] * t, x, 1e-9 * scale);
+            assertEquals(intercepts[second] + betas[second] * t, x, 1e-9 * scale);
+        });
+        assertEquals(found.size(), count);
+
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                if (betas[a] == betas[b]) {
+                    assertFalse(found.contains(pair(a, b)), "Same speed but met: " + a + " and " + b);
+                    continue;
+                }
+
+                double t = (intercepts[a] - intercepts[b]) / (betas[b] - betas[a]);
+                boolean inside = tMin + tolerance <= t && t <= tMax - tolerance;
+                boolean outside = t < tMin - tolerance || tMax + tolerance < t;
+                if (inside || outside) {
+                    assertEquals(inside, found.contains(pair(a, b)), "Meeting of " + a + " and " + b + " at " + t);
+                }
+            }
+        }
+    }
+
+    private static long pair(int a, int b) {
+        return (long) Math.min(a, b) << 32 | Math.max(a, b);
+    }
+}
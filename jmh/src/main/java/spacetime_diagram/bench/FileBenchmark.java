@@ -0,0 +1,93 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package spacetime_diagram.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import spacetime_diagram.EventIO;
+import spacetime_diagram.SpacetimeEvent;
+import spacetime_diagram.SpacetimeEventStore;
+
+/**
+ * Saving and opening a large diagram file
+ * 
+ * @author Jonathan Elsner
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileBenchmark {
+
+    @Param({ "1000000" })
+    private int size;
+
+    private SpacetimeEventStore events;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        events = RandomDiagrams.randomEvents(size, 3);
+
+        file = File.createTempFile("benchmark", ".diagram");
+        if (!EventIO.saveSpacetimeEvents(file, events)) {
+            throw new IOException("Could not save " + file);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        if (!EventIO.saveSpacetimeEvents(file, events)) {
+            throw new IOException("Could not save " + file);
+        }
+        return file.length();
+    }
+
+    @Benchmark
+    public Collection<SpacetimeEvent> open() {
+        return EventIO.readSpacetimeEvents(file);
+    }
+
+    @Benchmark
+    public boolean openInChunks(Blackhole blackhole) {
+        return EventIO.readSpacetimeEvents(file, 1 << 16, blackhole::consume);
+    }
+}
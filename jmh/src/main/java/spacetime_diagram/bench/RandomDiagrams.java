@@ -0,0 +1,60 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package spacetime_diagram.bench;
+
+import java.util.Random;
+
+import spacetime_diagram.SpacetimeEvent;
+import spacetime_diagram.SpacetimeEventStore;
+import spacetime_diagram.SpacetimeTraveller;
+
+/**
+ * Builds the diagrams used by the benchmarks
+ * 
+ * @author Jonathan Elsner
+ */
+final class RandomDiagrams {
+
+    private RandomDiagrams() {
+    }
+
+    /**
+     * Creates a diagram of events scattered around the visible part of the
+     * diagram, one in twenty of which are travellers
+     * 
+     * @param n    the number of events
+     * @param seed the seed for the random numbers, so runs are comparable
+     * @return the events
+     */
+    static SpacetimeEventStore randomEvents(int n, long seed) {
+        Random random = new Random(seed);
+        SpacetimeEventStore events = new SpacetimeEventStore(n);
+
+        for (int i = 0; i < n; i++) {
+            double t = 10 + random.nextGaussian() * 5;
+            double x = random.nextGaussian() * 8;
+
+            if (i % 20 == 0) {
+                events.add(new SpacetimeTraveller("Traveller " + i % 100, random.nextDouble() * 1.6 - 0.8, t, x));
+            } else {
+                events.add(new SpacetimeEvent("Event " + i % 100, t, x));
+            }
+        }
+
+        return events;
+    }
+}
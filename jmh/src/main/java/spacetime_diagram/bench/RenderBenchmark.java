@@ -0,0 +1,92 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package spacetime_diagram.bench;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spacetime_diagram.gui.Diagram;
+
+/**
+ * Drawing the whole diagram into an image, as when exporting it. The observer
+ * speed changes on every draw, so every draw transforms the events again.
+ * Drawing is benchmarked without a display, in headless mode.
+ * 
+ * @author Jonathan Elsner
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    // Observer speeds cycled through
+    private static final double[] BETAS = { -0.6, -0.2, 0.2, 0.6 };
+
+    @Param({ "1000", "100000", "1000000" })
+    private int size;
+
+    private Diagram diagram;
+    private Dimension dimension;
+    private BufferedImage image;
+    private int next;
+
+    @Setup
+    public void setup() {
+        diagram = new Diagram(RandomDiagrams.randomEvents(size, 2));
+        dimension = diagram.getPreferredSize();
+        diagram.setSize(dimension);
+
+        image = new BufferedImage(dimension.width, dimension.height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @TearDown
+    public void tearDown() {
+        diagram.dispose();
+    }
+
+    @Benchmark
+    public int render() {
+        diagram.setReferenceFrameBeta(BETAS[next++ % BETAS.length]);
+
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.white);
+        g2d.fillRect(0, 0, dimension.width, dimension.height);
+        diagram.paintDiagram(g2d);
+        g2d.dispose();
+
+        return image.getRGB(dimension.width / 2, dimension.height / 2);
+    }
+}
@@ -0,0 +1,105 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package spacetime_diagram.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spacetime_diagram.LorentzFrame;
+import spacetime_diagram.LorentzTransform;
+
+/**
+ * Scalar Lorentz transformations, one call per coordinate, against the batch
+ * transformations
+ * 
+ * @author Jonathan Elsner
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+    private static final double BETA = 0.6;
+
+    @Param({ "1000000" })
+    private int size;
+
+    private final LorentzFrame frame = new LorentzFrame(BETA);
+
+    private double[] x;
+    private double[] t;
+    private double[] xOut;
+    private double[] tOut;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        x = new double[size];
+        t = new double[size];
+        xOut = new double[size];
+        tOut = new double[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = random.nextGaussian() * 10;
+            t[i] = random.nextGaussian() * 10;
+        }
+    }
+
+    @Benchmark
+    public double[] scalarLorentzTransform() {
+        for (int i = 0; i < size; i++) {
+            xOut[i] = LorentzTransform.xTransform(BETA, x[i], t[i]);
+            tOut[i] = LorentzTransform.tTransform(BETA, x[i], t[i]);
+        }
+        return xOut;
+    }
+
+    @Benchmark
+    public double[] scalarLorentzFrame() {
+        for (int i = 0; i < size; i++) {
+            xOut[i] = frame.transformX(x[i], t[i]);
+            tOut[i] = frame.transformT(x[i], t[i]);
+        }
+        return xOut;
+    }
+
+    @Benchmark
+    public double[] batchLorentzTransform() {
+        LorentzTransform.transform(BETA, x, t, xOut, tOut, size);
+        return xOut;
+    }
+
+    @Benchmark
+    public double[] batchLorentzFrame() {
+        frame.transform(x, t, xOut, tOut, 0, size);
+        return xOut;
+    }
+}
@@ -0,0 +1,421 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import spacetime_diagram.gui.DiagramRenderer;
+import spacetime_diagram.gui.SvgExporter;
+import spacetime_diagram.gui.TiledPngExporter;
+
+/**
+ * Exports images of spacetime diagrams from the command line, without a
+ * display. Every diagram file given is drawn for every observer speed given,
+ * with the images drawn in parallel on all cores.
+ * 
+ * <pre>
+ * java spacetime_diagram.BatchRenderer [options] file.diagram...
+ * 
+ * --betas LIST    observer speeds, as a comma separated list of speeds or
+ *                 ranges written start:end:step (default 0)
+ * --out DIR       where to write the images (default the current directory)
+ * --size WxH      size of the images in pixels (default 770x520)
+ * --scale S       draw the PNG images S times larger, in strips so that
+ *                 images of any size fit in memory (default 1)
+ * --threads N     number of images drawn at once (default one per core)
+ * --light-cone    draw a light cone from the origin
+ * --no-labels     don't label the objects
+ * --no-lod        draw every event, even in crowded areas
+ * --svg           write SVG images instead of PNG images
+ * </pre>
+ * 
+ * Each image is written to {@code DIR/NAME_beta+0.500.png}, where
+ * {@code NAME} is the name of the diagram file without its extension, so two
+ * diagram files with the same name in different folders can't be drawn at once,
+ * and neither can two speeds that round to the same three decimals. SVG images
+ * are written straight to the file as they are drawn, so they can be much
+ * larger than would fit in memory as PNG images.
+ * 
+ * @author Jonathan Elsner
+ * @see DiagramRenderer
+ * @see Main
+ */
+public class BatchRenderer {
+
+    private static final String USAGE = "Usage: java spacetime_diagram.BatchRenderer [--betas LIST] [--out DIR] "
+            + "[--size WxH] [--scale S] [--threads N] [--light-cone] [--no-labels] [--no-lod] [--svg] file.diagram...";
+
+    // Number of diagram files per thread that may be open at once, which bounds
+    // how much memory the events being drawn take up
+    private static final int FILES_PER_THREAD = 2;
+
+    private final List<Double> betas = new ArrayList<>();
+    private final List<File> files = new ArrayList<>();
+    private File outDir = new File(".");
+    private int width = DiagramRenderer.DEFAULT_WIDTH;
+    private int height = DiagramRenderer.DEFAULT_HEIGHT;
+    private double scale = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean drawLightCone = false;
+    private boolean drawLabels = true;
+    private boolean levelOfDetail = true;
+    private boolean svg = false;
+
+    // One image per thread, reused for every image that thread draws
+    private final ThreadLocal<BufferedImage> images = new ThreadLocal<>();
+
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Export images of the diagram files in the arguments
+     * 
+     * @param args the options and diagram files, as described above
+     */
+    public static void main(String[] args) {
+        // Must be set before anything from AWT is loaded
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        BatchRenderer batch = new BatchRenderer();
+
+        try {
+            batch.parseArguments(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        System.exit(batch.run() ? 0 : 1);
+    }
+
+    /**
+     * Reads the options and files from the command line arguments
+     * 
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+
+            switch (arg) {
+            case "--betas":
+                parseBetas(value(args, ++i, arg));
+                break;
+            case "--out":
+                outDir = new File(value(args, ++i, arg));
+                break;
+            case "--size":
+                String[] size = value(args, ++i, arg).split("x");
+                if (size.length != 2) {
+                    throw new IllegalArgumentException("Size must be written WxH: " + args[i]);
+                }
+                width = parseInt(size[0], arg);
+                height = parseInt(size[1], arg);
+                break;
+            case "--scale":
+                scale = parseDouble(value(args, ++i, arg));
+                if (!(scale > 0)) {
+                    throw new IllegalArgumentException("Scale must be positive: " + scale);
+                }
+                break;
+            case "--threads":
+                threads = parseInt(value(args, ++i, arg), arg);
+                if (threads < 1) {
+                    throw new IllegalArgumentException("Threads < 1: " + threads);
+                }
+                break;
+            case "--light-cone":
+                drawLightCone = true;
+                break;
+            case "--no-labels":
+                drawLabels = false;
+                break;
+            case "--no-lod":
+                levelOfDetail = false;
+                break;
+            case "--svg":
+                svg = true;
+                break;
+            default:
+                if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+                files.add(new File(arg));
+            }
+        }
+
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No diagram files given");
+        }
+
+        if (betas.isEmpty()) {
+            betas.add(0.0);
+        }
+
+        // Stop before drawing anything if one image would overwrite another
+        Map<String, File> names = new HashMap<>();
+        for (File file : files) {
+            File other = names.put(baseName(file), file);
+            if (other != null) {
+                throw new IllegalArgumentException("Images of " + other + " and " + file + " would have the same name");
+            }
+        }
+
+        Map<String, Double> labels = new HashMap<>();
+        for (double beta : betas) {
+            Double other = labels.put(betaLabel(beta), beta);
+            if (other != null) {
+                throw new IllegalArgumentException(
+                        "Images for speeds " + other + " and " + beta + " would have the same name");
+            }
+        }
+    }
+
+    /**
+     * Adds the speeds in a list like {@code -0.5,0,0.1:0.9:0.2} to the speeds to
+     * draw
+     */
+    private void parseBetas(String list) {
+        for (String item : list.split(",")) {
+            String[] range = item.split(":");
+
+            if (range.length == 1) {
+                addBeta(parseDouble(range[0]));
+            } else if (range.length == 3) {
+                double start = parseDouble(range[0]);
+                double end = parseDouble(range[1]);
+                double step = parseDouble(range[2]);
+
+                if (!(step > 0)) {
+                    throw new IllegalArgumentException("Step must be positive: " + item);
+                }
+                if (!(end >= start)) {
+                    throw new IllegalArgumentException("Range ends before it starts: " + item);
+                }
+
+                // Count the steps instead of adding them up, so rounding doesn't skip the end
+                long steps = (long) Math.floor((end - start) / step + 1e-9);
+                for (long k = 0; k <= steps; k++) {
+                    // Round off the error in the last few digits, so 0 isn't written as -0.000
+                    addBeta(Math.round((start + k * step) * 1e12) / 1e12);
+                }
+            } else {
+                throw new IllegalArgumentException("Speeds must be written beta or start:end:step: " + item);
+            }
+        }
+    }
+
+    private void addBeta(double beta) {
+        if (!(Math.abs(beta) <= 1)) {
+            throw new IllegalArgumentException("|beta| > 1 or NaN: " + beta);
+        }
+
+        betas.add(beta);
+    }
+
+    /**
+     * Draws and writes all of the images
+     * 
+     * @return {@code true} if every image was written
+     */
+    private boolean run() {
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            System.err.println("Could not create " + outDir);
+            return false;
+        }
+
+        long start = System.nanoTime();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore openFiles = new Semaphore(threads * FILES_PER_THREAD);
+
+        try {
+            for (File file : files) {
+                openFiles.acquireUninterruptibly();
+
+                // Read each file once, then draw it for every speed
+                CompletableFuture<DiagramRenderer> loaded = CompletableFuture.supplyAsync(() -> load(file), pool);
+
+                CompletableFuture<?>[] rendered = new CompletableFuture<?>[betas.size()];
+                for (int i = 0; i < rendered.length; i++) {
+                    double beta = betas.get(i);
+                    rendered[i] = loaded.thenAcceptAsync(renderer -> write(renderer, file, beta), pool)
+                            .whenComplete((result, ex) -> {
+                                if (ex != null) {
+                                    failed.incrementAndGet();
+                                }
+                            });
+                }
+
+                CompletableFuture.allOf(rendered).whenComplete((result, ex) -> {
+                    openFiles.release();
+
+                    if (ex != null) {
+                        System.err.println(file + ": " + ex.getCause().getMessage());
+                    }
+                });
+            }
+
+            // Wait for the last files to finish
+            openFiles.acquireUninterruptibly(threads * FILES_PER_THREAD);
+        } finally {
+            pool.shutdown();
+        }
+
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        System.out.printf(Locale.ROOT, "Wrote %d images from %d files in %.1f s%n", written.get(), files.size(),
+                (System.nanoTime() - start) / 1e9);
+
+        if (failed.get() > 0) {
+            System.err.println(failed.get() + " images could not be written");
+        }
+
+        return failed.get() == 0;
+    }
+
+    /**
+     * Reads a diagram file and gets it ready to draw
+     */
+    private DiagramRenderer load(File file) {
+        Collection<SpacetimeEvent> events = EventIO.readSpacetimeEvents(file);
+
+        if (events == null) {
+            throw new IllegalArgumentException("Could not read diagram");
+        }
+
+        return new DiagramRenderer(events, width, height, drawLightCone, drawLabels, levelOfDetail);
+    }
+
+    /**
+     * Draws a diagram for one observer and writes it as a PNG or SVG
+     */
+    private void write(DiagramRenderer renderer, File file, double beta) {
+        if (svg) {
+            File outFile = new File(outDir, baseName(file) + "_beta" + betaLabel(beta) + ".svg");
+
+            try {
+                new SvgExporter(renderer).export(beta, outFile);
+                written.incrementAndGet();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return;
+        }
+
+        File outFile = new File(outDir, baseName(file) + "_beta" + betaLabel(beta) + ".png");
+
+        // Images are already drawn in parallel, so each large image is drawn on the
+        // thread it was given
+        if (scale != 1) {
+            try {
+                new TiledPngExporter(renderer, scale, 1).export(beta, outFile, null);
+                written.incrementAndGet();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", ex);
+            }
+            return;
+        }
+
+        BufferedImage image = images.get();
+        if (image == null) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            images.set(image);
+        }
+
+        renderer.render(beta, image);
+
+        try {
+            ImageIO.write(image, "png", outFile);
+            written.incrementAndGet();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Returns the name of the file without its extension
+     */
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Returns the speed as it is written in the names of the images
+     */
+    private static String betaLabel(double beta) {
+        return String.format(Locale.ROOT, "%+.3f", beta);
+    }
+
+    /**
+     * Returns the value after an option
+     */
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+
+        return args[i];
+    }
+
+    private static int parseInt(String s, String option) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Not a whole number for " + option + ": " + s);
+        }
+    }
+
+    private static double parseDouble(String s) {
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Not a number: " + s);
+        }
+    }
+}
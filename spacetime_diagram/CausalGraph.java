@@ -0,0 +1,548 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Computes the spacetime interval between every pair of events in a diagram,
+ * and the causal graph they form.
+ * 
+ * The interval between two events is {@code s^2 = (c dt)^2 - dx^2}, which every
+ * observer agrees on. It is positive if the events are timelike separated, so
+ * one can cause the other; zero if they are lightlike separated, so only a
+ * light signal can connect them; and negative if they are spacelike separated.
+ * In light-cone coordinates {@code u = ct - x} and {@code v = ct + x} it is
+ * simply {@code du dv}, which is how it is computed here, so that it always
+ * agrees exactly with the causal order.
+ * 
+ * The causal graph has an edge from each event to every event in its future
+ * light cone. Events at the same point are ordered by index, so the graph has
+ * no cycles. It usually has far too many edges to list, so
+ * {@link #transitiveReduction(IntConsumer)} lists only the edges that are not
+ * implied by other edges, which is all that is needed to draw it.
+ * 
+ * All pairs are visited in square tiles of {@value #TILE_SIZE} events, so each
+ * tile's coordinates stay in the cache, on the common fork/join pool. Only
+ * {@code SpacetimeEvent}s are part of the graph; travellers are skipped. The
+ * events are numbered in the order they appear in the collection, without the
+ * travellers, and {@link #getRow(int)} gives their index in the collection.
+ * 
+ * @author Jonathan Elsner
+ * @see CausalIndex
+ */
+public class CausalGraph {
+
+    /**
+     * The type of the interval between events that cannot affect each other
+     */
+    public static final byte SPACELIKE = 0;
+
+    /**
+     * The type of the interval between events only a light signal can connect
+     */
+    public static final byte LIGHTLIKE = 1;
+
+    /**
+     * The type of the interval between events where one can affect the other
+     */
+    public static final byte TIMELIKE = 2;
+
+    /**
+     * The number of events along each side of the tiles pairs are visited in
+     */
+    public static final int TILE_SIZE = 1024;
+
+    /**
+     * Receives the intervals between one event and a run of later events
+     */
+    public interface IntervalVisitor {
+
+        /**
+         * Called with the intervals between event {@code i} and the events from
+         * {@code from} to {@code to - 1}, where {@code i < from}. Called from many
+         * threads at once.
+         * 
+         * @param i         the first event of each pair
+         * @param from      the first of the other events
+         * @param to        the index after the last of the other events
+         * @param intervals {@code intervals[k]} is the squared interval between
+         *                  {@code i} and {@code from + k}. Only valid during the
+         *                  call.
+         */
+        void visit(int i, int from, int to, double[] intervals);
+    }
+
+    private final int size;
+    private final double c;
+
+    // The index in the collection of each event, and its light-cone coordinates
+    private final int[] rows;
+    private final double[] u;
+    private final double[] v;
+
+    /**
+     * Builds the graph of the events in the collection using the current speed
+     * of light
+     * 
+     * @param events the events, which may include travellers
+     * @see LorentzTransform#getC()
+     */
+    public CausalGraph(Collection<? extends SpacetimeEvent> events) {
+        this(events, LorentzTransform.getC());
+    }
+
+    /**
+     * Builds the graph of the events in the collection. Events stored in a
+     * {@code SpacetimeEventStore} are read straight from its columns.
+     * 
+     * @param events the events, which may include travellers
+     * @param c      the speed of light
+     * @throws IllegalArgumentException if {@code c <= 0}
+     */
+    public CausalGraph(Collection<? extends SpacetimeEvent> events, double c) {
+        if (!(c > 0)) {
+            throw new IllegalArgumentException("Speed of light <= 0: " + c);
+        }
+
+        this.c = c;
+
+        int n = events.size();
+        double[] t = new double[n];
+        double[] x = new double[n];
+        byte[] kinds = new byte[n];
+
+        if (events instanceof SpacetimeEventStore) {
+            ((SpacetimeEventStore) events).copyColumns(t, x, null, kinds);
+        } else {
+            int i = 0;
+            for (SpacetimeEvent evt : events) {
+                t[i] = evt.getRestT();
+                x[i] = evt.getRestX();
+                kinds[i] = evt instanceof SpacetimeTraveller ? SpacetimeEventStore.TRAVELLER
+                        : SpacetimeEventStore.EVENT;
+                i++;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] == SpacetimeEventStore.EVENT) {
+                count++;
+            }
+        }
+
+        size = count;
+        rows = new int[size];
+        u = new double[size];
+        v = new double[size];
+
+        for (int i = 0, k = 0; i < n; i++) {
+            if (kinds[i] == SpacetimeEventStore.EVENT) {
+                rows[k] = i;
+                u[k] = c * t[i] - x[i];
+                v[k] = c * t[i] + x[i];
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events in the graph
+     * 
+     * @return the number of events, not counting travellers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the speed of light the graph was built with
+     * 
+     * @return the speed of light
+     */
+    public double getC() {
+        return c;
+    }
+
+    /**
+     * Returns the index in the collection of an event in the graph
+     * 
+     * @param i the number of the event in the graph
+     * @return its index in the collection the graph was built from
+     * @throws IndexOutOfBoundsException if {@code i} is out of range
+     */
+    public int getRow(int i) {
+        return rows[i];
+    }
+
+    /**
+     * Returns the squared spacetime interval between two events
+     * 
+     * @param i the first event
+     * @param j the second event
+     * @return {@code (c dt)^2 - dx^2}, positive for timelike separations
+     * @throws IndexOutOfBoundsException if either event is out of range
+     */
+    public double interval(int i, int j) {
+        return (u[j] - u[i]) * (v[j] - v[i]);
+    }
+
+    /**
+     * Returns the type of the interval between two events
+     * 
+     * @param i the first event
+     * @param j the second event
+     * @return {@link #TIMELIKE}, {@link #LIGHTLIKE} or {@link #SPACELIKE}
+     * @throws IndexOutOfBoundsException if either event is out of range
+     */
+    public byte classify(int i, int j) {
+        return classify(interval(i, j));
+    }
+
+    /**
+     * Returns the type of a squared interval
+     * 
+     * @param interval the squared spacetime interval
+     * @return {@link #TIMELIKE}, {@link #LIGHTLIKE} or {@link #SPACELIKE}
+     */
+    public static byte classify(double interval) {
+        if (interval > 0) {
+            return TIMELIKE;
+        } else if (interval == 0) {
+            return LIGHTLIKE;
+        } else {
+            return SPACELIKE;
+        }
+    }
+
+    /**
+     * Whether the first event is before the second in the causal graph, so a
+     * signal sent from it can reach the second
+     * 
+     * @param i the first event
+     * @param j the second event
+     * @return {@code true} if there is an edge from {@code i} to {@code j}
+     * @throws IndexOutOfBoundsException if either event is out of range
+     */
+    public boolean precedes(int i, int j) {
+        return compare(i, j) < 0 && u[i] <= u[j] && v[i] <= v[j];
+    }
+
+    /**
+     * Counts the pairs of events with each type of interval. Every pair is
+     * counted once.
+     * 
+     * @return the number of pairs, indexed by {@link #SPACELIKE},
+     *         {@link #LIGHTLIKE} and {@link #TIMELIKE}
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public long[] countPairs() throws InterruptedException {
+        LongAdder timelike = new LongAdder();
+        LongAdder lightlike = new LongAdder();
+
+        forEachTile((rowFrom, rowTo, colFrom, colTo) -> {
+            long positive = 0;
+            long zero = 0;
+
+            for (int i = rowFrom; i < rowTo; i++) {
+                double ui = u[i];
+                double vi = v[i];
+
+                for (int j = Math.max(colFrom, i + 1); j < colTo; j++) {
+                    double s = (u[j] - ui) * (v[j] - vi);
+                    positive += s > 0 ? 1 : 0;
+                    zero += s == 0 ? 1 : 0;
+                }
+            }
+
+            timelike.add(positive);
+            lightlike.add(zero);
+        });
+
+        long pairs = (long) size * (size - 1) / 2;
+        long[] counts = new long[3];
+        counts[TIMELIKE] = timelike.sum();
+        counts[LIGHTLIKE] = lightlike.sum();
+        counts[SPACELIKE] = pairs - counts[TIMELIKE] - counts[LIGHTLIKE];
+
+        return counts;
+    }
+
+    /**
+     * Computes the interval between every pair of events, handing them to the
+     * visitor a run at a time. Every pair is visited once, with the lower
+     * numbered event first.
+     * 
+     * @param visitor receives the intervals, on many threads at once
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void forEachInterval(IntervalVisitor visitor) throws InterruptedException {
+        ThreadLocal<double[]> buffers = ThreadLocal.withInitial(() -> new double[TILE_SIZE]);
+
+        forEachTile((rowFrom, rowTo, colFrom, colTo) -> {
+            double[] intervals = buffers.get();
+
+            for (int i = rowFrom; i < rowTo; i++) {
+                double ui = u[i];
+                double vi = v[i];
+                int from = Math.max(colFrom, i + 1);
+
+                for (int j = from; j < colTo; j++) {
+                    intervals[j - from] = (u[j] - ui) * (v[j] - vi);
+                }
+
+                if (from < colTo) {
+                    visitor.visit(i, from, colTo, intervals);
+                }
+            }
+        });
+    }
+
+    /**
+     * Lists the edges of the transitive reduction of the causal graph: the edges
+     * from each event to the events right after it, with no other event in
+     * between. There are usually only a few times as many of them as events.
+     * 
+     * The events are swept in causal order while a segment tree over their
+     * v-coordinates finds the next edge, so this takes {@code O((n + e) log n)}
+     * time for {@code e} edges, instead of looking at every pair.
+     * 
+     * @param progress called with the number of events done so far
+     * @return for each event, the events its edges lead to, in increasing order
+     *         of u
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public int[][] transitiveReduction(IntConsumer progress) throws InterruptedException {
+        // The events in causal order: by u, then v, then number
+        int[] order = sortedOrder();
+        int[] position = new int[size];
+        for (int p = 0; p < size; p++) {
+            position[order[p]] = p;
+        }
+
+        // The v-coordinates in increasing order, and the rank of each event in it
+        int[] byV = IndexSort.sortedIndices(size, v, null);
+
+        double[] sortedV = new double[size];
+        int[] rank = new int[size];
+        for (int r = 0; r < size; r++) {
+            sortedV[r] = v[byV[r]];
+            rank[byV[r]] = r;
+        }
+
+        MinTree tree = new MinTree(size);
+        int[][] successors = new int[size][];
+        int[] found = new int[16];
+
+        // Every event already in the tree comes after the current one in causal
+        // order, so the first one in a range of v is the first event after it there
+        for (int p = size - 1; p >= 0; p--) {
+            if (p % 4096 == 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                progress.accept(size - 1 - p);
+            }
+
+            int i = order[p];
+            int count = 0;
+
+            int lo = lowerBound(sortedV, v[i]);
+            int hi = size;
+            while (lo < hi) {
+                int next = tree.min(lo, hi);
+                if (next == Integer.MAX_VALUE) {
+                    break;
+                }
+
+                int j = order[next];
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, 2 * count);
+                }
+                found[count++] = j;
+
+                // Anything after j with v at least as large as j's is also after j
+                hi = lowerBound(sortedV, v[j]);
+            }
+
+            successors[i] = Arrays.copyOf(found, count);
+            tree.set(rank[i], p);
+        }
+
+        progress.accept(size);
+        return successors;
+    }
+
+    /**
+     * Runs the kernel over every tile on or above the diagonal, on the common
+     * fork/join pool
+     */
+    private void forEachTile(TileKernel kernel) throws InterruptedException {
+        int blocks = (size + TILE_SIZE - 1) / TILE_SIZE;
+        Thread caller = Thread.currentThread();
+
+        ForkJoinPool.commonPool().invoke(new TileTask(kernel, 0, blocks, blocks, caller));
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Work done on one tile of pairs
+     */
+    private interface TileKernel {
+        void tile(int rowFrom, int rowTo, int colFrom, int colTo);
+    }
+
+    /**
+     * Visits the tiles in a range of rows of tiles, splitting the range until it
+     * is a single row of tiles
+     */
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TileKernel kernel;
+        private final int fromBlock;
+        private final int toBlock;
+        private final int blocks;
+        private final Thread caller;
+
+        private TileTask(TileKernel kernel, int fromBlock, int toBlock, int blocks, Thread caller) {
+            this.kernel = kernel;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+            this.blocks = blocks;
+            this.caller = caller;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock - fromBlock > 1) {
+                int mid = (fromBlock + toBlock) >>> 1;
+                invokeAll(new TileTask(kernel, fromBlock, mid, blocks, caller),
+                        new TileTask(kernel, mid, toBlock, blocks, caller));
+                return;
+            }
+
+            int rowFrom = fromBlock * TILE_SIZE;
+            int rowTo = Math.min(size, rowFrom + TILE_SIZE);
+
+            for (int block = fromBlock; block < blocks; block++) {
+                // Stop early if whoever asked for the pairs no longer wants them
+                if (caller.isInterrupted()) {
+                    return;
+                }
+
+                int colFrom = block * TILE_SIZE;
+                kernel.tile(rowFrom, rowTo, colFrom, Math.min(size, colFrom + TILE_SIZE));
+            }
+        }
+    }
+
+    /**
+     * A segment tree holding the smallest value set in each range of slots
+     */
+    private static class MinTree {
+        private final int leaves;
+        private final int[] min;
+
+        private MinTree(int size) {
+            int leaves = 1;
+            while (leaves < size) {
+                leaves <<= 1;
+            }
+
+            this.leaves = leaves;
+            min = new int[2 * leaves];
+            Arrays.fill(min, Integer.MAX_VALUE);
+        }
+
+        private void set(int slot, int value) {
+            int node = slot + leaves;
+            min[node] = value;
+
+            for (node >>>= 1; node > 0; node >>>= 1) {
+                min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+            }
+        }
+
+        /**
+         * Returns the smallest value in slots [from, to), or
+         * {@code Integer.MAX_VALUE} if none are set
+         */
+        private int min(int from, int to) {
+            int result = Integer.MAX_VALUE;
+
+            for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>>= 1, hi >>>= 1) {
+                if ((lo & 1) == 1) {
+                    result = Math.min(result, min[lo++]);
+                }
+                if ((hi & 1) == 1) {
+                    result = Math.min(result, min[--hi]);
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Returns the events sorted by u, then v, then number
+     */
+    private int[] sortedOrder() {
+        return IndexSort.sortedIndices(size, u, v);
+    }
+
+    /**
+     * Compares events by u, then v, then number
+     */
+    private int compare(int i, int j) {
+        int cmp = Double.compare(u[i], u[j]);
+        if (cmp == 0) {
+            cmp = Double.compare(v[i], v[j]);
+        }
+
+        return cmp != 0 ? cmp : Integer.compare(i, j);
+    }
+
+    /**
+     * Returns the first index in the sorted array whose value is at least the key
+     */
+    private static int lowerBound(double[] sorted, double key) {
+        int lo = 0;
+        int hi = sorted.length;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+}
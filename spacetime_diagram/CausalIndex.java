@@ -0,0 +1,456 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds the events that can affect, or be affected by, a point in spacetime.
+ * Events are indexed in light-cone coordinates {@code u = ct - x} and
+ * {@code v = ct + x}, in which the future light cone of a point
+ * {@code (u0, v0)} is every event with {@code u >= u0} and {@code v >= v0},
+ * and its past light cone every event with {@code u <= u0} and
+ * {@code v <= v0}. Each query is then a search of a quadrant of the (u, v)
+ * plane, which an implicit k-d tree answers without looking at most of the
+ * events. Events outside both cones are elsewhere: no signal can travel between
+ * them and the point.
+ * 
+ * Since a Lorentz transform only scales u and v, which event is in which cone
+ * is the same for every observer, and the index is built once from the rest
+ * frame coordinates. Cones are closed, so an event separated from the point by
+ * a light-like interval (or at the point itself) is in the cone. Only
+ * {@code SpacetimeEvent}s are indexed; travellers are never in a cone, since
+ * their worldlines pass through both cones of every point.
+ * 
+ * Results are sets of indices into the events the index was built from. The
+ * index is immutable, so it can be queried from any thread.
+ * 
+ * @author Jonathan Elsner
+ * @see SpacetimeEventStore
+ */
+public class CausalIndex {
+
+    /**
+     * The number of events at which the tree is built on several threads at once
+     */
+    public static final int PARALLEL_THRESHOLD = 50_000;
+
+    // The number of rows the index was built from, including travellers
+    private final int rows;
+
+    // The number of events in the tree
+    private final int size;
+
+    private final double c;
+
+    // The tree, in order: the node for the range [lo, hi) is at (lo + hi) >>> 1,
+    // with the range split on u and v at alternating depths
+    private final double[] u;
+    private final double[] v;
+    private final int[] row;
+
+    // The bounding box of the subtree rooted at each node
+    private final double[] minU;
+    private final double[] maxU;
+    private final double[] minV;
+    private final double[] maxV;
+
+    /**
+     * Indexes the events in the collection using the current speed of light
+     * 
+     * @param events the events to index, which may include travellers
+     * @see LorentzTransform#getC()
+     */
+    public CausalIndex(Collection<? extends SpacetimeEvent> events) {
+        this(events, LorentzTransform.getC());
+    }
+
+    /**
+     * Indexes the events in the collection. Events stored in a
+     * {@code SpacetimeEventStore} are read straight from its columns.
+     * 
+     * @param events the events to index, which may include travellers
+     * @param c      the speed of light
+     * @throws IllegalArgumentException if {@code c <= 0}
+     */
+    public CausalIndex(Collection<? extends SpacetimeEvent> events, double c) {
+        this(Columns.of(events), c);
+    }
+
+    /**
+     * Indexes events given by their rest frame coordinates
+     * 
+     * @param t       the t-coordinate of each row
+     * @param x       the x-coordinate of each row
+     * @param rows    the number of rows
+     * @param indexed whether each row is an event that should be indexed
+     * @param c       the speed of light
+     * @throws IllegalArgumentException if {@code c <= 0}
+     */
+    public CausalIndex(double[] t, double[] x, int rows, IntPredicate indexed, double c) {
+        if (!(c > 0)) {
+            throw new IllegalArgumentException("Speed of light <= 0: " + c);
+        }
+
+        this.rows = rows;
+        this.c = c;
+
+        int count = 0;
+        for (int i = 0; i < rows; i++) {
+            if (indexed.test(i) && isIndexable(t[i], x[i], c)) {
+                count++;
+            }
+        }
+
+        size = count;
+        u = new double[size];
+        v = new double[size];
+        row = new int[size];
+        minU = new double[size];
+        maxU = new double[size];
+        minV = new double[size];
+        maxV = new double[size];
+
+        for (int i = 0, n = 0; i < rows; i++) {
+            if (indexed.test(i) && isIndexable(t[i], x[i], c)) {
+                u[n] = c * t[i] - x[i];
+                v[n] = c * t[i] + x[i];
+                row[n++] = i;
+            }
+        }
+
+        if (size < PARALLEL_THRESHOLD) {
+            build(0, size, true);
+        } else {
+            ForkJoinPool.commonPool().invoke(new BuildTask(0, size, true));
+        }
+    }
+
+    private CausalIndex(Columns columns, double c) {
+        this(columns.t, columns.x, columns.t.length, i -> columns.kinds[i] == SpacetimeEventStore.EVENT, c);
+    }
+
+    /**
+     * Returns the number of events in the index
+     * 
+     * @return the number of events indexed, not counting travellers or events with
+     *         undefined coordinates
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the speed of light the index was built with
+     * 
+     * @return the speed of light
+     */
+    public double getC() {
+        return c;
+    }
+
+    /**
+     * Returns the events in the future light cone of the specified point, which
+     * it can send a signal to
+     * 
+     * @param t the t-coordinate of the point in the rest frame
+     * @param x the x-coordinate of the point in the rest frame
+     * @return the indices of the events in the future light cone
+     */
+    public BitSet future(double t, double x) {
+        BitSet found = new BitSet(rows);
+        collect(0, size, c * t - x, Double.POSITIVE_INFINITY, c * t + x, Double.POSITIVE_INFINITY, found);
+
+        return found;
+    }
+
+    /**
+     * Returns the events in the past light cone of the specified point, which can
+     * send a signal to it
+     * 
+     * @param t the t-coordinate of the point in the rest frame
+     * @param x the x-coordinate of the point in the rest frame
+     * @return the indices of the events in the past light cone
+     */
+    public BitSet past(double t, double x) {
+        BitSet found = new BitSet(rows);
+        collect(0, size, Double.NEGATIVE_INFINITY, c * t - x, Double.NEGATIVE_INFINITY, c * t + x, found);
+
+        return found;
+    }
+
+    /**
+     * Returns the events in neither light cone of the specified point, which
+     * cannot exchange a signal with it
+     * 
+     * @param t the t-coordinate of the point in the rest frame
+     * @param x the x-coordinate of the point in the rest frame
+     * @return the indices of the events elsewhere
+     */
+    public BitSet elsewhere(double t, double x) {
+        BitSet found = new BitSet(rows);
+        for (int i = 0; i < size; i++) {
+            found.set(row[i]);
+        }
+
+        found.andNot(future(t, x));
+        found.andNot(past(t, x));
+
+        return found;
+    }
+
+    /**
+     * Returns the events in the future light cone of the specified event
+     * 
+     * @param evt the event
+     * @return the indices of the events in its future light cone, including the
+     *         event itself if it is indexed
+     * @see #future(double, double)
+     */
+    public BitSet future(SpacetimeEvent evt) {
+        return future(evt.getRestT(), evt.getRestX());
+    }
+
+    /**
+     * Returns the events in the past light cone of the specified event
+     * 
+     * @param evt the event
+     * @return the indices of the events in its past light cone, including the
+     *         event itself if it is indexed
+     * @see #past(double, double)
+     */
+    public BitSet past(SpacetimeEvent evt) {
+        return past(evt.getRestT(), evt.getRestX());
+    }
+
+    /**
+     * Returns the events in neither light cone of the specified event
+     * 
+     * @param evt the event
+     * @return the indices of the events elsewhere
+     * @see #elsewhere(double, double)
+     */
+    public BitSet elsewhere(SpacetimeEvent evt) {
+        return elsewhere(evt.getRestT(), evt.getRestX());
+    }
+
+    /**
+     * Adds the rows of the events in the subtree for [lo, hi) whose light-cone
+     * coordinates are inside the rectangle
+     */
+    private void collect(int lo, int hi, double uLo, double uHi, double vLo, double vHi, BitSet found) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+
+            // The whole subtree is outside the rectangle
+            if (maxU[mid] < uLo || uHi < minU[mid] || maxV[mid] < vLo || vHi < minV[mid]) {
+                return;
+            }
+
+            // The whole subtree is inside the rectangle
+            if (uLo <= minU[mid] && maxU[mid] <= uHi && vLo <= minV[mid] && maxV[mid] <= vHi) {
+                for (int i = lo; i < hi; i++) {
+                    found.set(row[i]);
+                }
+                return;
+            }
+
+            if (uLo <= u[mid] && u[mid] <= uHi && vLo <= v[mid] && v[mid] <= vHi) {
+                found.set(row[mid]);
+            }
+
+            collect(lo, mid, uLo, uHi, vLo, vHi, found);
+            lo = mid + 1;
+        }
+    }
+
+    /**
+     * Arranges [lo, hi) into a subtree split on u if {@code byU}, otherwise on v,
+     * and computes its bounding boxes
+     */
+    private void build(int lo, int hi, boolean byU) {
+        if (lo >= hi) {
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, byU ? u : v);
+
+        build(lo, mid, !byU);
+        build(mid + 1, hi, !byU);
+
+        bound(lo, hi);
+    }
+
+    /**
+     * Computes the bounding box of the node for [lo, hi) from its own event and
+     * the bounding boxes of its children
+     */
+    private void bound(int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+
+        minU[mid] = maxU[mid] = u[mid];
+        minV[mid] = maxV[mid] = v[mid];
+
+        if (lo < mid) {
+            include(mid, (lo + mid) >>> 1);
+        }
+        if (mid + 1 < hi) {
+            include(mid, (mid + 1 + hi) >>> 1);
+        }
+    }
+
+    /**
+     * Grows the bounding box of a node to cover the subtree of its child
+     */
+    private void include(int node, int child) {
+        minU[node] = Math.min(minU[node], minU[child]);
+        maxU[node] = Math.max(maxU[node], maxU[child]);
+        minV[node] = Math.min(minV[node], minV[child]);
+        maxV[node] = Math.max(maxV[node], maxV[child]);
+    }
+
+    /**
+     * Partially sorts [lo, hi] by the key so that the element at {@code k} is
+     * where it would be if sorted, with nothing larger before it and nothing
+     * smaller after it
+     */
+    private void select(int lo, int hi, int k, double[] key) {
+        while (lo < hi) {
+            double pivot = key[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+
+            while (i <= j) {
+                while (key[i] < pivot) {
+                    i++;
+                }
+                while (pivot < key[j]) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+
+            if (k <= j) {
+                hi = j;
+            } else if (i <= k) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        double tmp = u[i];
+        u[i] = u[j];
+        u[j] = tmp;
+
+        tmp = v[i];
+        v[i] = v[j];
+        v[j] = tmp;
+
+        int r = row[i];
+        row[i] = row[j];
+        row[j] = r;
+    }
+
+    /**
+     * Whether an event can be placed in the index. Events with undefined
+     * coordinates are in no light cone.
+     */
+    private static boolean isIndexable(double t, double x, double c) {
+        return !Double.isNaN(c * t - x) && !Double.isNaN(c * t + x);
+    }
+
+    /**
+     * Builds the subtrees of a large tree on different threads, since they hold
+     * different parts of the arrays once the median is in place
+     */
+    private class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // Subtrees smaller than this are built on the current thread
+        private static final int MIN_SUBTREE = 8192;
+
+        private final int lo;
+        private final int hi;
+        private final boolean byU;
+
+        private BuildTask(int lo, int hi, boolean byU) {
+            this.lo = lo;
+            this.hi = hi;
+            this.byU = byU;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= MIN_SUBTREE) {
+                build(lo, hi, byU);
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, byU ? u : v);
+
+            invokeAll(new BuildTask(lo, mid, !byU), new BuildTask(mid + 1, hi, !byU));
+            bound(lo, hi);
+        }
+    }
+
+    /**
+     * The columns of a collection of events
+     */
+    private static class Columns {
+        private final double[] t;
+        private final double[] x;
+        private final byte[] kinds;
+
+        private Columns(int size) {
+            t = new double[size];
+            x = new double[size];
+            kinds = new byte[size];
+        }
+
+        private static Columns of(Collection<? extends SpacetimeEvent> events) {
+            Columns columns = new Columns(events.size());
+
+            if (events instanceof SpacetimeEventStore) {
+                ((SpacetimeEventStore) events).copyColumns(columns.t, columns.x, null, columns.kinds);
+                return columns;
+            }
+
+            int i = 0;
+            for (SpacetimeEvent evt : events) {
+                columns.t[i] = evt.getRestT();
+                columns.x[i] = evt.getRestX();
+                columns.kinds[i] = evt instanceof SpacetimeTraveller ? SpacetimeEventStore.TRAVELLER
+                        : SpacetimeEventStore.EVENT;
+                i++;
+            }
+
+            return columns;
+        }
+    }
+}
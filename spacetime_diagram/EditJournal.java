@@ -0,0 +1,743 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps an autosaved copy of a diagram as a snapshot plus an append-only journal
+ * of the edits made since the snapshot was written, so that work survives a
+ * crash without rewriting the whole diagram after every edit.
+ * 
+ * The snapshot is an ordinary diagram file written by {@link EventIO}. The
+ * journal starts with a header (int magic "STDJ", int version) followed by one
+ * frame per edit:
+ * 
+ * <pre>
+ * frame:   int payload length, payload, int CRC-32 of the payload
+ * payload: byte operation, int index, long UUID most significant bits,
+ *          long UUID least significant bits, then by operation:
+ *          ADD    byte type, double t, double x, double beta, name, then for
+ *                 a piecewise traveller int segment count, the start time of
+ *                 each segment and the speed of each segment
+ *          REMOVE nothing
+ *          MOVE   double t, double x
+ *          RENAME name
+ *          BETA   double beta
+ * name:    int length in bytes followed by UTF-8 bytes
+ * </pre>
+ * 
+ * All values are big-endian, and coordinates are in the rest frame. Version 1
+ * journals are the same without piecewise travellers, and can still be
+ * replayed. Edits are encoded on the calling thread and written by a
+ * background thread, which writes everything queued at once and forces it to
+ * disk at most once every {@value #FORCE_MILLIS} milliseconds. When the
+ * journal grows, {@link #compact(Collection)} replaces the snapshot and empties
+ * the journal.
+ * 
+ * Replaying is idempotent, so a crash between replacing the snapshot and
+ * emptying the journal only replays edits that are already in the snapshot. A
+ * frame that was only partly written when the program stopped is ignored,
+ * along with everything after it.
+ * 
+ * The recording methods are meant to be called from a single thread, usually
+ * the event dispatch thread. Errors are never thrown from them; they are handed
+ * to the error handler on the writing thread instead. After a write fails,
+ * edits are dropped until the next successful compaction.
+ * 
+ * @author Jonathan Elsner
+ * @see EventIO
+ * @see SpacetimeEvent#getUUID()
+ */
+public class EditJournal {
+
+    private static final int MAGIC = 0x5354444A;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+
+    // The bytes every payload starts with: operation, index and UUID
+    private static final int PAYLOAD_PREFIX = 1 + 4 + 8 + 8;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte MOVE = 3;
+    private static final byte RENAME = 4;
+    private static final byte BETA = 5;
+
+    /**
+     * The longest time, in milliseconds, that written edits wait before being
+     * forced to disk
+     */
+    public static final long FORCE_MILLIS = 1000;
+
+    /**
+     * Added to the names of the files of an autosave that is set aside
+     * 
+     * @see #setAside(File, File)
+     */
+    public static final String SET_ASIDE_SUFFIX = ".old";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Queued to stop the writing thread
+    private static final Object CLOSE = new Object();
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Consumer<? super IOException> errorHandler;
+
+    private final BlockingQueue<Object> queue;
+    private final Thread writer;
+
+    // Bytes recorded since the last compaction, only used by the recording thread
+    private long length;
+
+    // Only used by the writing thread
+    private FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean unforced;
+    private long lastForce;
+
+    private volatile boolean failed;
+
+    // Set when the autosave is discarded. The writing thread then drops whatever
+    // it has left, stops without reporting errors and deletes both files, after
+    // anything it was in the middle of writing.
+    private volatile boolean discarded;
+
+    /**
+     * Starts an autosave of the specified events. The snapshot is written and
+     * the journal emptied in the background before any edit is written.
+     * 
+     * @param snapshotFile where to keep the snapshot of the diagram
+     * @param journalFile  where to keep the journal of edits
+     * @param events       the events in the diagram now, which are copied
+     * @param errorHandler called on the writing thread whenever the snapshot or
+     *                     journal cannot be written
+     */
+    public EditJournal(File snapshotFile, File journalFile, Collection<? extends SpacetimeEvent> events,
+            Consumer<? super IOException> errorHandler) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.errorHandler = errorHandler;
+
+        queue = new LinkedBlockingQueue<>();
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        compact(events);
+
+        writer = new Thread(this::write, "Edit journal writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records that an event was added to the diagram
+     * 
+     * @param index where the event was added
+     * @param evt   the event that was added
+     */
+    public void recordAdd(int index, SpacetimeEvent evt) {
+        byte kind = SpacetimeEventStore.kindOf(evt);
+        byte[] name = evt.getName().getBytes(StandardCharsets.UTF_8);
+
+        PiecewiseWorldline worldline = null;
+        int segments = 0;
+        if (kind == SpacetimeEventStore.PIECEWISE) {
+            worldline = ((PiecewiseTraveller) evt).getWorldline();
+            segments = worldline.getSegmentCount();
+        }
+
+        int extra = 1 + 3 * 8 + 4 + name.length + (worldline != null ? 4 + 2 * 8 * segments : 0);
+        ByteBuffer payload = payload(ADD, index, evt.getUUID(), extra);
+        payload.put(kind);
+        payload.putDouble(evt.getRestT());
+        payload.putDouble(evt.getRestX());
+        payload.putDouble(kind != SpacetimeEventStore.EVENT ? ((SpacetimeTraveller) evt).getRestBeta() : 0);
+        payload.putInt(name.length);
+        payload.put(name);
+
+        if (worldline != null) {
+            double[] times = new double[segments];
+            double[] betas = new double[segments];
+            worldline.copySegments(times, betas);
+
+            payload.putInt(segments);
+            payload.asDoubleBuffer().put(times).put(betas);
+        }
+
+        enqueue(payload);
+    }
+
+    /**
+     * Records that an event was removed from the diagram
+     * 
+     * @param index where the event was
+     * @param uuid  the UUID of the event
+     */
+    public void recordRemove(int index, UUID uuid) {
+        enqueue(payload(REMOVE, index, uuid, 0));
+    }
+
+    /**
+     * Records that an event was moved
+     * 
+     * @param index where the event is
+     * @param uuid  the UUID of the event
+     * @param t     the new t-coordinate of the event in the rest frame
+     * @param x     the new x-coordinate of the event in the rest frame
+     */
+    public void recordMove(int index, UUID uuid, double t, double x) {
+        ByteBuffer payload = payload(MOVE, index, uuid, 2 * 8);
+        payload.putDouble(t);
+        payload.putDouble(x);
+
+        enqueue(payload);
+    }
+
+    /**
+     * Records that an event was renamed
+     * 
+     * @param index where the event is
+     * @param uuid  the UUID of the event
+     * @param name  the new name of the event
+     */
+    public void recordRename(int index, UUID uuid, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer payload = payload(RENAME, index, uuid, 4 + bytes.length);
+        payload.putInt(bytes.length);
+        payload.put(bytes);
+
+        enqueue(payload);
+    }
+
+    /**
+     * Records that the speed of a traveller changed
+     * 
+     * @param index where the traveller is
+     * @param uuid  the UUID of the traveller
+     * @param beta  the new speed of the traveller in the rest frame
+     */
+    public void recordBeta(int index, UUID uuid, double beta) {
+        ByteBuffer payload = payload(BETA, index, uuid, 8);
+        payload.putDouble(beta);
+
+        enqueue(payload);
+    }
+
+    /**
+     * Replaces the snapshot with the specified events and empties the journal.
+     * The events are copied before this returns, and written in the background
+     * after every edit recorded before this call.
+     * 
+     * @param events the events in the diagram now
+     */
+    public void compact(Collection<? extends SpacetimeEvent> events) {
+        SpacetimeEventStore copy = new SpacetimeEventStore(events.size());
+        copy.addAll(events);
+
+        queue.add(copy);
+        length = 0;
+    }
+
+    /**
+     * Returns how many bytes of edits have been recorded since the snapshot was
+     * last replaced, which can be used to decide when to compact the journal
+     * 
+     * @return the length of the journal, not counting its header
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Whether writing the journal has failed since the last successful
+     * compaction, in which case edits are being dropped
+     * 
+     * @return {@code true} if edits are being dropped until the next compaction
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Writes every queued edit, forces it to disk and stops the writing thread,
+     * waiting for it to finish
+     * 
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void close() throws InterruptedException {
+        queue.add(CLOSE);
+        writer.join();
+    }
+
+    /**
+     * Stops the writing thread, dropping anything still queued and interrupting
+     * any write in progress, and deletes the snapshot and journal. Used when
+     * there is nothing left to recover. The writing thread deletes the files
+     * itself once it has stopped, so a snapshot it was replacing can't reappear
+     * afterwards.
+     * 
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void discard() throws InterruptedException {
+        stopAndDiscard();
+        writer.join();
+    }
+
+    /**
+     * Stops the writing thread like {@link #discard()}, but waits at most the
+     * specified time for it, so that a slow disk can't hold up the caller. The
+     * snapshot and journal are deleted now, and again by the writing thread when
+     * it stops if it is still running.
+     * 
+     * @param timeoutMillis how long to wait for the writing thread, in
+     *                      milliseconds
+     * @return {@code true} if the writing thread stopped in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean discard(long timeoutMillis) throws InterruptedException {
+        stopAndDiscard();
+        writer.join(timeoutMillis);
+
+        deleteFiles();
+
+        return !writer.isAlive();
+    }
+
+    /**
+     * Whether there is an autosave to recover in the specified files
+     * 
+     * @param snapshotFile the snapshot of the diagram
+     * @param journalFile  the journal of edits
+     * @return {@code true} if either file exists
+     */
+    public static boolean exists(File snapshotFile, File journalFile) {
+        return snapshotFile.exists() || journalFile.exists();
+    }
+
+    /**
+     * Moves an autosave that will not be recovered out of the way of a new one,
+     * adding {@value #SET_ASIDE_SUFFIX} to the names of its files and replacing
+     * any autosave set aside before
+     * 
+     * @param snapshotFile the snapshot of the diagram, which may not exist
+     * @param journalFile  the journal of edits, which may not exist
+     * @throws IOException if either file exists but cannot be moved
+     */
+    public static void setAside(File snapshotFile, File journalFile) throws IOException {
+        for (File file : new File[] { snapshotFile, journalFile }) {
+            if (file.exists()) {
+                Files.move(file.toPath(), file.toPath().resolveSibling(file.getName() + SET_ASIDE_SUFFIX),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Reads the snapshot and replays the journal on top of it
+     * 
+     * @param snapshotFile the snapshot of the diagram, which may not exist
+     * @param journalFile  the journal of edits, which may not exist
+     * @return the events in the diagram when the last edit was written
+     * @throws IOException if either file exists but cannot be read
+     */
+    public static SpacetimeEventStore recover(File snapshotFile, File journalFile) throws IOException {
+        SpacetimeEventStore store;
+
+        if (snapshotFile.exists()) {
+            try {
+                store = EventIO.readSpacetimeEventStore(snapshotFile);
+            } catch (IOException ex) {
+                throw new IOException("Could not read snapshot " + snapshotFile, ex);
+            }
+        } else {
+            store = new SpacetimeEventStore();
+        }
+
+        if (journalFile.exists()) {
+            try (FileChannel in = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+                replay(in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()), store);
+            }
+        }
+
+        return store;
+    }
+
+    /**
+     * Applies every whole frame in the journal to the store
+     */
+    private static void replay(ByteBuffer journal, SpacetimeEventStore store) throws IOException {
+        // A crash while the journal was being emptied can leave it shorter than its header
+        if (journal.remaining() < HEADER_SIZE) {
+            return;
+        }
+
+        if (journal.getInt() != MAGIC) {
+            throw new IOException("Not an edit journal");
+        }
+
+        int version = journal.getInt();
+        if (version < 1 || VERSION < version) {
+            throw new IOException("Unsupported edit journal version " + version);
+        }
+
+        CRC32 crc = new CRC32();
+
+        while (journal.remaining() >= 4) {
+            int start = journal.position();
+            int length = journal.getInt(start);
+
+            // Stop at the first frame that was not completely written
+            if (length < PAYLOAD_PREFIX || journal.remaining() - 8 < length) {
+                break;
+            }
+
+            ByteBuffer payload = journal.slice(start + 4, length);
+
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != journal.getInt(start + 4 + length)) {
+                break;
+            }
+
+            try {
+                apply(payload, store);
+            } catch (BufferUnderflowException ex) {
+                throw new IOException("Edit journal frame too short", ex);
+            }
+            journal.position(start + 8 + length);
+        }
+    }
+
+    /**
+     * Applies a single edit to the store. Adding an event that is already there
+     * overwrites it, and edits to events that are not there are ignored.
+     */
+    private static void apply(ByteBuffer payload, SpacetimeEventStore store) throws IOException {
+        byte operation = payload.get();
+        int hint = payload.getInt();
+        UUID uuid = new UUID(payload.getLong(), payload.getLong());
+
+        int i = store.indexOf(uuid, hint);
+
+        switch (operation) {
+            case ADD:
+                byte kind = payload.get();
+                double t = payload.getDouble();
+                double x = payload.getDouble();
+                double beta = payload.getDouble();
+                String name = readName(payload);
+
+                SpacetimeEvent evt;
+                if (kind == SpacetimeEventStore.PIECEWISE) {
+                    evt = new PiecewiseTraveller(uuid, name, readWorldline(payload, x));
+                } else if (kind == SpacetimeEventStore.TRAVELLER) {
+                    evt = new SpacetimeTraveller(uuid, name, beta, t, x);
+                } else {
+                    evt = new SpacetimeEvent(uuid, name, t, x);
+                }
+
+                if (i >= 0) {
+                    store.set(i, evt);
+                } else {
+                    store.add(Math.max(0, Math.min(hint, store.size())), evt);
+                }
+                break;
+            case REMOVE:
+                if (i >= 0) {
+                    store.remove(i);
+                }
+                break;
+            case MOVE:
+                double newT = payload.getDouble();
+                double newX = payload.getDouble();
+
+                if (i >= 0) {
+                    store.get(i).setRestCoordinates(newT, newX);
+                }
+                break;
+            case RENAME:
+                String newName = readName(payload);
+
+                if (i >= 0) {
+                    store.get(i).setName(newName);
+                }
+                break;
+            case BETA:
+                double newBeta = payload.getDouble();
+
+                if (i >= 0 && store.isTraveller(i)) {
+                    ((SpacetimeTraveller) store.get(i)).setRestBeta(newBeta);
+                }
+                break;
+            default:
+                throw new IOException("Unknown edit journal operation " + operation);
+        }
+    }
+
+    private static PiecewiseWorldline readWorldline(ByteBuffer payload, double x) throws IOException {
+        int count = payload.getInt();
+        if (count < 1 || payload.remaining() < 16L * count) {
+            throw new IOException("Bad segment count in edit journal: " + count);
+        }
+
+        double[] times = new double[count];
+        double[] betas = new double[count];
+        payload.asDoubleBuffer().get(times).get(betas);
+
+        try {
+            return new PiecewiseWorldline(times, betas, x);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Bad segments in edit journal", ex);
+        }
+    }
+
+    private static String readName(ByteBuffer payload) throws IOException {
+        int length = payload.getInt();
+        if (length < 0 || payload.remaining() < length) {
+            throw new IOException("Bad name length in edit journal: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Allocates a payload and puts the fields every edit has
+     */
+    private static ByteBuffer payload(byte operation, int index, UUID uuid, int extra) {
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_PREFIX + extra);
+        payload.put(operation);
+        payload.putInt(index);
+        payload.putLong(uuid.getMostSignificantBits());
+        payload.putLong(uuid.getLeastSignificantBits());
+
+        return payload;
+    }
+
+    /**
+     * Frames the payload and hands it to the writing thread
+     */
+    private void enqueue(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+
+        ByteBuffer frame = ByteBuffer.allocate(payload.capacity() + 8);
+        frame.putInt(payload.capacity());
+        frame.put(payload.array());
+        frame.putInt((int) crc.getValue());
+
+        queue.add(frame.array());
+        length += frame.capacity();
+    }
+
+    /**
+     * The loop run by the writing thread. Everything queued is handled at once,
+     * and written edits are forced once they have waited long enough.
+     */
+    private void write() {
+        ArrayList<Object> batch = new ArrayList<>();
+
+        try {
+            while (true) {
+                Object first;
+                if (unforced) {
+                    long wait = lastForce + FORCE_MILLIS - System.currentTimeMillis();
+                    first = queue.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                } else {
+                    first = queue.take();
+                }
+
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+
+                for (Object item : batch) {
+                    if (item == CLOSE || discarded) {
+                        if (!discarded) {
+                            flush();
+                            force();
+                        }
+                        closeChannel();
+                        return;
+                    } else if (item instanceof SpacetimeEventStore) {
+                        flush();
+                        replaceSnapshot((SpacetimeEventStore) item);
+                    } else if (!failed) {
+                        append((byte[]) item);
+                    }
+                }
+                batch.clear();
+
+                flush();
+                if (unforced && System.currentTimeMillis() - lastForce >= FORCE_MILLIS) {
+                    force();
+                }
+            }
+        } catch (InterruptedException ex) {
+            closeChannel();
+        } finally {
+            if (discarded) {
+                deleteFiles();
+            }
+        }
+    }
+
+    /**
+     * Replaces the snapshot, then empties the journal
+     */
+    private void replaceSnapshot(SpacetimeEventStore events) {
+        try {
+            EventIO.saveSpacetimeEvents(snapshotFile, events, done -> {
+            });
+
+            if (channel == null) {
+                channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            }
+
+            // Start over with just the header. Edits can be written again from here.
+            failed = false;
+            buffer.clear();
+            channel.truncate(0);
+            channel.position(0);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            flush();
+            force();
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Adds a frame to the buffer, writing the buffer out first if it is full
+     */
+    private void append(byte[] frame) {
+        if (buffer.remaining() < frame.length) {
+            flush();
+        }
+
+        if (failed) {
+            return;
+        }
+
+        if (frame.length > buffer.capacity()) {
+            write(ByteBuffer.wrap(frame));
+        } else {
+            buffer.put(frame);
+        }
+    }
+
+    /**
+     * Writes out the buffer
+     */
+    private void flush() {
+        buffer.flip();
+        if (buffer.hasRemaining() && !failed) {
+            write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer data) {
+        try {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            unforced = true;
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private void force() {
+        if (!unforced || failed) {
+            return;
+        }
+
+        try {
+            channel.force(false);
+            unforced = false;
+            lastForce = System.currentTimeMillis();
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Stops writing edits until the next compaction and reports the error
+     */
+    private void fail(IOException ex) {
+        failed = true;
+        unforced = false;
+        buffer.clear();
+
+        // Writes interrupted by discarding the autosave are not errors
+        if (!discarded) {
+            errorHandler.accept(ex);
+        }
+    }
+
+    /**
+     * Tells the writing thread to drop everything and delete the files, waking it
+     * and interrupting any write in progress
+     */
+    private void stopAndDiscard() {
+        discarded = true;
+        queue.clear();
+        queue.add(CLOSE);
+        writer.interrupt();
+    }
+
+    private void deleteFiles() {
+        journalFile.delete();
+        snapshotFile.delete();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+}
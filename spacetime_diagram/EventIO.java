@@ -19,19 +19,55 @@ package spacetime_diagram;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * Defines and implements how spacetime diagrams are saved and read from file
  * 
+ * Since version 2, diagrams are saved in a compact binary format:
+ * 
+ * <pre>
+ * header:       int magic ("STDG"), int version, int event count,
+ *               int name count, long offset of the string table
+ * records:      one fixed-width record per event: long UUID most significant
+ *               bits, long UUID least significant bits, double t, double x,
+ *               double beta, int name index, byte type, 3 bytes padding
+ * string table: for each name, int length in bytes followed by UTF-8 bytes
+ * segments:     for each piecewise traveller, in the order of the records, int
+ *               segment count, followed by the start time of each segment,
+ *               followed by the speed of each segment, all doubles
+ * </pre>
+ * 
+ * All values are big-endian. Files are read through a memory-mapped
+ * {@code FileChannel} straight into a {@code SpacetimeEventStore}, without
+ * creating an object per event, and saved through a temporary file that
+ * replaces the old file only once it is complete. Version 1 files, which are
+ * Java serialization streams, can still be read. Version 2 files are the same
+ * as version 3 files without the segment table, which was added for
+ * {@code PiecewiseTraveller}s.
+ * 
  * @author Jonathan Elsner
+ * @see SpacetimeEventStore
  */
 public class EventIO {
 
@@ -39,7 +75,7 @@ public class EventIO {
      * The current version of the save file that is written to disk. Incremented by
      * one each time a change is made to the structure of the save file.
      */
-    public static final int FILE_VERSION = 1;
+    public static final int FILE_VERSION = 3;
 
     /**
      * List of old file versions used in order to support backwards compatibility.
@@ -51,44 +87,256 @@ public class EventIO {
 
     static {
         // OLD_VERSIONS is constructed in this way so that it is unmodifiable
-        OLD_VERSIONS = List.of();
+        OLD_VERSIONS = List.of(1, 2);
     }
 
+    // The first four bytes of every binary diagram file, "STDG" in ASCII
+    private static final int MAGIC = 0x53544447;
+
+    // The first version saved in the binary format
+    private static final int FIRST_BINARY_VERSION = 2;
+
+    // Sizes in bytes of the parts of a binary diagram file
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 48;
+
+    // Size of the first chunk when reading a chunk at a time. Later chunks double
+    // in size, so the first events are ready quickly without making many chunks
+    private static final int FIRST_CHUNK_SIZE = 1024;
+
+    // Largest part of a file mapped into memory at once, a whole number of records
+    private static final long MAX_MAPPING = (Integer.MAX_VALUE / RECORD_SIZE) * (long) RECORD_SIZE;
+
+    // How much is written to the file at once when saving
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
     /**
      * Save a collection of events for a spacetime diagram to the specified file
      * 
      * @param outFile the file in which to save the spacetime events
      * @param events  the spacetime events to save
      * @return {@code true} if successfully saved, {@code false} otherwise
+     * @see #saveSpacetimeEvents(File, Collection, IntConsumer)
      */
     public static boolean saveSpacetimeEvents(File outFile, Collection<SpacetimeEvent> events) {
+        try {
+            saveSpacetimeEvents(outFile, events, done -> {
+            });
+
+            // Since we got here, save was successfull, so return true and leave
+            return true;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+
+        // if we got here, something bad happened, let caller know we messed up
+        return false;
+    }
+
+    /**
+     * Save a collection of events for a spacetime diagram to the specified file
+     * without ever leaving a partly written file behind. The events are written
+     * to a temporary file next to it, which is forced to disk and then moved over
+     * the file in a single step, so the file holds either the old diagram or the
+     * new one even if the program stops while saving. The directory is forced
+     * after the move, so the new diagram is still there after a power cut. Meant
+     * to be called away from the event dispatch thread, with events no other
+     * thread changes.
+     * 
+     * Interrupting the saving thread stops the save and leaves the file as it
+     * was.
+     * 
+     * @param outFile  the file in which to save the spacetime events
+     * @param events   the spacetime events to save
+     * @param progress called on the saving thread with the number of events
+     *                 written so far
+     * @throws IOException if the events could not be saved
+     */
+    public static void saveSpacetimeEvents(File outFile, Collection<SpacetimeEvent> events, IntConsumer progress)
+            throws IOException {
+        // Events in a store are written straight from its columns
+        SpacetimeEventStore store;
+        if (events instanceof SpacetimeEventStore) {
+            store = (SpacetimeEventStore) events;
+        } else {
+            store = new SpacetimeEventStore(events.size());
+            store.addAll(events);
+        }
+
+        Path target = outFile.toPath().toAbsolutePath();
+        Path tempFile = target.resolveSibling("." + target.getFileName() + ".tmp");
 
-        FileOutputStream fOutStream;
+        boolean moved = false;
         try {
-            fOutStream = new FileOutputStream(outFile);
+            try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeSpacetimeEvents(out, store, progress);
+                out.force(true);
+            }
+
+            // An interrupt after the last write must still leave the file as it was
+            if (Thread.currentThread().isInterrupted()) {
+                throw new ClosedByInterruptException();
+            }
+
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+
+        forceDirectory(target.getParent());
+    }
+
+    /**
+     * Force the entries of a directory to disk, so that a file just moved into it
+     * is still there after a crash. Some platforms can't open a directory, in
+     * which case the move is left to the file system.
+     * 
+     * @param dir the directory to force
+     * @throws IOException if the directory was opened but could not be forced
+     */
+    private static void forceDirectory(Path dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException | UnsupportedOperationException ex) {
+            // Windows can't open directories as channels
+            return;
+        }
+
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Write the events in the binary diagram format, a buffer at a time
+     * 
+     * @param out      where to write the events
+     * @param events   the events to write
+     * @param progress called with the number of events written so far
+     * @throws IOException if the events could not be written
+     */
+    private static void writeSpacetimeEvents(FileChannel out, SpacetimeEventStore events, IntConsumer progress)
+            throws IOException {
+        int n = events.size();
+
+        // Give every distinct name an index in the string table
+        HashMap<String, Integer> nameIndices = new HashMap<>();
+        ArrayList<String> names = new ArrayList<>();
+        int[] nameIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            String name = events.getName(i);
+            Integer id = nameIndices.get(name);
+
+            if (id == null) {
+                id = names.size();
+                nameIndices.put(name, id);
+                names.add(name);
+            }
+
+            nameIds[i] = id;
+        }
 
-            try (ObjectOutputStream objOutStream = new ObjectOutputStream(fOutStream)) {
-                objOutStream.writeInt(FILE_VERSION);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
 
-                // Write number of events for easier reading
-                objOutStream.writeInt(events.size());
+        buffer.putInt(MAGIC);
+        buffer.putInt(FILE_VERSION);
+        buffer.putInt(n);
+        buffer.putInt(names.size());
+        buffer.putLong(HEADER_SIZE + (long) n * RECORD_SIZE);
+
+        for (int i = 0; i < n; i++) {
+            if (buffer.remaining() < RECORD_SIZE) {
+                drain(out, buffer);
+                progress.accept(i);
+            }
+
+            UUID uuid = events.getUUID(i);
+
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+            buffer.putDouble(events.getRestT(i));
+            buffer.putDouble(events.getRestX(i));
+            buffer.putDouble(events.getRestBeta(i));
+            buffer.putInt(nameIds[i]);
+            buffer.put(events.getKind(i));
+
+            // Padding, so records stay aligned to 8 bytes
+            buffer.put((byte) 0);
+            buffer.putShort((short) 0);
+        }
 
-                // Write all the events
-                for (SpacetimeEvent evt : events) {
-                    objOutStream.writeObject(evt);
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+            if (buffer.remaining() < 4) {
+                drain(out, buffer);
+            }
+            buffer.putInt(bytes.length);
+
+            // Names longer than the buffer are written a buffer at a time
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    drain(out, buffer);
                 }
 
-                // Since we got here, save was successfull, so return true and leave
-                return true;
-            } catch (IOException ex) {
-                ex.printStackTrace();
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
             }
-        } catch (FileNotFoundException ex) {
-            ex.printStackTrace();
         }
 
-        // if we got here, something bad happened, let caller know we messed up
-        return false;
+        for (int i = 0; i < n; i++) {
+            PiecewiseWorldline worldline = events.getWorldline(i);
+            if (worldline == null) {
+                continue;
+            }
+
+            int count = worldline.getSegmentCount();
+            double[] times = new double[count];
+            double[] betas = new double[count];
+            worldline.copySegments(times, betas);
+
+            if (buffer.remaining() < 4) {
+                drain(out, buffer);
+            }
+            buffer.putInt(count);
+
+            putDoubles(out, buffer, times);
+            putDoubles(out, buffer, betas);
+        }
+
+        drain(out, buffer);
+        progress.accept(n);
+    }
+
+    /**
+     * Put the values into the buffer, writing the buffer to the channel whenever
+     * it fills up
+     */
+    private static void putDoubles(FileChannel out, ByteBuffer buffer, double[] values) throws IOException {
+        for (double value : values) {
+            if (buffer.remaining() < 8) {
+                drain(out, buffer);
+            }
+            buffer.putDouble(value);
+        }
+    }
+
+    /**
+     * Write everything in the buffer to the channel, and empty the buffer
+     */
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
     }
 
     /**
@@ -96,39 +344,306 @@ public class EventIO {
      * them
      * 
      * @param f the file from which to read the spacetime diagrams
-     * @return the collection of spacetime events in the file
+     * @return the collection of spacetime events in the file, or {@code null} if
+     *         they could not be read
+     * @see #readSpacetimeEvents(File, int, Consumer)
      */
     public static Collection<SpacetimeEvent> readSpacetimeEvents(File f) {
+        // Reading everything as one chunk hands back the store the file was read into
+        ArrayList<SpacetimeEventStore> chunks = new ArrayList<>(1);
+
+        if (!readSpacetimeEvents(f, Integer.MAX_VALUE, Integer.MAX_VALUE, chunks::add)) {
+            return null;
+        }
+
+        return chunks.isEmpty() ? new SpacetimeEventStore(0) : chunks.get(0);
+    }
+
+    /**
+     * Read all of the spacetime events in a file into one store, throwing the
+     * reason if they can't be read instead of returning {@code null}
+     * 
+     * @param f the file from which to read the spacetime events
+     * @return the events in the file
+     * @throws IOException if the file can't be read, is not a diagram of a
+     *                     version this can read, or reading was interrupted
+     * @see #readSpacetimeEvents(File)
+     */
+    public static SpacetimeEventStore readSpacetimeEventStore(File f) throws IOException {
+        ArrayList<SpacetimeEventStore> chunks = new ArrayList<>(1);
+
+        if (!read(f, Integer.MAX_VALUE, Integer.MAX_VALUE, chunks::add)) {
+            throw new InterruptedIOException("Reading " + f + " was interrupted");
+        }
+
+        return chunks.isEmpty() ? new SpacetimeEventStore(0) : chunks.get(0);
+    }
+
+    /**
+     * Read the spacetime events in a file a chunk at a time, so that the events
+     * already read can be used while the rest of the file is still being read.
+     * Meant to be called away from the event dispatch thread.
+     * 
+     * The first chunk is small, so the first events are ready within
+     * milliseconds, and each chunk after it is twice as large as the one before,
+     * up to {@code chunkSize}. Reading stops early, returning {@code false}, if
+     * the reading thread is interrupted.
+     * 
+     * @param f         the file from which to read the spacetime events
+     * @param chunkSize the largest number of events in each chunk
+     * @param chunks    called on the reading thread with each chunk of events, in
+     *                  the order they appear in the file
+     * @return {@code true} if the whole file was read, {@code false} otherwise
+     * @throws IllegalArgumentException if {@code chunkSize < 1}
+     */
+    public static boolean readSpacetimeEvents(File f, int chunkSize, Consumer<? super SpacetimeEventStore> chunks) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size < 1: " + chunkSize);
+        }
+
+        return readSpacetimeEvents(f, Math.min(FIRST_CHUNK_SIZE, chunkSize), chunkSize, chunks);
+    }
+
+    /**
+     * Read the spacetime events in a file in chunks growing from
+     * {@code firstChunkSize} to {@code chunkSize} events
+     */
+    private static boolean readSpacetimeEvents(File f, int firstChunkSize, int chunkSize,
+            Consumer<? super SpacetimeEventStore> chunks) {
+        try {
+            return read(f, firstChunkSize, chunkSize, chunks);
+        } catch (ClosedByInterruptException ex) {
+            // Reading was cancelled, which is not an error
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+
+        // If we got here, something bad happened, and we don't have the objects from
+        // the file
+        return false;
+    }
+
+    /**
+     * Read the spacetime events in a file in chunks, in whichever format the file
+     * is in
+     * 
+     * @return {@code true} if the whole file was read, {@code false} if reading was
+     *         interrupted
+     * @throws IOException if the file could not be read, or is not a diagram of a
+     *                     version this can read
+     */
+    private static boolean read(File f, int firstChunkSize, int chunkSize,
+            Consumer<? super SpacetimeEventStore> chunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(2);
+            channel.read(start, 0);
+            start.flip();
+
+            // Version 1 files are Java serialization streams
+            if (start.remaining() == 2 && start.getShort() == ObjectStreamConstants.STREAM_MAGIC) {
+                return readSerializedSpacetimeEvents(f, firstChunkSize, chunkSize, chunks);
+            }
+
+            return readBinarySpacetimeEvents(channel, firstChunkSize, chunkSize, chunks);
+        }
+    }
+
+    /**
+     * Read the events from a file in the binary format, mapping the file into
+     * memory instead of copying it through a stream
+     * 
+     * @param channel        the open file
+     * @param firstChunkSize the number of events in the first chunk
+     * @param chunkSize      the largest number of events in each chunk
+     * @param chunks         called with each chunk of events
+     * @return {@code true} if the whole file was read, {@code false} if reading was
+     *         interrupted
+     * @throws IOException if the file could not be read, or is not a binary
+     *                     diagram of a version this can read
+     */
+    private static boolean readBinarySpacetimeEvents(FileChannel channel, int firstChunkSize, int chunkSize,
+            Consumer<? super SpacetimeEventStore> chunks) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            throw new IOException("Not a diagram file");
+        }
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+        // make sure the file is a diagram, and its version is compatible
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a diagram file");
+        }
+
+        int version = header.getInt();
+        if (version < FIRST_BINARY_VERSION || FILE_VERSION < version) {
+            throw new IOException("Unsupported diagram file version " + version);
+        }
+
+        int n = header.getInt();
+        int nameCount = header.getInt();
+        long stringTableOffset = header.getLong();
+
+        // Every name takes at least the four bytes of its length
+        long tableSize = fileSize - stringTableOffset;
+        if (n < 0 || nameCount < 0 || stringTableOffset != HEADER_SIZE + (long) n * RECORD_SIZE
+                || stringTableOffset > fileSize || 4L * nameCount > tableSize || tableSize > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt diagram file header");
+        }
+
+        // Read the string table first, so records can refer to it. The segment table
+        // follows it, and is read as the piecewise travellers are reached.
+        String[] names = new String[nameCount];
+        MappedByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, stringTableOffset, tableSize);
+        for (int i = 0; i < nameCount; i++) {
+            int length = strings.remaining() >= 4 ? strings.getInt() : -1;
+            if (length < 0 || strings.remaining() < length) {
+                throw new IOException("Corrupt string table");
+            }
+
+            byte[] bytes = new byte[length];
+            strings.get(bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // Copy the records straight into the columns of each chunk, mapping at most
+        // MAX_MAPPING bytes at a time
+        SpacetimeEventStore chunk = null;
+        int size = firstChunkSize;
+        int remaining = n;
+        long position = HEADER_SIZE;
+        while (position < stringTableOffset) {
+            long length = Math.min(MAX_MAPPING, stringTableOffset - position);
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            while (records.hasRemaining()) {
+                if (chunk == null) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+
+                    chunk = new SpacetimeEventStore(Math.min(size, remaining));
+                }
+
+                long uuidMost = records.getLong();
+                long uuidLeast = records.getLong();
+                double t = records.getDouble();
+                double x = records.getDouble();
+                double beta = records.getDouble();
+                int nameIndex = records.getInt();
+                byte kind = records.get();
+                records.position(records.position() + 3);
+
+                if (nameIndex < 0 || nameCount <= nameIndex) {
+                    throw new IOException("Corrupt diagram file record");
+                }
+
+                // Appending an event whose UUID is already in the chunk throws
+                try {
+                    if (kind == SpacetimeEventStore.PIECEWISE && version >= 3) {
+                        chunk.append(readWorldline(strings, x), uuidMost, uuidLeast, names[nameIndex]);
+                    } else if (kind == SpacetimeEventStore.EVENT || kind == SpacetimeEventStore.TRAVELLER) {
+                        chunk.append(kind, t, x, beta, uuidMost, uuidLeast, names[nameIndex]);
+                    } else {
+                        throw new IOException("Corrupt diagram file record");
+                    }
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException("Corrupt diagram file record", ex);
+                }
+                remaining--;
+
+                if (chunk.size() == size) {
+                    chunks.accept(chunk);
+                    chunk = null;
+                    size = (int) Math.min(2L * size, chunkSize);
+                }
+            }
+
+            position += length;
+        }
+
+        if (chunk != null) {
+            chunks.accept(chunk);
+        }
+
+        return true;
+    }
+
+    /**
+     * Read the next worldline from the segment table
+     * 
+     * @param segments the segment table, positioned at the start of the worldline
+     * @param x        the position of the start of the first segment
+     * @return the worldline
+     * @throws IOException if the table does not hold a valid worldline
+     */
+    private static PiecewiseWorldline readWorldline(ByteBuffer segments, double x) throws IOException {
+        try {
+            int count = segments.getInt();
+            if (count < 1 || segments.remaining() < 16L * count) {
+                throw new IOException("Corrupt diagram file segments");
+            }
+
+            double[] times = new double[count];
+            double[] betas = new double[count];
+            segments.asDoubleBuffer().get(times).get(betas);
+            segments.position(segments.position() + 16 * count);
+
+            return new PiecewiseWorldline(times, betas, x);
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("Corrupt diagram file segments", ex);
+        }
+    }
+
+    /**
+     * Read the events from a file saved with Java serialization, as files were
+     * before version 2
+     * 
+     * @param f              the file from which to read the spacetime events
+     * @param firstChunkSize the number of events in the first chunk
+     * @param chunkSize      the largest number of events in each chunk
+     * @param chunks         called with each chunk of events
+     * @return {@code true} if the whole file was read, {@code false} if reading was
+     *         interrupted
+     * @throws IOException if the file could not be read, or is not a diagram of a
+     *                     version this can read
+     */
+    private static boolean readSerializedSpacetimeEvents(File f, int firstChunkSize, int chunkSize,
+            Consumer<? super SpacetimeEventStore> chunks) throws IOException {
         // Let's do a better job coding here with try-with-resources instead of whatever
         // mess I wrote in the save method
         try (FileInputStream fIn = new FileInputStream(f); ObjectInputStream objIn = new ObjectInputStream(fIn)) {
             int version = objIn.readInt();
 
             // make sure the version of the file is compatible
-            if (version != FILE_VERSION) {
-                return null;
+            if (!OLD_VERSIONS.contains(version)) {
+                throw new IOException("Unsupported diagram file version " + version);
             }
 
             // read the number of spacetime events stored
             int n = objIn.readInt();
 
             // read the events
-            ArrayList<SpacetimeEvent> events = new ArrayList<>(n);
-            for (int i = 0; i < n; i++) {
-                events.add((SpacetimeEvent) objIn.readObject());
+            int size = firstChunkSize;
+            for (int i = 0; i < n; i += size, size = (int) Math.min(2L * size, chunkSize)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+
+                SpacetimeEventStore chunk = new SpacetimeEventStore(Math.min(size, n - i));
+                for (int k = 0; k < size && i + k < n; k++) {
+                    chunk.add((SpacetimeEvent) objIn.readObject());
+                }
+
+                chunks.accept(chunk);
             }
 
-            return events;
-        } catch (FileNotFoundException ex) {
-            ex.printStackTrace();
-        } catch (IOException ex) {
-            ex.printStackTrace();
+            return true;
         } catch (ClassNotFoundException ex) {
-            ex.printStackTrace();
+            throw new IOException("Corrupt diagram file", ex);
+        } catch (IllegalArgumentException ex) {
+            // The file holds two events with the same UUID
+            throw new IOException("Corrupt diagram file", ex);
         }
-
-        // If we got here, something bad happened, and we don't have the objects from
-        // the file
-        return null;
     }
 }
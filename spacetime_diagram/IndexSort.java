@@ -0,0 +1,199 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+/**
+ * Sorts the numbers of events or travellers by the values of a column, without
+ * boxing them the way sorting with a {@code Comparator<Integer>} would.
+ * 
+ * Numbers are ordered by a primary key, then an optional secondary key, then
+ * by number, with the keys compared by {@link Double#compare(double, double)}.
+ * Since no two numbers compare equal, the order is the same as a stable sort's,
+ * and they can be sorted in place by an introsort: quicksort with the median of
+ * three as the pivot, switching to heapsort if it recurses too deeply and to
+ * insertion sort for short ranges.
+ * 
+ * @author Jonathan Elsner
+ * @see CausalGraph
+ * @see WorldlineIntersections
+ */
+final class IndexSort {
+
+    // Ranges this short are finished with insertion sort
+    private static final int INSERTION_THRESHOLD = 16;
+
+    private final double[] primary;
+    private final double[] secondary;
+
+    private IndexSort(double[] primary, double[] secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+    }
+
+    /**
+     * Returns the numbers from {@code 0} to {@code n - 1} sorted by the keys
+     * 
+     * @param n         how many numbers to sort
+     * @param primary   the key compared first, at least {@code n} long
+     * @param secondary the key compared when the primary keys are equal, or
+     *                  {@code null} to go straight to the numbers
+     * @return the sorted numbers
+     */
+    static int[] sortedIndices(int n, double[] primary, double[] secondary) {
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = i;
+        }
+
+        new IndexSort(primary, secondary).introsort(indices, 0, n, 2 * (31 - Integer.numberOfLeadingZeros(n + 1)));
+        return indices;
+    }
+
+    /**
+     * Sorts [lo, hi), switching to heapsort once {@code depth} more partitions
+     * have been made
+     */
+    private void introsort(int[] a, int lo, int hi, int depth) {
+        while (hi - lo > INSERTION_THRESHOLD) {
+            if (depth-- == 0) {
+                heapsort(a, lo, hi);
+                return;
+            }
+
+            int p = partition(a, lo, hi);
+
+            // Recurse into the shorter side, so the stack stays logarithmic
+            if (p - lo < hi - p) {
+                introsort(a, lo, p, depth);
+                lo = p + 1;
+            } else {
+                introsort(a, p + 1, hi, depth);
+                hi = p;
+            }
+        }
+
+        insertionSort(a, lo, hi);
+    }
+
+    /**
+     * Partitions [lo, hi) around the median of its first, middle and last
+     * elements, returning where the pivot ends up
+     */
+    private int partition(int[] a, int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        int last = hi - 1;
+
+        // Order the three, then move the median to the front as the pivot
+        if (less(a[mid], a[lo])) {
+            swap(a, mid, lo);
+        }
+        if (less(a[last], a[mid])) {
+            swap(a, last, mid);
+            if (less(a[mid], a[lo])) {
+                swap(a, mid, lo);
+            }
+        }
+        swap(a, lo, mid);
+
+        int pivot = a[lo];
+        int i = lo;
+        int j = hi;
+        while (true) {
+            do {
+                i++;
+            } while (i < hi && less(a[i], pivot));
+            do {
+                j--;
+            } while (less(pivot, a[j]));
+
+            if (i >= j) {
+                break;
+            }
+            swap(a, i, j);
+        }
+
+        swap(a, lo, j);
+        return j;
+    }
+
+    private void heapsort(int[] a, int lo, int hi) {
+        int n = hi - lo;
+
+        for (int k = n / 2 - 1; k >= 0; k--) {
+            siftDown(a, lo, k, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(a, lo, lo + end);
+            siftDown(a, lo, 0, end);
+        }
+    }
+
+    /**
+     * Moves the element at {@code k} of the heap in the first {@code n} elements
+     * from {@code lo} down until it is no smaller than its children
+     */
+    private void siftDown(int[] a, int lo, int k, int n) {
+        int x = a[lo + k];
+
+        while (2 * k + 1 < n) {
+            int child = 2 * k + 1;
+            if (child + 1 < n && less(a[lo + child], a[lo + child + 1])) {
+                child++;
+            }
+            if (!less(x, a[lo + child])) {
+                break;
+            }
+
+            a[lo + k] = a[lo + child];
+            k = child;
+        }
+
+        a[lo + k] = x;
+    }
+
+    private void insertionSort(int[] a, int lo, int hi) {
+        for (int i = lo + 1; i < hi; i++) {
+            int x = a[i];
+
+            int j = i - 1;
+            while (j >= lo && less(x, a[j])) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = x;
+        }
+    }
+
+    /**
+     * Whether number {@code i} comes before number {@code j}
+     */
+    private boolean less(int i, int j) {
+        int cmp = Double.compare(primary[i], primary[j]);
+        if (cmp == 0 && secondary != null) {
+            cmp = Double.compare(secondary[i], secondary[j]);
+        }
+
+        return cmp != 0 ? cmp < 0 : i < j;
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
@@ -0,0 +1,328 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+/**
+ * An inertial reference frame moving at a constant speed relative to the rest
+ * frame. The Lorentz factor and the other values the transformations need are
+ * computed once when the frame is constructed, so transforming coordinates
+ * with a frame costs a few multiplications and never allocates.
+ * 
+ * Frames are immutable. The speed of light is fixed when a frame is
+ * constructed, so a frame constructed before {@link LorentzTransform#setC}
+ * keeps using the old value.
+ * 
+ * @author Jonathan Elsner
+ * @see LorentzTransform
+ */
+public final class LorentzFrame {
+
+    private final double beta;
+    private final double c;
+
+    // Precomputed values used by the transformations
+    private final double gamma;
+    private final double betaC;
+    private final double betaOverC;
+
+    /**
+     * Constructs a frame moving at the specified speed, using the current speed
+     * of light
+     * 
+     * @param beta the speed of the frame as a fraction of the speed of light
+     * @throws IllegalArgumentException if {@code |beta| > 1} or {@code beta} is NaN
+     * @see LorentzTransform#getC()
+     */
+    public LorentzFrame(double beta) {
+        this(beta, LorentzTransform.getC());
+    }
+
+    /**
+     * Constructs a frame moving at the specified speed
+     * 
+     * @param beta the speed of the frame as a fraction of the speed of light
+     * @param c    the speed of light
+     * @throws IllegalArgumentException if {@code |beta| > 1}, {@code beta} is NaN or
+     *                                  {@code c <= 0}
+     */
+    public LorentzFrame(double beta, double c) {
+        if (!(Math.abs(beta) <= 1)) {
+            throw new IllegalArgumentException("|beta| > 1 or NaN: " + beta);
+        }
+        if (!(c > 0)) {
+            throw new IllegalArgumentException("Speed of light <= 0: " + c);
+        }
+
+        this.beta = beta;
+        this.c = c;
+
+        gamma = LorentzTransform.lorentz_factor(beta);
+        betaC = beta * c;
+        betaOverC = beta * (1 / c);
+    }
+
+    /**
+     * Returns the speed of this frame relative to the rest frame
+     * 
+     * @return the speed as a fraction of the speed of light
+     */
+    public double getBeta() {
+        return beta;
+    }
+
+    /**
+     * Returns the speed of light used by this frame
+     * 
+     * @return the speed of light
+     */
+    public double getC() {
+        return c;
+    }
+
+    /**
+     * Returns the Lorentz factor (gamma) of this frame
+     * 
+     * @return the Lorentz factor
+     */
+    public double getGamma() {
+        return gamma;
+    }
+
+    /**
+     * Computes the x-coordinate in this frame of an event in the rest frame
+     * 
+     * @param x the x-coordinate in the rest frame
+     * @param t the t-coordinate in the rest frame
+     * @return the x-coordinate in this frame
+     */
+    public double transformX(double x, double t) {
+        return gamma * (x - betaC * t);
+    }
+
+    /**
+     * Computes the t-coordinate in this frame of an event in the rest frame
+     * 
+     * @param x the x-coordinate in the rest frame
+     * @param t the t-coordinate in the rest frame
+     * @return the t-coordinate in this frame
+     */
+    public double transformT(double x, double t) {
+        return gamma * (t - betaOverC * x);
+    }
+
+    /**
+     * Computes the x-coordinate in the rest frame of an event in this frame
+     * 
+     * @param x the x-coordinate in this frame
+     * @param t the t-coordinate in this frame
+     * @return the x-coordinate in the rest frame
+     */
+    public double inverseX(double x, double t) {
+        return gamma * (x + betaC * t);
+    }
+
+    /**
+     * Computes the t-coordinate in the rest frame of an event in this frame
+     * 
+     * @param x the x-coordinate in this frame
+     * @param t the t-coordinate in this frame
+     * @return the t-coordinate in the rest frame
+     */
+    public double inverseT(double x, double t) {
+        return gamma * (t + betaOverC * x);
+    }
+
+    /**
+     * Computes the coordinates in this frame of a range of events in the rest
+     * frame. The output arrays may be the same as the input arrays.
+     * 
+     * @param x    the x-coordinates in the rest frame
+     * @param t    the t-coordinates in the rest frame
+     * @param xOut the array in which to store the x-coordinates in this frame
+     * @param tOut the array in which to store the t-coordinates in this frame
+     * @param from the first index to transform (inclusive)
+     * @param to   the last index to transform (exclusive)
+     * @throws ArrayIndexOutOfBoundsException if any array is shorter than
+     *                                        {@code to}
+     */
+    public void transform(double[] x, double[] t, double[] xOut, double[] tOut, int from, int to) {
+        for (int i = from; i < to; i++) {
+            // Read both coordinates before writing, so this works in place
+            double xi = x[i];
+            double ti = t[i];
+
+            xOut[i] = gamma * (xi - betaC * ti);
+            tOut[i] = gamma * (ti - betaOverC * xi);
+        }
+    }
+
+    /**
+     * Computes the coordinates in the rest frame of a range of events in this
+     * frame. The output arrays may be the same as the input arrays.
+     * 
+     * @param x    the x-coordinates in this frame
+     * @param t    the t-coordinates in this frame
+     * @param xOut the array in which to store the x-coordinates in the rest frame
+     * @param tOut the array in which to store the t-coordinates in the rest frame
+     * @param from the first index to transform (inclusive)
+     * @param to   the last index to transform (exclusive)
+     * @throws ArrayIndexOutOfBoundsException if any array is shorter than
+     *                                        {@code to}
+     */
+    public void inverse(double[] x, double[] t, double[] xOut, double[] tOut, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double xi = x[i];
+            double ti = t[i];
+
+            xOut[i] = gamma * (xi + betaC * ti);
+            tOut[i] = gamma * (ti + betaOverC * xi);
+        }
+    }
+
+    /**
+     * Computes the speed in this frame of an object moving at the specified speed
+     * in the rest frame
+     * 
+     * @param restBeta the speed of the object in the rest frame as a fraction of
+     *                 the speed of light
+     * @return the speed of the object in this frame
+     */
+    public double velocity(double restBeta) {
+        return (restBeta - beta) / (1 - beta * restBeta);
+    }
+
+    /**
+     * Computes the speed in the rest frame of an object moving at the specified
+     * speed in this frame
+     * 
+     * @param observedBeta the speed of the object in this frame as a fraction of
+     *                     the speed of light
+     * @return the speed of the object in the rest frame
+     */
+    public double restVelocity(double observedBeta) {
+        return (observedBeta + beta) / (1 + beta * observedBeta);
+    }
+
+    /**
+     * Computes the speeds in this frame of a range of objects moving at the
+     * specified speeds in the rest frame
+     * 
+     * @param restBetas the speeds of the objects in the rest frame
+     * @param betasOut  the array in which to store the speeds in this frame. May
+     *                  be the same as {@code restBetas}
+     * @param from      the first index to transform (inclusive)
+     * @param to        the last index to transform (exclusive)
+     */
+    public void velocities(double[] restBetas, double[] betasOut, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double restBeta = restBetas[i];
+            betasOut[i] = (restBeta - beta) / (1 - beta * restBeta);
+        }
+    }
+
+    /**
+     * Computes how fast a clock moving at the specified speed in the rest frame
+     * ticks according to this frame. The time dilation only depends on the speed
+     * of the clock in this frame, {@code sqrt(1 - beta'^2)}, which is written in
+     * terms of the rest frame speeds here so that it is not rounded twice.
+     * 
+     * @param restBeta the speed of the clock in the rest frame as a fraction of
+     *                 the speed of light
+     * @return the proper time of the clock per unit of time in this frame
+     */
+    public double clockRate(double restBeta) {
+        return Math.sqrt(1 - restBeta * restBeta) / (gamma * (1 - beta * restBeta));
+    }
+
+    /**
+     * Computes how fast a range of clocks moving at the specified speeds in the
+     * rest frame tick according to this frame
+     * 
+     * @param restBetas the speeds of the clocks in the rest frame
+     * @param ratesOut  the array in which to store the proper time of each clock
+     *                  per unit of time in this frame. May be the same as
+     *                  {@code restBetas}
+     * @param from      the first index to compute (inclusive)
+     * @param to        the last index to compute (exclusive)
+     * @see #clockRate(double)
+     */
+    public void clockRates(double[] restBetas, double[] ratesOut, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double restBeta = restBetas[i];
+            ratesOut[i] = Math.sqrt(1 - restBeta * restBeta) / (gamma * (1 - beta * restBeta));
+        }
+    }
+
+    /**
+     * Returns the rest frame as seen from this frame, which moves at the opposite
+     * speed
+     * 
+     * @return the inverse of this frame
+     */
+    public LorentzFrame inverse() {
+        return new LorentzFrame(-beta, c);
+    }
+
+    /**
+     * Returns the frame moving with the specified speed relative to this frame.
+     * Transforming with the result is the same as transforming with this frame,
+     * then with {@code relative}.
+     * 
+     * @param relative the frame whose speed is relative to this frame
+     * @return the combined frame, relative to the rest frame
+     * @throws IllegalArgumentException if the frames use different speeds of
+     *                                  light
+     */
+    public LorentzFrame compose(LorentzFrame relative) {
+        if (relative.c != c) {
+            throw new IllegalArgumentException("Frames use different speeds of light");
+        }
+
+        return new LorentzFrame(restVelocity(relative.beta), c);
+    }
+
+    /**
+     * Two frames are equal if they have the same speed and speed of light
+     * 
+     * @param obj the object to compare with
+     * @return {@code true} if {@code obj} is an equal frame
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof LorentzFrame)) {
+            return false;
+        }
+
+        LorentzFrame other = (LorentzFrame) obj;
+        return Double.compare(beta, other.beta) == 0 && Double.compare(c, other.c) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(beta) + Double.hashCode(c);
+    }
+
+    @Override
+    public String toString() {
+        return "LorentzFrame[beta=" + beta + ", c=" + c + "]";
+    }
+}
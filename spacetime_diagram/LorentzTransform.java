@@ -132,7 +132,88 @@ public class LorentzTransform {
      * @return the Lorentz Factor
      */
     public static double lorentz_factor(double beta) {
-        return 1 / Math.sqrt(1 - Math.pow(beta, 2));
+        return 1 / Math.sqrt(1 - beta * beta);
+    }
+
+    /**
+     * Computes the x- and t-coordinates of many events in a moving reference frame
+     * at once. The Lorentz factor is computed a single time for the whole batch,
+     * so this is much faster than calling {@link #xTransform(double, double, double)}
+     * and {@link #tTransform(double, double, double)} for each event.
+     *
+     * The output arrays may be the same arrays as the input arrays, in which case
+     * the coordinates are transformed in place.
+     *
+     * @param beta   the speed of the moving reference frame as a fraction of the
+     *               speed of light
+     * @param x      the x-coordinates in the initial reference frame
+     * @param t      the t-coordinates in the initial reference frame
+     * @param xOut   the array in which to store the x-coordinates in the moving
+     *               reference frame
+     * @param tOut   the array in which to store the t-coordinates in the moving
+     *               reference frame
+     * @param length the number of coordinates to transform, starting at index
+     *               {@code 0}
+     * @throws ArrayIndexOutOfBoundsException if any array is shorter than
+     *                                        {@code length}
+     */
+    public static void transform(double beta, double[] x, double[] t, double[] xOut, double[] tOut, int length) {
+        transform(beta, x, t, xOut, tOut, 0, length);
+    }
+
+    /**
+     * Computes the x- and t-coordinates of a range of events in a moving reference
+     * frame at once.
+     *
+     * @param beta the speed of the moving reference frame as a fraction of the
+     *             speed of light
+     * @param x    the x-coordinates in the initial reference frame
+     * @param t    the t-coordinates in the initial reference frame
+     * @param xOut the array in which to store the x-coordinates in the moving
+     *             reference frame
+     * @param tOut the array in which to store the t-coordinates in the moving
+     *             reference frame
+     * @param from the first index to transform (inclusive)
+     * @param to   the last index to transform (exclusive)
+     * @throws ArrayIndexOutOfBoundsException if any array is shorter than
+     *                                        {@code to}
+     * @see #transform(double, double[], double[], double[], double[], int)
+     */
+    public static void transform(double beta, double[] x, double[] t, double[] xOut, double[] tOut, int from,
+            int to) {
+        double gamma = lorentz_factor(beta);
+        double betaC = beta * c;
+        double betaOverC = beta / c;
+
+        for (int i = from; i < to; i++) {
+            // Read both coordinates before writing, so this works in place
+            double xi = x[i];
+            double ti = t[i];
+
+            xOut[i] = gamma * (xi - betaC * ti);
+            tOut[i] = gamma * (ti - betaOverC * xi);
+        }
+    }
+
+    /**
+     * Computes the speeds (betas) of many objects according to a moving reference
+     * frame at once.
+     *
+     * @param observerBeta     the speed of the moving frame as a fraction of the
+     *                         speed of light
+     * @param betasInRestFrame the speeds of the objects in the rest frame
+     * @param betasOut         the array in which to store the speeds in the moving
+     *                         frame. May be the same as {@code betasInRestFrame}
+     * @param from             the first index to transform (inclusive)
+     * @param to               the last index to transform (exclusive)
+     * @see #speedTransform(double, double)
+     */
+    public static void speedTransform(double observerBeta, double[] betasInRestFrame, double[] betasOut, int from,
+            int to) {
+        for (int i = from; i < to; i++) {
+            double beta = betasInRestFrame[i];
+            betasOut[i] = (beta - observerBeta) / (1 - observerBeta * beta);
+        }
     }
 
     /**
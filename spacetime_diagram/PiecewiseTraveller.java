@@ -0,0 +1,137 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import java.util.UUID;
+
+/**
+ * A traveller whose speed changes, such as a rocket that speeds up, turns
+ * around and comes back. Its worldline is a {@code PiecewiseWorldline} made of
+ * straight segments.
+ * 
+ * The coordinates of the traveller are the start of its first segment, and its
+ * speed is the speed of its first segment, so moving the traveller moves the
+ * whole worldline, and changing its speed changes the first segment, moving
+ * the segments after it.
+ * 
+ * @author Jonathan Elsner
+ * @see PiecewiseWorldline
+ */
+public class PiecewiseTraveller extends SpacetimeTraveller {
+
+    private static final long serialVersionUID = 1L;
+
+    private PiecewiseWorldline worldline;
+
+    /**
+     * Constructs a new PiecewiseTraveller
+     * 
+     * @param name      the name of the traveller
+     * @param worldline the worldline of the traveller
+     */
+    public PiecewiseTraveller(String name, PiecewiseWorldline worldline) {
+        this(UUID.randomUUID(), name, worldline);
+    }
+
+    /**
+     * Constructs a PiecewiseTraveller with a known UUID
+     * 
+     * @param uuid      the UUID of the traveller
+     * @param name      the name of the traveller
+     * @param worldline the worldline of the traveller
+     */
+    protected PiecewiseTraveller(UUID uuid, String name, PiecewiseWorldline worldline) {
+        super(uuid, name, 0, 0, 0);
+
+        this.worldline = worldline;
+    }
+
+    /**
+     * Returns the worldline of this traveller
+     * 
+     * @return the worldline, which cannot change
+     */
+    public PiecewiseWorldline getWorldline() {
+        return worldline;
+    }
+
+    /**
+     * Replaces the worldline of this traveller. All changes to the worldline go
+     * through this method.
+     * 
+     * @param worldline the new worldline
+     */
+    public void setWorldline(PiecewiseWorldline worldline) {
+        this.worldline = worldline;
+    }
+
+    @Override
+    public double getRestT() {
+        return getWorldline().getStartT(0);
+    }
+
+    @Override
+    public double getRestX() {
+        return getWorldline().getStartX(0);
+    }
+
+    /**
+     * Moves the whole worldline so that its first segment starts at the specified
+     * coordinates
+     * 
+     * @param t the new t-coordinate of the start in the rest frame
+     * @param x the new x-coordinate of the start in the rest frame
+     */
+    @Override
+    protected void setRestCoordinates(double t, double x) {
+        PiecewiseWorldline current = getWorldline();
+
+        setWorldline(current.translate(t - current.getStartT(0), x - current.getStartX(0)));
+    }
+
+    /**
+     * Returns the speed of the first segment in the rest frame
+     * 
+     * @return the speed as a fraction of the speed of light
+     */
+    @Override
+    public double getRestBeta() {
+        return getWorldline().getBeta(0);
+    }
+
+    /**
+     * Sets the speed of the first segment in the rest frame, moving the segments
+     * after it
+     * 
+     * @param beta the new speed as a fraction of the speed of light
+     */
+    @Override
+    protected void setRestBeta(double beta) {
+        setWorldline(getWorldline().withBeta(0, beta));
+    }
+
+    @Override
+    public double getPositionAt(LorentzFrame frame, double t) {
+        return getWorldline().getX(frame, t);
+    }
+
+    @Override
+    public double getProperTime(LorentzFrame frame, double t1, double t2) {
+        return getWorldline().getProperTime(frame, t1, t2);
+    }
+}
@@ -0,0 +1,432 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The worldline of a traveller whose speed changes: a chain of straight
+ * segments, each starting where the last one ends.
+ * 
+ * Segment {@code k} starts at time {@link #getStartT(int)} in the rest frame and
+ * moves at {@link #getBeta(int)} until the next segment starts. The first
+ * segment also reaches back forever, and the last one forward forever, so a
+ * worldline with one segment is the same as an ordinary traveller's.
+ * 
+ * The start of each segment, its position there and the proper time elapsed by
+ * then are kept in primitive arrays sorted by time, so finding the segment at
+ * a time is a binary search. Finding the position or proper time at a time,
+ * in any frame, takes {@code O(log n)} time for {@code n} segments. Worldlines
+ * are immutable; the methods that change one return a new worldline. They are
+ * serializable, so that a {@code PiecewiseTraveller} is too, and are checked
+ * again when they are read.
+ * 
+ * @author Jonathan Elsner
+ * @see PiecewiseTraveller
+ */
+public final class PiecewiseWorldline implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // The start of each segment in the rest frame, its speed, and the proper time
+    // since the start of the first segment
+    private final double[] times;
+    private final double[] positions;
+    private final double[] betas;
+    private final double[] properTimes;
+
+    /**
+     * Constructs a worldline from the times its speed changes
+     * 
+     * @param times the time each segment starts in the rest frame, in increasing
+     *              order
+     * @param betas the speed of each segment in the rest frame as a fraction of the
+     *              speed of light
+     * @param x     the position at the start of the first segment in the rest
+     *              frame
+     * @throws IllegalArgumentException if there are no segments, the arrays are
+     *                                  different lengths, the times are not finite
+     *                                  and increasing, or a speed is not slower
+     *                                  than light
+     */
+    public PiecewiseWorldline(double[] times, double[] betas, double x) {
+        if (times.length == 0 || times.length != betas.length) {
+            throw new IllegalArgumentException(
+                    "Need the same number of times and speeds: " + times.length + " and " + betas.length);
+        }
+        if (!Double.isFinite(x)) {
+            throw new IllegalArgumentException("Position not finite: " + x);
+        }
+
+        for (int k = 0; k < times.length; k++) {
+            if (!Double.isFinite(times[k]) || (k > 0 && !(times[k - 1] < times[k]))) {
+                throw new IllegalArgumentException("Segment times not finite and increasing at segment " + k);
+            }
+            if (!(Math.abs(betas[k]) < 1)) {
+                throw new IllegalArgumentException("Beta >= 1: " + betas[k]);
+            }
+        }
+
+        this.times = times.clone();
+        this.betas = betas.clone();
+        positions = new double[times.length];
+        properTimes = new double[times.length];
+
+        positions[0] = x;
+        integrate(0);
+    }
+
+    /**
+     * Constructs a worldline from arrays that are already checked and filled in
+     */
+    private PiecewiseWorldline(double[] times, double[] positions, double[] betas, double[] properTimes) {
+        this.times = times;
+        this.positions = positions;
+        this.betas = betas;
+        this.properTimes = properTimes;
+    }
+
+    /**
+     * Builds the worldline read from a stream again from its times, speeds and
+     * starting position, so that a stream can't make a worldline that the
+     * constructor wouldn't
+     */
+    private Object readResolve() throws ObjectStreamException {
+        if (times == null || betas == null || positions == null || positions.length == 0) {
+            throw new InvalidObjectException("Missing segments");
+        }
+
+        try {
+            return new PiecewiseWorldline(times, betas, positions[0]);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidObjectException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Fills in the positions and proper times of the segments after {@code from}
+     */
+    private void integrate(int from) {
+        for (int k = from + 1; k < times.length; k++) {
+            double dt = times[k] - times[k - 1];
+            double beta = betas[k - 1];
+
+            positions[k] = positions[k - 1] + beta * dt;
+            properTimes[k] = properTimes[k - 1] + dt * Math.sqrt(1 - beta * beta);
+        }
+    }
+
+    /**
+     * Returns the number of segments
+     * 
+     * @return the number of segments, at least one
+     */
+    public int getSegmentCount() {
+        return times.length;
+    }
+
+    /**
+     * Returns when a segment starts in the rest frame
+     * 
+     * @param segment the segment
+     * @return the t-coordinate of its start in the rest frame
+     * @throws IndexOutOfBoundsException if the segment does not exist
+     */
+    public double getStartT(int segment) {
+        return times[segment];
+    }
+
+    /**
+     * Returns where a segment starts in the rest frame
+     * 
+     * @param segment the segment
+     * @return the x-coordinate of its start in the rest frame
+     * @throws IndexOutOfBoundsException if the segment does not exist
+     */
+    public double getStartX(int segment) {
+        return positions[segment];
+    }
+
+    /**
+     * Returns the speed of a segment in the rest frame
+     * 
+     * @param segment the segment
+     * @return the speed as a fraction of the speed of light
+     * @throws IndexOutOfBoundsException if the segment does not exist
+     */
+    public double getBeta(int segment) {
+        return betas[segment];
+    }
+
+    /**
+     * Returns the proper time from the start of the first segment to the start of
+     * a segment
+     * 
+     * @param segment the segment
+     * @return the time passed on the traveller's clock
+     * @throws IndexOutOfBoundsException if the segment does not exist
+     */
+    public double getStartProperTime(int segment) {
+        return properTimes[segment];
+    }
+
+    /**
+     * Returns the segment the worldline is on at a time in the rest frame
+     * 
+     * @param t the t-coordinate in the rest frame
+     * @return the last segment starting at or before {@code t}, or the first
+     *         segment if none does
+     */
+    public int segmentAt(double t) {
+        int k = Arrays.binarySearch(times, t);
+
+        return k >= 0 ? k : Math.max(0, -k - 2);
+    }
+
+    /**
+     * Returns the segment the worldline is on at a time according to an observer.
+     * Worldlines are slower than light, so the segments start in the same order
+     * for every observer.
+     * 
+     * @param frame the frame of the observer
+     * @param t     the t-coordinate according to the observer
+     * @return the last segment starting at or before {@code t} according to the
+     *         observer, or the first segment if none does
+     */
+    public int segmentAt(LorentzFrame frame, double t) {
+        int lo = 0;
+        int hi = times.length - 1;
+
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+
+            if (frame.transformT(positions[mid], times[mid]) <= t) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Returns the position of the worldline at a time in the rest frame
+     * 
+     * @param t the t-coordinate in the rest frame
+     * @return the x-coordinate in the rest frame
+     */
+    public double getRestX(double t) {
+        int k = segmentAt(t);
+
+        return positions[k] + betas[k] * (t - times[k]);
+    }
+
+    /**
+     * Returns the position of the worldline at a time according to an observer
+     * 
+     * @param frame the frame of the observer
+     * @param t     the t-coordinate according to the observer
+     * @return the x-coordinate according to the observer
+     */
+    public double getX(LorentzFrame frame, double t) {
+        double restT = getRestT(frame, t);
+
+        return frame.transformX(getRestX(restT), restT);
+    }
+
+    /**
+     * Returns the speed of the worldline at a time according to an observer
+     * 
+     * @param frame the frame of the observer
+     * @param t     the t-coordinate according to the observer
+     * @return the speed according to the observer as a fraction of the speed of
+     *         light
+     */
+    public double getBeta(LorentzFrame frame, double t) {
+        return frame.velocity(betas[segmentAt(frame, t)]);
+    }
+
+    /**
+     * Returns the proper time from the start of the first segment to a time in
+     * the rest frame
+     * 
+     * @param t the t-coordinate in the rest frame
+     * @return the time passed on the traveller's clock, negative before the first
+     *         segment starts
+     */
+    public double getProperTime(double t) {
+        int k = segmentAt(t);
+        double beta = betas[k];
+
+        return properTimes[k] + (t - times[k]) * Math.sqrt(1 - beta * beta);
+    }
+
+    /**
+     * Returns the time that passes on the traveller's clock between two times
+     * according to an observer
+     * 
+     * @param frame the frame of the observer
+     * @param t1    the time the clock starts according to the observer
+     * @param t2    the time the clock stops according to the observer
+     * @return the proper time from {@code t1} to {@code t2}, negative if
+     *         {@code t2 < t1}
+     */
+    public double getProperTime(LorentzFrame frame, double t1, double t2) {
+        return getProperTime(getRestT(frame, t2)) - getProperTime(getRestT(frame, t1));
+    }
+
+    /**
+     * Returns the points where the worldline bends between two times according to
+     * an observer, along with the points at those times, so it can be drawn as a
+     * single path. Only the segments between the times are transformed.
+     * 
+     * @param frame the frame of the observer
+     * @param fromT the time the path starts according to the observer
+     * @param toT   the time the path ends according to the observer, at least
+     *              {@code fromT}
+     * @return the x- and t-coordinates of each point according to the observer,
+     *         one after the other
+     */
+    public double[] getPath(LorentzFrame frame, double fromT, double toT) {
+        int first = segmentAt(frame, fromT);
+        int last = segmentAt(frame, toT);
+
+        double[] path = new double[2 * (last - first + 2)];
+        int p = 0;
+
+        path[p++] = getX(frame, fromT);
+        path[p++] = fromT;
+
+        for (int k = first + 1; k <= last; k++) {
+            path[p++] = frame.transformX(positions[k], times[k]);
+            path[p++] = frame.transformT(positions[k], times[k]);
+        }
+
+        path[p++] = getX(frame, toT);
+        path[p++] = toT;
+
+        return path;
+    }
+
+    /**
+     * Returns this worldline moved in time and space
+     * 
+     * @param dt how far to move it in time in the rest frame
+     * @param dx how far to move it in space in the rest frame
+     * @return the moved worldline
+     */
+    public PiecewiseWorldline translate(double dt, double dx) {
+        double[] newTimes = new double[times.length];
+        double[] newPositions = new double[times.length];
+
+        for (int k = 0; k < times.length; k++) {
+            newTimes[k] = times[k] + dt;
+            newPositions[k] = positions[k] + dx;
+        }
+
+        return new PiecewiseWorldline(newTimes, newPositions, betas, properTimes);
+    }
+
+    /**
+     * Returns this worldline with a different speed for one segment. The
+     * segments still start at the same times, so the ones after it move.
+     * 
+     * @param segment the segment whose speed changes
+     * @param beta    the new speed in the rest frame as a fraction of the speed of
+     *                light
+     * @return the changed worldline
+     * @throws IndexOutOfBoundsException if the segment does not exist
+     * @throws IllegalArgumentException  if {@code |beta| >= 1}
+     */
+    public PiecewiseWorldline withBeta(int segment, double beta) {
+        if (!(Math.abs(beta) < 1)) {
+            throw new IllegalArgumentException("Beta >= 1: " + beta);
+        }
+
+        double[] newBetas = betas.clone();
+        newBetas[segment] = beta;
+
+        PiecewiseWorldline changed = new PiecewiseWorldline(times, positions.clone(), newBetas, properTimes.clone());
+        changed.integrate(segment);
+
+        return changed;
+    }
+
+    /**
+     * Copies the start times and speeds of the segments into arrays, such as to
+     * write them to a file
+     * 
+     * @param timesOut the array for the start times, at least
+     *                 {@link #getSegmentCount()} long
+     * @param betasOut the array for the speeds, at least
+     *                 {@link #getSegmentCount()} long
+     */
+    public void copySegments(double[] timesOut, double[] betasOut) {
+        System.arraycopy(times, 0, timesOut, 0, times.length);
+        System.arraycopy(betas, 0, betasOut, 0, betas.length);
+    }
+
+    /**
+     * Returns the time in the rest frame at which the worldline reaches a time
+     * according to an observer
+     */
+    private double getRestT(LorentzFrame frame, double t) {
+        int k = segmentAt(frame, t);
+
+        // Observer time grows linearly along a segment, by this much per unit of rest time
+        double rate = frame.transformT(betas[k], 1);
+
+        return times[k] + (t - frame.transformT(positions[k], times[k])) / rate;
+    }
+
+    /**
+     * Two worldlines are equal if their segments start at the same times and
+     * places and have the same speeds
+     * 
+     * @param obj the object to compare with
+     * @return {@code true} if {@code obj} is an equal worldline
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof PiecewiseWorldline)) {
+            return false;
+        }
+
+        PiecewiseWorldline other = (PiecewiseWorldline) obj;
+        return Arrays.equals(times, other.times) && Arrays.equals(betas, other.betas)
+                && Double.compare(positions[0], other.positions[0]) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(times) + Arrays.hashCode(betas)) + Double.hashCode(positions[0]);
+    }
+
+    @Override
+    public String toString() {
+        return "PiecewiseWorldline[segments=" + times.length + ", t=" + times[0] + ", x=" + positions[0] + "]";
+    }
+}
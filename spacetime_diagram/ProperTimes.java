@@ -0,0 +1,219 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import java.util.Collection;
+
+/**
+ * Computes how much time passes on the clocks of many travellers at once, such
+ * as to compare how much each has aged.
+ * 
+ * A traveller's clock ticks at a constant rate according to any observer, so
+ * the proper time between two times is the rate times the time between them.
+ * The speeds of the travellers are read into an array once, then each table is
+ * filled in a single pass over primitive arrays, instead of asking each
+ * traveller for each time.
+ * 
+ * The clock of a {@code PiecewiseTraveller} changes rate whenever it changes
+ * speed, so its proper times are looked up in its worldline instead, which
+ * takes {@code O(log n)} time for {@code n} segments.
+ * 
+ * Only {@code SpacetimeTraveller}s are included. They are numbered in the order
+ * they appear in the collection, without the other events, and
+ * {@link #getRow(int)} gives their index in the collection.
+ * 
+ * @author Jonathan Elsner
+ * @see SpacetimeTraveller#getProperTime(LorentzFrame, double, double)
+ * @see LorentzFrame#clockRates(double[], double[], int, int)
+ */
+public class ProperTimes {
+
+    private final int size;
+
+    // The index in the collection of each traveller, and its speed in the rest frame
+    private final int[] rows;
+    private final double[] betas;
+
+    // The worldline of each piecewise traveller, null for the others
+    private final PiecewiseWorldline[] worldlines;
+
+    /**
+     * Reads the speeds of the travellers in the collection. Events stored in a
+     * {@code SpacetimeEventStore} are read straight from its columns.
+     * 
+     * @param events the events, of which only the travellers are used
+     */
+    public ProperTimes(Collection<? extends SpacetimeEvent> events) {
+        int n = events.size();
+        double[] beta = new double[n];
+        byte[] kinds = new byte[n];
+
+        if (events instanceof SpacetimeEventStore) {
+            ((SpacetimeEventStore) events).copyColumns(null, null, beta, kinds);
+        } else {
+            int i = 0;
+            for (SpacetimeEvent evt : events) {
+                kinds[i] = SpacetimeEventStore.kindOf(evt);
+                if (kinds[i] != SpacetimeEventStore.EVENT) {
+                    beta[i] = ((SpacetimeTraveller) evt).getRestBeta();
+                }
+                i++;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] != SpacetimeEventStore.EVENT) {
+                count++;
+            }
+        }
+
+        size = count;
+        rows = new int[size];
+        betas = new double[size];
+        worldlines = new PiecewiseWorldline[size];
+
+        int k = 0;
+        int i = 0;
+        for (SpacetimeEvent evt : events) {
+            if (kinds[i] != SpacetimeEventStore.EVENT) {
+                rows[k] = i;
+                betas[k] = beta[i];
+
+                if (kinds[i] == SpacetimeEventStore.PIECEWISE) {
+                    worldlines[k] = events instanceof SpacetimeEventStore
+                            ? ((SpacetimeEventStore) events).getWorldline(i)
+                            : ((PiecewiseTraveller) evt).getWorldline();
+                }
+                k++;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Returns the number of travellers
+     * 
+     * @return the number of travellers in the collection
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index in the collection of a traveller
+     * 
+     * @param i the number of the traveller
+     * @return its index in the collection the travellers were read from
+     * @throws IndexOutOfBoundsException if {@code i} is out of range
+     */
+    public int getRow(int i) {
+        return rows[i];
+    }
+
+    /**
+     * Returns how fast each traveller's clock ticks according to an observer
+     * 
+     * @param frame the frame of the observer
+     * @return the proper time of each traveller per unit of time in the frame, or
+     *         {@code NaN} for a {@code PiecewiseTraveller}, whose clock changes
+     *         rate
+     */
+    public double[] clockRates(LorentzFrame frame) {
+        double[] rates = new double[size];
+        frame.clockRates(betas, rates, 0, size);
+
+        for (int i = 0; i < size; i++) {
+            if (worldlines[i] != null) {
+                rates[i] = Double.NaN;
+            }
+        }
+
+        return rates;
+    }
+
+    /**
+     * Computes the proper time of every traveller from one time to each of the
+     * specified times, as though every traveller's clock were started at the
+     * same time according to the observer
+     * 
+     * @param frame the frame of the observer
+     * @param start the time the clocks start according to the observer
+     * @param times the times at which to read the clocks according to the
+     *              observer
+     * @return the proper times, with traveller {@code i}'s clock at
+     *         {@code times[k]} at index {@code i * times.length + k}
+     * @throws IllegalArgumentException if the table would have more than
+     *                                  {@code Integer.MAX_VALUE} entries
+     */
+    public double[] elapsed(LorentzFrame frame, double start, double[] times) {
+        long entries = (long) size * times.length;
+        if (entries > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many proper times: " + entries);
+        }
+
+        double[] out = new double[(int) entries];
+        elapsed(frame, start, times, out);
+
+        return out;
+    }
+
+    /**
+     * Computes the proper time of every traveller from one time to each of the
+     * specified times into an existing array, so the same array can be reused for
+     * many tables
+     * 
+     * @param frame the frame of the observer
+     * @param start the time the clocks start according to the observer
+     * @param times the times at which to read the clocks according to the
+     *              observer
+     * @param out   the array in which to store the proper times, with traveller
+     *              {@code i}'s clock at {@code times[k]} at index
+     *              {@code i * times.length + k}
+     * @throws IndexOutOfBoundsException if {@code out} is too short
+     */
+    public void elapsed(LorentzFrame frame, double start, double[] times, double[] out) {
+        int m = times.length;
+        if (out.length < (long) size * m) {
+            throw new IndexOutOfBoundsException("Array too short for " + size + " x " + m + " proper times");
+        }
+
+        double[] rates = clockRates(frame);
+
+        double[] durations = new double[m];
+        for (int k = 0; k < m; k++) {
+            durations[k] = times[k] - start;
+        }
+
+        for (int i = 0, row = 0; i < size; i++, row += m) {
+            PiecewiseWorldline worldline = worldlines[i];
+            if (worldline != null) {
+                for (int k = 0; k < m; k++) {
+                    out[row + k] = worldline.getProperTime(frame, start, times[k]);
+                }
+                continue;
+            }
+
+            double rate = rates[i];
+
+            for (int k = 0; k < m; k++) {
+                out[row + k] = rate * durations[k];
+            }
+        }
+    }
+}
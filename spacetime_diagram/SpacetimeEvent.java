@@ -23,6 +23,11 @@ import java.util.UUID;
 /**
  * Represents an event that occurs in spacetime.
  * 
+ * Methods that take the speed of an observer as a {@code double} make a
+ * {@link LorentzFrame} from it, so they throw an
+ * {@code IllegalArgumentException} if the speed is faster than light or NaN.
+ * Before frames were added they returned NaN coordinates instead.
+ * 
  * @author Jonathan Elsner
  */
 public class SpacetimeEvent implements Serializable {
@@ -46,11 +51,23 @@ public class SpacetimeEvent implements Serializable {
      * @param x    the position at which the event occurs
      */
     public SpacetimeEvent(String name, double t, double x) {
+        this(UUID.randomUUID(), name, t, x);
+    }
+
+    /**
+     * Constructs a SpacetimeEvent with a known UUID. Used to recreate events that
+     * were stored somewhere other than in a {@code SpacetimeEvent} instance.
+     * 
+     * @param uuid the UUID of the event
+     * @param name the name of the event
+     * @param t    the time at which the event occurs in the rest frame
+     * @param x    the position at which the event occurs in the rest frame
+     */
+    protected SpacetimeEvent(UUID uuid, String name, double t, double x) {
+        this.uuid = uuid;
         this.name = name;
         this.t = t;
         this.x = x;
-
-        uuid = UUID.randomUUID();
     }
 
     /**
@@ -77,9 +94,21 @@ public class SpacetimeEvent implements Serializable {
      * @param observerBeta the speed of the observer as a fraction of the speed of
      *                     light
      * @return the t-coordinate for this event
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1} or it is NaN
+     * @see #getT(LorentzFrame)
      */
     public double getT(double observerBeta) {
-        return LorentzTransform.tTransform(observerBeta, x, t);
+        return getT(new LorentzFrame(observerBeta));
+    }
+
+    /**
+     * Returns the time of this event for an observer in the specified frame
+     * 
+     * @param frame the frame of the observer
+     * @return the t-coordinate for this event
+     */
+    public double getT(LorentzFrame frame) {
+        return frame.transformT(getRestX(), getRestT());
     }
 
     /**
@@ -89,12 +118,24 @@ public class SpacetimeEvent implements Serializable {
      * @param observerBeta the speed of the observer as a fraction of the speed of
      *                     light
      * @param observedT    the new t-coordinate of this event
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1} or it is NaN
+     * @see #setT(LorentzFrame, double)
      */
     public void setT(double observerBeta, double observedT) {
-        double currentX = getX(observerBeta);
+        setT(new LorentzFrame(observerBeta), observedT);
+    }
 
-        this.x = LorentzTransform.xTransform(-observerBeta, currentX, observedT);
-        this.t = LorentzTransform.tTransform(-observerBeta, currentX, observedT);
+    /**
+     * Set the time of this event for an observer in the specified frame. This will
+     * change the time of the event for all observers
+     * 
+     * @param frame     the frame of the observer
+     * @param observedT the new t-coordinate of this event
+     */
+    public void setT(LorentzFrame frame, double observedT) {
+        double currentX = getX(frame);
+
+        setRestCoordinates(frame.inverseT(currentX, observedT), frame.inverseX(currentX, observedT));
     }
 
     /**
@@ -103,9 +144,21 @@ public class SpacetimeEvent implements Serializable {
      * @param observerBeta the speed of the observer as a fraction of the speed of
      *                     light
      * @return the x-coordinate of this event
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1} or it is NaN
+     * @see #getX(LorentzFrame)
      */
     public double getX(double observerBeta) {
-        return LorentzTransform.xTransform(observerBeta, x, t);
+        return getX(new LorentzFrame(observerBeta));
+    }
+
+    /**
+     * Returns the location of this event for an observer in the specified frame
+     * 
+     * @param frame the frame of the observer
+     * @return the x-coordinate of this event
+     */
+    public double getX(LorentzFrame frame) {
+        return frame.transformX(getRestX(), getRestT());
     }
 
     /**
@@ -115,12 +168,54 @@ public class SpacetimeEvent implements Serializable {
      * @param observerBeta the speed of the observer as a fraction of the speed of
      *                     light
      * @param observedX    the new x-coordinate of this event
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1} or it is NaN
+     * @see #setX(LorentzFrame, double)
      */
     public void setX(double observerBeta, double observedX) {
-        double currentT = getT(observerBeta);
+        setX(new LorentzFrame(observerBeta), observedX);
+    }
+
+    /**
+     * Sets the location of this event according to an observer in the specified
+     * frame. This will change the location of the event for all observers
+     * 
+     * @param frame     the frame of the observer
+     * @param observedX the new x-coordinate of this event
+     */
+    public void setX(LorentzFrame frame, double observedX) {
+        double currentT = getT(frame);
+
+        setRestCoordinates(frame.inverseT(observedX, currentT), frame.inverseX(observedX, currentT));
+    }
+
+    /**
+     * Returns the time of this event in the rest frame
+     * 
+     * @return the t-coordinate of this event when the observer is at rest
+     */
+    public double getRestT() {
+        return t;
+    }
+
+    /**
+     * Returns the location of this event in the rest frame
+     * 
+     * @return the x-coordinate of this event when the observer is at rest
+     */
+    public double getRestX() {
+        return x;
+    }
 
-        this.x = LorentzTransform.xTransform(-observerBeta, observedX, currentT);
-        this.t = LorentzTransform.tTransform(-observerBeta, observedX, currentT);
+    /**
+     * Sets the coordinates of this event in the rest frame. All changes to the
+     * position of this event go through this method.
+     * 
+     * @param t the new t-coordinate of this event in the rest frame
+     * @param x the new x-coordinate of this event in the rest frame
+     */
+    protected void setRestCoordinates(double t, double x) {
+        this.t = t;
+        this.x = x;
     }
 
     /**
@@ -130,7 +225,7 @@ public class SpacetimeEvent implements Serializable {
      * @return the string representation of this SpacetimeEvent
      */
     public String toString() {
-        return name;
+        return getName();
     }
 
     /**
@@ -142,4 +237,24 @@ public class SpacetimeEvent implements Serializable {
         return uuid;
     }
 
+    /**
+     * Two SpacetimeEvents are equal if they have the same UUID, so copies of an
+     * event (for example one read back from a file) are equal to the original.
+     * 
+     * @param obj the object to compare with
+     * @return {@code true} if {@code obj} is a SpacetimeEvent with the same UUID
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        return obj instanceof SpacetimeEvent && getUUID().equals(((SpacetimeEvent) obj).getUUID());
+    }
+
+    @Override
+    public int hashCode() {
+        return getUUID().hashCode();
+    }
 }
\ No newline at end of file
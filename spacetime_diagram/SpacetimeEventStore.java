@@ -0,0 +1,1179 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.RandomAccess;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A list of SpacetimeEvents stored in columns of primitive arrays instead of
+ * one object per event. Each event takes up a few dozen bytes, and the rest
+ * frame coordinates of all events sit next to each other in memory, which
+ * makes looping over them for transforms and drawing much faster.
+ * 
+ * The elements returned by {@link #get(int)} are lightweight views into this
+ * store. Reading or changing a view reads or changes the store directly. A view
+ * keeps working when other events are added or removed, but throws an
+ * {@code IllegalStateException} once its own event has been removed. Events
+ * removed from the store are returned as ordinary, detached SpacetimeEvents.
+ * 
+ * Events are found by UUID through a hash table from UUIDs to rows, so
+ * {@link #indexOf(Object)} and views looking for their event after other
+ * events were added or removed take constant time. Adding or removing an event
+ * in the middle of the store updates the table for each event it moves, which
+ * costs about as much as moving them. No two events in a store have the same
+ * UUID, and adding an event whose UUID is already in the store throws an
+ * {@code IllegalArgumentException}.
+ * 
+ * Names are interned in a side table, so many events sharing a name only store
+ * it once. Each name counts the events using it, and is dropped from the table
+ * once none do, so renaming and removing events does not grow the table.
+ * 
+ * A {@code PiecewiseTraveller} keeps its worldline, which cannot change, in a
+ * column of its own. The start of its first segment and the speed of that
+ * segment are copied into the other columns, so code reading the columns sees
+ * it as a traveller that does not change speed.
+ * 
+ * @author Jonathan Elsner
+ * @see SpacetimeEvent
+ * @see SpacetimeTraveller
+ */
+public class SpacetimeEventStore extends AbstractList<SpacetimeEvent> implements RandomAccess {
+
+    /**
+     * Type tag of a plain {@code SpacetimeEvent}
+     */
+    public static final byte EVENT = 0;
+
+    /**
+     * Type tag of a {@code SpacetimeTraveller}
+     */
+    public static final byte TRAVELLER = 1;
+
+    /**
+     * Type tag of a {@code PiecewiseTraveller}
+     */
+    public static final byte PIECEWISE = 2;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Number of events in the store
+    private int size;
+
+    // The columns. Only the first size elements of each are used
+    private byte[] kinds;
+    private double[] ts;
+    private double[] xs;
+    private double[] betas;
+    private long[] uuidMost;
+    private long[] uuidLeast;
+    private int[] nameIds;
+
+    // The worldline of each piecewise traveller, null for every other row. The
+    // start of its first segment and its speed are kept in the other columns too
+    private PiecewiseWorldline[] worldlines;
+
+    // Side table of interned names, and how many events use each. Ids of names
+    // no event uses any more are kept in a stack and given to new names
+    private ArrayList<String> names;
+    private HashMap<String, Integer> nameTable;
+    private int[] nameRefs;
+    private int[] freeNameIds;
+    private int freeNameCount;
+
+    // Hash table from UUIDs to rows, using open addressing. Each slot holds a row,
+    // or -1 if it is empty, and the UUID of a slot is read from the UUID columns
+    // of its row, so the table is only an int per slot. Rows are taken out of the
+    // table before their columns are moved or overwritten, and put back after
+    private int[] slots;
+    private int indexed;
+
+    /**
+     * Constructs an empty store
+     */
+    public SpacetimeEventStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty store with room for the specified number of events
+     * 
+     * @param initialCapacity the number of events the store can hold before it
+     *                        must grow
+     */
+    public SpacetimeEventStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+
+        kinds = new byte[capacity];
+        ts = new double[capacity];
+        xs = new double[capacity];
+        betas = new double[capacity];
+        uuidMost = new long[capacity];
+        uuidLeast = new long[capacity];
+        nameIds = new int[capacity];
+        worldlines = new PiecewiseWorldline[capacity];
+
+        slots = new int[slotCount(capacity)];
+        Arrays.fill(slots, -1);
+
+        names = new ArrayList<>();
+        nameTable = new HashMap<>();
+        nameRefs = new int[DEFAULT_CAPACITY];
+        freeNameIds = new int[DEFAULT_CAPACITY];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a view of the event at the specified index
+     * 
+     * @param index the index of the event
+     * @return a view of the event, which is a {@code SpacetimeTraveller} if the
+     *         event is a traveller, or a {@code PiecewiseTraveller} if its speed
+     *         changes
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public SpacetimeEvent get(int index) {
+        checkIndex(index);
+
+        if (kinds[index] == TRAVELLER) {
+            return new TravellerView(index);
+        } else if (kinds[index] == PIECEWISE) {
+            return new PiecewiseView(index);
+        } else {
+            return new EventView(index);
+        }
+    }
+
+    /**
+     * Copies the specified event into the store at the specified index
+     * 
+     * @param index the index at which to insert the event
+     * @param evt   the event to insert
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws IllegalArgumentException  if an event with the same UUID is already
+     *                                   in the store
+     */
+    @Override
+    public void add(int index, SpacetimeEvent evt) {
+        if (index < 0 || size < index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        if (indexOf(evt) >= 0) {
+            throw new IllegalArgumentException("Duplicate UUID: " + evt.getUUID());
+        }
+
+        ensureCapacity(size + 1);
+        unindex(index, size);
+        shift(index, index + 1, size - index);
+        size++;
+
+        write(index, evt);
+        index(index, size);
+        modCount++;
+    }
+
+    /**
+     * Copies all of the specified events to the end of the store
+     * 
+     * @param events the events to add
+     * @return {@code true} if the store changed
+     * @throws IllegalArgumentException if two of the events, or one of the events
+     *                                  and an event in the store, have the same
+     *                                  UUID
+     * @see #addAll(int, Collection)
+     */
+    @Override
+    public boolean addAll(Collection<? extends SpacetimeEvent> events) {
+        return addAll(size, events);
+    }
+
+    /**
+     * Copies all of the specified events into the store, starting at the specified
+     * index. Room is made for all of them at once, and events from another
+     * {@code SpacetimeEventStore} are copied column by column without creating any
+     * views. Other collections are copied into a new store first. If any of the
+     * events has the same UUID as an event in the store, or as another of the
+     * events, none of them are added.
+     * 
+     * @param index  the index at which to insert the first event
+     * @param events the events to insert
+     * @return {@code true} if the store changed
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws IllegalArgumentException  if two of the events, or one of the events
+     *                                   and an event in the store, have the same
+     *                                   UUID
+     */
+    @Override
+    public boolean addAll(int index, Collection<? extends SpacetimeEvent> events) {
+        if (index < 0 || size < index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        // Copying the events into a store of their own finds any duplicates among
+        // them, and reads them all before any rows here are moved
+        SpacetimeEventStore other;
+        if (events instanceof SpacetimeEventStore) {
+            other = (SpacetimeEventStore) events;
+        } else {
+            other = new SpacetimeEventStore(events.size());
+            for (SpacetimeEvent evt : events) {
+                other.add(other.size, evt);
+            }
+        }
+
+        int n = other.size;
+        if (n == 0) {
+            return false;
+        }
+
+        for (int k = 0; k < n; k++) {
+            if (indexOf(other.uuidMost[k], other.uuidLeast[k]) >= 0) {
+                throw new IllegalArgumentException("Duplicate UUID: " + other.getUUID(k));
+            }
+        }
+
+        ensureCapacity(size + n);
+        unindex(index, size);
+        shift(index, index + n, size - index);
+
+        System.arraycopy(other.kinds, 0, kinds, index, n);
+        System.arraycopy(other.ts, 0, ts, index, n);
+        System.arraycopy(other.xs, 0, xs, index, n);
+        System.arraycopy(other.betas, 0, betas, index, n);
+        System.arraycopy(other.uuidMost, 0, uuidMost, index, n);
+        System.arraycopy(other.uuidLeast, 0, uuidLeast, index, n);
+        System.arraycopy(other.worldlines, 0, worldlines, index, n);
+
+        // Names are looked up once per distinct name, not once per event
+        int[] nameMap = new int[other.names.size()];
+        Arrays.fill(nameMap, -1);
+        for (int k = 0; k < n; k++) {
+            int otherId = other.nameIds[k];
+
+            if (nameMap[otherId] < 0) {
+                nameMap[otherId] = intern(other.names.get(otherId));
+            } else {
+                nameRefs[nameMap[otherId]]++;
+            }
+            nameIds[index + k] = nameMap[otherId];
+        }
+
+        size += n;
+        index(index, size);
+        modCount++;
+
+        return true;
+    }
+
+    /**
+     * Replaces the event at the specified index with a copy of the specified event
+     * 
+     * @param index the index of the event to replace
+     * @param evt   the new event
+     * @return a detached copy of the event that was replaced
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws IllegalArgumentException  if an event with the same UUID is at
+     *                                   another index
+     */
+    @Override
+    public SpacetimeEvent set(int index, SpacetimeEvent evt) {
+        checkIndex(index);
+        checkUnique(index, evt);
+
+        SpacetimeEvent old = detach(index);
+        int oldName = nameIds[index];
+        unindex(index, index + 1);
+        write(index, evt);
+        index(index, index + 1);
+        release(oldName);
+
+        // Views of the old event must look themselves up again
+        modCount++;
+
+        return old;
+    }
+
+    /**
+     * Removes the event at the specified index
+     * 
+     * @param index the index of the event to remove
+     * @return a detached copy of the removed event
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public SpacetimeEvent remove(int index) {
+        checkIndex(index);
+
+        SpacetimeEvent old = detach(index);
+        removeRange(index, index + 1);
+
+        return old;
+    }
+
+    /**
+     * Removes the event with the same UUID as the specified event
+     * 
+     * @param obj the event to remove
+     * @return {@code true} if an event was removed
+     */
+    @Override
+    public boolean remove(Object obj) {
+        int i = indexOf(obj);
+
+        if (i < 0) {
+            return false;
+        }
+
+        removeRange(i, i + 1);
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex + ") out of bounds");
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            release(nameIds[i]);
+        }
+
+        unindex(fromIndex, size);
+        shift(toIndex, fromIndex, size - toIndex);
+        size -= toIndex - fromIndex;
+        Arrays.fill(worldlines, size, size + toIndex - fromIndex, null);
+        index(fromIndex, size);
+        modCount++;
+    }
+
+    /**
+     * Removes every event matching the filter, moving each run of events that is
+     * kept at most once. Every event is tested before any is removed, so a filter
+     * that throws leaves the store unchanged.
+     * 
+     * The filter is given one reused view for each type of event, pointed at each
+     * event in turn, instead of a new view per event. The view passed to the
+     * filter is only valid until the filter returns.
+     * 
+     * @param filter returns {@code true} for the events to remove
+     * @return {@code true} if any events were removed
+     */
+    @Override
+    public boolean removeIf(Predicate<? super SpacetimeEvent> filter) {
+        BitSet removed = new BitSet(size);
+
+        EventView eventView = null;
+        TravellerView travellerView = null;
+        PiecewiseView piecewiseView = null;
+
+        for (int i = 0; i < size; i++) {
+            SpacetimeEvent view;
+
+            if (kinds[i] == TRAVELLER) {
+                if (travellerView == null) {
+                    travellerView = new TravellerView(i);
+                } else {
+                    travellerView.tracker.point(i);
+                }
+                view = travellerView;
+            } else if (kinds[i] == PIECEWISE) {
+                if (piecewiseView == null) {
+                    piecewiseView = new PiecewiseView(i);
+                } else {
+                    piecewiseView.tracker.point(i);
+                }
+                view = piecewiseView;
+            } else {
+                if (eventView == null) {
+                    eventView = new EventView(i);
+                } else {
+                    eventView.tracker.point(i);
+                }
+                view = eventView;
+            }
+
+            if (filter.test(view)) {
+                removed.set(i);
+            }
+        }
+
+        if (removed.isEmpty()) {
+            return false;
+        }
+
+        // Move each run of kept rows down over the removed rows before it
+        int kept = removed.nextSetBit(0);
+        int first = kept;
+        unindex(first, size);
+        for (int i = kept; i < size;) {
+            int from = Math.min(removed.nextClearBit(i), size);
+            for (int k = i; k < from; k++) {
+                release(nameIds[k]);
+            }
+
+            int to = from < size ? removed.nextSetBit(from) : -1;
+            if (to < 0) {
+                to = size;
+            }
+
+            shift(from, kept, to - from);
+            kept += to - from;
+            i = to;
+        }
+
+        Arrays.fill(worldlines, kept, size, null);
+        size = kept;
+        index(first, size);
+        modCount++;
+
+        return true;
+    }
+
+    /**
+     * Replaces every event with a copy of the result of the operator
+     * 
+     * @param operator computes the replacement for each event
+     * @throws IllegalArgumentException if a replacement has the same UUID as an
+     *                                  event at another index
+     */
+    @Override
+    public void replaceAll(UnaryOperator<SpacetimeEvent> operator) {
+        for (int i = 0; i < size; i++) {
+            SpacetimeEvent evt = operator.apply(get(i));
+            checkUnique(i, evt);
+
+            int oldName = nameIds[i];
+            unindex(i, i + 1);
+            write(i, evt);
+            index(i, i + 1);
+            release(oldName);
+        }
+
+        // Views of the old events must look themselves up again
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(worldlines, 0, size, null);
+        size = 0;
+        names.clear();
+        nameTable.clear();
+        Arrays.fill(nameRefs, 0);
+        freeNameCount = 0;
+        Arrays.fill(slots, -1);
+        indexed = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns the index of the event with the same UUID as the specified object.
+     * This looks the UUID up in a hash table, without creating any views.
+     * 
+     * @param obj the event to find
+     * @return the index of the event, or {@code -1} if it is not in this store
+     */
+    @Override
+    public int indexOf(Object obj) {
+        if (!(obj instanceof SpacetimeEvent)) {
+            return -1;
+        }
+
+        UUID uuid = ((SpacetimeEvent) obj).getUUID();
+        return indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    public boolean contains(Object obj) {
+        return indexOf(obj) >= 0;
+    }
+
+    /**
+     * Makes sure the store can hold the specified number of events without growing
+     * 
+     * @param capacity the number of events the store should be able to hold
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= kinds.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, kinds.length + (kinds.length >> 1));
+
+        kinds = Arrays.copyOf(kinds, newCapacity);
+        ts = Arrays.copyOf(ts, newCapacity);
+        xs = Arrays.copyOf(xs, newCapacity);
+        betas = Arrays.copyOf(betas, newCapacity);
+        uuidMost = Arrays.copyOf(uuidMost, newCapacity);
+        uuidLeast = Arrays.copyOf(uuidLeast, newCapacity);
+        nameIds = Arrays.copyOf(nameIds, newCapacity);
+        worldlines = Arrays.copyOf(worldlines, newCapacity);
+
+        if (slots.length < slotCount(newCapacity)) {
+            resizeSlots(slotCount(newCapacity));
+        }
+    }
+
+    /**
+     * Returns the type tag of the event at the specified index
+     * 
+     * @param index the index of the event
+     * @return {@link #EVENT}, {@link #TRAVELLER} or {@link #PIECEWISE}
+     */
+    public byte getKind(int index) {
+        checkIndex(index);
+        return kinds[index];
+    }
+
+    /**
+     * Whether the event at the specified index is a traveller
+     * 
+     * @param index the index of the event
+     * @return {@code true} if the event is a {@code SpacetimeTraveller}, including
+     *         a {@code PiecewiseTraveller}
+     */
+    public boolean isTraveller(int index) {
+        return getKind(index) != EVENT;
+    }
+
+    /**
+     * Returns the worldline of the piecewise traveller at the specified index
+     * 
+     * @param index the index of the traveller
+     * @return the worldline of the traveller, or {@code null} if the event is not
+     *         a {@code PiecewiseTraveller}
+     */
+    public PiecewiseWorldline getWorldline(int index) {
+        checkIndex(index);
+        return worldlines[index];
+    }
+
+    /**
+     * Returns the type tag of an event, as it would be stored
+     * 
+     * @param evt the event
+     * @return {@link #EVENT}, {@link #TRAVELLER} or {@link #PIECEWISE}
+     */
+    public static byte kindOf(SpacetimeEvent evt) {
+        if (evt instanceof PiecewiseTraveller) {
+            return PIECEWISE;
+        } else if (evt instanceof SpacetimeTraveller) {
+            return TRAVELLER;
+        } else {
+            return EVENT;
+        }
+    }
+
+    /**
+     * Returns the time of the event at the specified index in the rest frame
+     * 
+     * @param index the index of the event
+     * @return the t-coordinate of the event in the rest frame
+     */
+    public double getRestT(int index) {
+        checkIndex(index);
+        return ts[index];
+    }
+
+    /**
+     * Returns the position of the event at the specified index in the rest frame
+     * 
+     * @param index the index of the event
+     * @return the x-coordinate of the event in the rest frame
+     */
+    public double getRestX(int index) {
+        checkIndex(index);
+        return xs[index];
+    }
+
+    /**
+     * Returns the speed of the traveller at the specified index in the rest frame
+     * 
+     * @param index the index of the traveller
+     * @return the speed of the traveller as a fraction of the speed of light, or
+     *         {@code 0} if the event is not a traveller
+     */
+    public double getRestBeta(int index) {
+        checkIndex(index);
+        return betas[index];
+    }
+
+    /**
+     * Returns the name of the event at the specified index
+     * 
+     * @param index the index of the event
+     * @return the name of the event
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        return names.get(nameIds[index]);
+    }
+
+    /**
+     * Returns the UUID of the event at the specified index
+     * 
+     * @param index the index of the event
+     * @return the UUID of the event
+     */
+    public UUID getUUID(int index) {
+        checkIndex(index);
+        return new UUID(uuidMost[index], uuidLeast[index]);
+    }
+
+    /**
+     * Copies the columns of this store into the specified arrays. Any of the
+     * arrays may be {@code null} if that column is not needed. Each array must be
+     * at least {@link #size()} long.
+     * 
+     * @param t     the array for the rest frame t-coordinates
+     * @param x     the array for the rest frame x-coordinates
+     * @param beta  the array for the rest frame speeds ({@code 0} for events, and
+     *              the speed of the first segment for piecewise travellers)
+     * @param kinds the array for the type tags
+     */
+    public void copyColumns(double[] t, double[] x, double[] beta, byte[] kinds) {
+        if (t != null) {
+            System.arraycopy(ts, 0, t, 0, size);
+        }
+        if (x != null) {
+            System.arraycopy(xs, 0, x, 0, size);
+        }
+        if (beta != null) {
+            System.arraycopy(betas, 0, beta, 0, size);
+        }
+        if (kinds != null) {
+            System.arraycopy(this.kinds, 0, kinds, 0, size);
+        }
+    }
+
+    /**
+     * Appends an event to the store from its raw column values, without creating a
+     * {@code SpacetimeEvent}. Used when reading events from file.
+     * 
+     * @param kind      the type tag of the event
+     * @param t         the rest frame t-coordinate
+     * @param x         the rest frame x-coordinate
+     * @param beta      the rest frame speed, ignored for events
+     * @param uuidMost  the most significant bits of the event's UUID
+     * @param uuidLeast the least significant bits of the event's UUID
+     * @param name      the name of the event
+     * @throws IllegalArgumentException if an event with the same UUID is already
+     *                                  in the store
+     */
+    void append(byte kind, double t, double x, double beta, long uuidMost, long uuidLeast, String name) {
+        if (indexOf(uuidMost, uuidLeast) >= 0) {
+            throw new IllegalArgumentException("Duplicate UUID: " + new UUID(uuidMost, uuidLeast));
+        }
+
+        ensureCapacity(size + 1);
+
+        int i = size++;
+        kinds[i] = kind;
+        ts[i] = t;
+        xs[i] = x;
+        betas[i] = kind != EVENT ? beta : 0;
+        this.uuidMost[i] = uuidMost;
+        this.uuidLeast[i] = uuidLeast;
+        nameIds[i] = intern(name);
+        worldlines[i] = null;
+        index(i, i + 1);
+
+        modCount++;
+    }
+
+    /**
+     * Appends a piecewise traveller to the store from its raw column values. Used
+     * when reading events from file.
+     * 
+     * @param worldline the worldline of the traveller
+     * @param uuidMost  the most significant bits of the traveller's UUID
+     * @param uuidLeast the least significant bits of the traveller's UUID
+     * @param name      the name of the traveller
+     * @throws IllegalArgumentException if an event with the same UUID is already
+     *                                  in the store
+     */
+    void append(PiecewiseWorldline worldline, long uuidMost, long uuidLeast, String name) {
+        append(PIECEWISE, worldline.getStartT(0), worldline.getStartX(0), worldline.getBeta(0), uuidMost, uuidLeast,
+                name);
+        worldlines[size - 1] = worldline;
+    }
+
+    /**
+     * Copies the event into the row at the specified index
+     */
+    private void write(int i, SpacetimeEvent evt) {
+        UUID uuid = evt.getUUID();
+
+        ts[i] = evt.getRestT();
+        xs[i] = evt.getRestX();
+        uuidMost[i] = uuid.getMostSignificantBits();
+        uuidLeast[i] = uuid.getLeastSignificantBits();
+        nameIds[i] = intern(evt.getName());
+
+        kinds[i] = kindOf(evt);
+        betas[i] = kinds[i] != EVENT ? ((SpacetimeTraveller) evt).getRestBeta() : 0;
+        worldlines[i] = kinds[i] == PIECEWISE ? ((PiecewiseTraveller) evt).getWorldline() : null;
+    }
+
+    /**
+     * Creates an ordinary SpacetimeEvent with the values in the specified row
+     */
+    private SpacetimeEvent detach(int i) {
+        UUID uuid = new UUID(uuidMost[i], uuidLeast[i]);
+
+        if (kinds[i] == TRAVELLER) {
+            return new SpacetimeTraveller(uuid, names.get(nameIds[i]), betas[i], ts[i], xs[i]);
+        } else if (kinds[i] == PIECEWISE) {
+            return new PiecewiseTraveller(uuid, names.get(nameIds[i]), worldlines[i]);
+        } else {
+            return new SpacetimeEvent(uuid, names.get(nameIds[i]), ts[i], xs[i]);
+        }
+    }
+
+    /**
+     * Moves {@code length} rows starting at {@code from} to start at {@code to}
+     */
+    private void shift(int from, int to, int length) {
+        System.arraycopy(kinds, from, kinds, to, length);
+        System.arraycopy(ts, from, ts, to, length);
+        System.arraycopy(xs, from, xs, to, length);
+        System.arraycopy(betas, from, betas, to, length);
+        System.arraycopy(uuidMost, from, uuidMost, to, length);
+        System.arraycopy(uuidLeast, from, uuidLeast, to, length);
+        System.arraycopy(nameIds, from, nameIds, to, length);
+        System.arraycopy(worldlines, from, worldlines, to, length);
+    }
+
+    /**
+     * Returns the index of the name in the side table, adding it if necessary,
+     * and counts one more event using it
+     */
+    private int intern(String name) {
+        Integer id = nameTable.get(name);
+
+        if (id == null) {
+            if (freeNameCount > 0) {
+                id = freeNameIds[--freeNameCount];
+                names.set(id, name);
+            } else {
+                id = names.size();
+                names.add(name);
+
+                if (id == nameRefs.length) {
+                    nameRefs = Arrays.copyOf(nameRefs, 2 * id);
+                }
+            }
+
+            nameTable.put(name, id);
+        }
+
+        nameRefs[id]++;
+        return id;
+    }
+
+    /**
+     * Counts one less event using the name, dropping it from the side table once
+     * no event uses it
+     */
+    private void release(int id) {
+        if (--nameRefs[id] > 0) {
+            return;
+        }
+
+        nameTable.remove(names.get(id));
+        names.set(id, null);
+
+        if (freeNameCount == freeNameIds.length) {
+            freeNameIds = Arrays.copyOf(freeNameIds, 2 * freeNameCount);
+        }
+        freeNameIds[freeNameCount++] = id;
+    }
+
+    /**
+     * Changes the name of the event in the row at the specified index
+     */
+    private void rename(int i, String name) {
+        int oldName = nameIds[i];
+        nameIds[i] = intern(name);
+        release(oldName);
+    }
+
+    /**
+     * Returns the index of the row with the specified UUID, checking the row at
+     * {@code hint} before scanning the whole store. Used when replaying an edit
+     * journal, whose records say where each event was when it was changed.
+     * 
+     * @param uuid the UUID of the event
+     * @param hint where the event is expected to be
+     * @return the index of the event, or {@code -1} if it is not in the store
+     */
+    int indexOf(UUID uuid, int hint) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+
+        if (0 <= hint && hint < size && uuidLeast[hint] == least && uuidMost[hint] == most) {
+            return hint;
+        }
+
+        return indexOf(most, least);
+    }
+
+    /**
+     * Returns the index of the row with the specified UUID, or {@code -1}
+     */
+    private int indexOf(long most, long least) {
+        int mask = slots.length - 1;
+
+        for (int s = hash(most, least) & mask;; s = (s + 1) & mask) {
+            int row = slots[s];
+            if (row < 0 || (uuidLeast[row] == least && uuidMost[row] == most)) {
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Puts the rows from {@code from} to {@code to} into the UUID table, growing it
+     * if it gets too full
+     */
+    private void index(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (4L * (indexed + 1) > 3L * slots.length) {
+                resizeSlots(2 * slots.length);
+            }
+
+            insertSlot(i);
+        }
+    }
+
+    /**
+     * Takes the rows from {@code from} to {@code to} out of the UUID table. Their
+     * UUIDs must not have changed since they were put in.
+     */
+    private void unindex(int from, int to) {
+        int mask = slots.length - 1;
+
+        for (int i = from; i < to; i++) {
+            int gap = hash(uuidMost[i], uuidLeast[i]) & mask;
+            while (slots[gap] != i) {
+                gap = (gap + 1) & mask;
+            }
+
+            // Move back any later row in the same run that would no longer be found
+            // past the gap
+            for (int s = (gap + 1) & mask; slots[s] >= 0; s = (s + 1) & mask) {
+                int home = hash(uuidMost[slots[s]], uuidLeast[slots[s]]) & mask;
+                boolean reachable = gap <= s ? gap < home && home <= s : gap < home || home <= s;
+
+                if (!reachable) {
+                    slots[gap] = slots[s];
+                    gap = s;
+                }
+            }
+
+            slots[gap] = -1;
+            indexed--;
+        }
+    }
+
+    private void insertSlot(int row) {
+        int mask = slots.length - 1;
+
+        int s = hash(uuidMost[row], uuidLeast[row]) & mask;
+        while (slots[s] >= 0) {
+            s = (s + 1) & mask;
+        }
+
+        slots[s] = row;
+        indexed++;
+    }
+
+    private void resizeSlots(int count) {
+        int[] old = slots;
+        slots = new int[count];
+        Arrays.fill(slots, -1);
+        indexed = 0;
+
+        for (int row : old) {
+            if (row >= 0) {
+                insertSlot(row);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of slots in a UUID table that holds the specified number
+     * of rows at most three quarters full, which is a power of two
+     */
+    private static int slotCount(int rows) {
+        long needed = Math.max(16, (4L * rows + 2) / 3);
+        return (int) Math.min(1 << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    private static int hash(long most, long least) {
+        long h = (most ^ least) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Throws an {@code IllegalArgumentException} if an event with the same UUID as
+     * the specified event is in a row other than {@code index}
+     */
+    private void checkUnique(int index, SpacetimeEvent evt) {
+        int i = indexOf(evt);
+
+        if (i >= 0 && i != index) {
+            throw new IllegalArgumentException("Duplicate UUID: " + evt.getUUID());
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || size <= index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+    }
+
+    /**
+     * Keeps track of the row holding the event a view is of, by its UUID. Each
+     * view holds one and delegates to it, so the views only differ in the columns
+     * they read and write.
+     */
+    private class RowTracker {
+        private long most;
+        private long least;
+
+        // Where the event was last seen, and the modCount when it was seen there
+        private int row;
+        private int expectedModCount;
+
+        private RowTracker(int row) {
+            point(row);
+        }
+
+        // Makes this track the event in another row
+        private void point(int row) {
+            this.most = uuidMost[row];
+            this.least = uuidLeast[row];
+            this.row = row;
+            this.expectedModCount = modCount;
+        }
+
+        private int row() {
+            if (expectedModCount != modCount) {
+                row = indexOf(most, least);
+                expectedModCount = modCount;
+            }
+
+            if (row < 0) {
+                throw new IllegalStateException("Event was removed from the store");
+            }
+
+            return row;
+        }
+
+        private String getName() {
+            return names.get(nameIds[row()]);
+        }
+
+        private void setName(String name) {
+            rename(row(), name);
+        }
+
+        private UUID getUUID() {
+            return new UUID(most, least);
+        }
+
+        // A detached copy of the event, which views serialize instead of the store
+        private SpacetimeEvent detach() {
+            return SpacetimeEventStore.this.detach(row());
+        }
+    }
+
+    /**
+     * A view of a {@code SpacetimeEvent} stored in this store
+     */
+    private class EventView extends SpacetimeEvent {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RowTracker tracker;
+
+        private EventView(int row) {
+            super(null, null, 0, 0);
+
+            tracker = new RowTracker(row);
+        }
+
+        @Override
+        public String getName() {
+            return tracker.getName();
+        }
+
+        @Override
+        public void setName(String name) {
+            tracker.setName(name);
+        }
+
+        @Override
+        public double getRestT() {
+            return ts[tracker.row()];
+        }
+
+        @Override
+        public double getRestX() {
+            return xs[tracker.row()];
+        }
+
+        @Override
+        protected void setRestCoordinates(double t, double x) {
+            int i = tracker.row();
+            ts[i] = t;
+            xs[i] = x;
+        }
+
+        @Override
+        public UUID getUUID() {
+            return tracker.getUUID();
+        }
+
+        private Object writeReplace() {
+            return tracker.detach();
+        }
+    }
+
+    /**
+     * A view of a {@code SpacetimeTraveller} stored in this store
+     */
+    private class TravellerView extends SpacetimeTraveller {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RowTracker tracker;
+
+        private TravellerView(int row) {
+            super(null, null, 0, 0, 0);
+
+            tracker = new RowTracker(row);
+        }
+
+        @Override
+        public String getName() {
+            return tracker.getName();
+        }
+
+        @Override
+        public void setName(String name) {
+            tracker.setName(name);
+        }
+
+        @Override
+        public double getRestT() {
+            return ts[tracker.row()];
+        }
+
+        @Override
+        public double getRestX() {
+            return xs[tracker.row()];
+        }
+
+        @Override
+        protected void setRestCoordinates(double t, double x) {
+            int i = tracker.row();
+            ts[i] = t;
+            xs[i] = x;
+        }
+
+        @Override
+        public double getRestBeta() {
+            return betas[tracker.row()];
+        }
+
+        @Override
+        protected void setRestBeta(double beta) {
+            betas[tracker.row()] = beta;
+        }
+
+        @Override
+        public UUID getUUID() {
+            return tracker.getUUID();
+        }
+
+        private Object writeReplace() {
+            return tracker.detach();
+        }
+    }
+
+    /**
+     * A view of a {@code PiecewiseTraveller} stored in this store
+     */
+    private class PiecewiseView extends PiecewiseTraveller {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RowTracker tracker;
+
+        private PiecewiseView(int row) {
+            super(null, null, null);
+
+            tracker = new RowTracker(row);
+        }
+
+        @Override
+        public String getName() {
+            return tracker.getName();
+        }
+
+        @Override
+        public void setName(String name) {
+            tracker.setName(name);
+        }
+
+        @Override
+        public PiecewiseWorldline getWorldline() {
+            return worldlines[tracker.row()];
+        }
+
+        @Override
+        public void setWorldline(PiecewiseWorldline worldline) {
+            int i = tracker.row();
+            worldlines[i] = worldline;
+            ts[i] = worldline.getStartT(0);
+            xs[i] = worldline.getStartX(0);
+            betas[i] = worldline.getBeta(0);
+        }
+
+        @Override
+        public UUID getUUID() {
+            return tracker.getUUID();
+        }
+
+        private Object writeReplace() {
+            return tracker.detach();
+        }
+    }
+}
@@ -17,6 +17,8 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 
 package spacetime_diagram;
 
+import java.util.UUID;
+
 /**
  * Represents a moving object in Spacetime
  * 
@@ -46,15 +48,66 @@ public class SpacetimeTraveller extends SpacetimeEvent {
         this.beta = beta;
     }
 
+    /**
+     * Constructs a SpacetimeTraveller with a known UUID
+     * 
+     * @param uuid the UUID of the traveller
+     * @param name the name of the spacetime traveller
+     * @param beta the speed of the traveller in the rest frame
+     * @param t    a t-coordinate in the rest frame through which the traveller
+     *             passes
+     * @param x    an x-coordinate in the rest frame through which the traveller
+     *             passes
+     */
+    protected SpacetimeTraveller(UUID uuid, String name, double beta, double t, double x) {
+        super(uuid, name, t, x);
+
+        this.beta = beta;
+    }
+
     /**
      * Returns the speed of this traveller according to a moving observer
      * 
      * @param observerBeta the speed of the observer as a fraction of the speed of
      *                     light
      * @return the speed of this traveller as a fraction of the speed of light
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1} or it is NaN
+     * @see #getBeta(LorentzFrame)
      */
     public double getBeta(double observerBeta) {
-        return LorentzTransform.speedTransform(beta, observerBeta);
+        return getBeta(new LorentzFrame(observerBeta));
+    }
+
+    /**
+     * Returns the speed of this traveller according to an observer in the
+     * specified frame
+     * 
+     * @param frame the frame of the observer
+     * @return the speed of this traveller as a fraction of the speed of light
+     */
+    public double getBeta(LorentzFrame frame) {
+        return frame.velocity(getRestBeta());
+    }
+
+    /**
+     * Returns the speed of this traveller in the rest frame
+     * 
+     * @return the speed of this traveller as a fraction of the speed of light when
+     *         the observer is at rest
+     */
+    public double getRestBeta() {
+        return beta;
+    }
+
+    /**
+     * Sets the speed of this traveller in the rest frame. All changes to the speed
+     * of this traveller go through this method.
+     * 
+     * @param beta the new speed of this traveller in the rest frame as a fraction
+     *             of the speed of light
+     */
+    protected void setRestBeta(double beta) {
+        this.beta = beta;
     }
 
     /**
@@ -66,16 +119,59 @@ public class SpacetimeTraveller extends SpacetimeEvent {
      * @param observedBeta the speed of the traveller according to the observer as a
      *                     fraction of the speed of light
      * @return the new speed of this traveller as a fraction of the speed of light
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1} or it is NaN
+     * @see #setBeta(LorentzFrame, double)
      */
     public double setBeta(double observerBeta, double observedBeta) {
-        double beta = LorentzTransform.getRestBeta(observerBeta, observedBeta);
+        return setBeta(new LorentzFrame(observerBeta), observedBeta);
+    }
+
+    /**
+     * Sets the speed of this traveller according to an observer in the specified
+     * frame. This will change the speed of this traveller for all observers
+     * 
+     * @param frame        the frame of the observer
+     * @param observedBeta the speed of the traveller according to the observer as a
+     *                     fraction of the speed of light
+     * @return the new speed of this traveller as a fraction of the speed of light
+     */
+    public double setBeta(LorentzFrame frame, double observedBeta) {
+        double beta = frame.restVelocity(observedBeta);
 
         if (Math.abs(beta) < 1) {
-            this.beta = beta;
+            setRestBeta(beta);
             return observedBeta;
         }
 
-        return getBeta(observerBeta);
+        return getBeta(frame);
+    }
+
+    /**
+     * Returns the time that passes on this traveller's clock between two times
+     * according to an observer in the specified frame
+     * 
+     * @param frame the frame of the observer
+     * @param t1    the time the clock starts according to the observer
+     * @param t2    the time the clock stops according to the observer
+     * @return the proper time of the traveller from {@code t1} to {@code t2},
+     *         negative if {@code t2 < t1}
+     * @see ProperTimes
+     */
+    public double getProperTime(LorentzFrame frame, double t1, double t2) {
+        return (t2 - t1) * frame.clockRate(getRestBeta());
+    }
+
+    /**
+     * Returns the position of this traveller at a time according to an observer
+     * in the specified frame
+     * 
+     * @param frame the frame of the observer
+     * @param t     the t-coordinate according to the observer
+     * @return the x-coordinate of the traveller at {@code t} according to the
+     *         observer
+     */
+    public double getPositionAt(LorentzFrame frame, double t) {
+        return getXIntercept(frame) + getBeta(frame) * t;
     }
 
     /**
@@ -85,9 +181,22 @@ public class SpacetimeTraveller extends SpacetimeEvent {
      * @param observerBeta the speed of the observer as a fraction of the speed of
      *                     light
      * @return the x-coordinate when {@code t = 0} according to the observer
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1} or it is NaN
+     * @see #getXIntercept(LorentzFrame)
      */
     public double getXIntercept(double observerBeta) {
+        return getXIntercept(new LorentzFrame(observerBeta));
+    }
+
+    /**
+     * Returns position of the traveller when {@code t = 0} according to an
+     * observer in the specified frame
+     * 
+     * @param frame the frame of the observer
+     * @return the x-coordinate when {@code t = 0} according to the observer
+     */
+    public double getXIntercept(LorentzFrame frame) {
         // Solve for the x-intercept
-        return getX(observerBeta) - getBeta(observerBeta) * getT(observerBeta);
+        return getX(frame) - getBeta(frame) * getT(frame);
     }
 }
\ No newline at end of file
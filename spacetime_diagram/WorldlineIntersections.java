@@ -0,0 +1,416 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Finds where the worldlines of travellers cross, which are the events where
+ * two travellers meet.
+ * 
+ * Travellers move at a constant speed forever, so each worldline is a straight
+ * line {@code x = x0 + beta t} in the rest frame. The meetings are found by
+ * sweeping a line of constant time across the diagram, keeping the travellers
+ * in order of position: two travellers can only meet once they are next to each
+ * other, so only the meetings of neighbours need to be known, and each meeting
+ * swaps the two travellers. Finding {@code k} meetings between {@code n}
+ * travellers takes {@code O((n + k) log n)} time, instead of looking at every
+ * pair.
+ * 
+ * Meetings are found in a window of time, since every pair of travellers with
+ * different speeds meets somewhere. Travellers with the same speed never meet,
+ * even if they are in the same place. Only {@code SpacetimeTraveller}s that
+ * never change speed are included, since the sweep relies on straight
+ * worldlines; {@code PiecewiseTraveller}s are left out. They are numbered in
+ * the order they appear in the collection, without the other events, and
+ * {@link #getRow(int)} gives their index in the collection.
+ * 
+ * @author Jonathan Elsner
+ * @see SpacetimeTraveller
+ */
+public class WorldlineIntersections {
+
+    /**
+     * Receives the meetings of travellers
+     */
+    public interface MeetingVisitor {
+
+        /**
+         * Called for each meeting, in order of time
+         * 
+         * @param first  the traveller on the left before the meeting
+         * @param second the traveller on the right before the meeting
+         * @param t      the time of the meeting in the rest frame
+         * @param x      the position of the meeting in the rest frame
+         */
+        void meet(int first, int second, double t, double x);
+    }
+
+    // How much earlier than asked for the sweep starts, relative to the window
+    private static final double SWEEP_MARGIN = 1e-9;
+
+    private final int size;
+
+    // The index in the collection of each traveller, its name, and its worldline
+    private final int[] rows;
+    private final String[] names;
+    private final double[] intercepts;
+    private final double[] betas;
+
+    /**
+     * Reads the worldlines of the travellers in the collection. Events stored in
+     * a {@code SpacetimeEventStore} are read straight from its columns.
+     * 
+     * @param events the events, of which only the travellers are used
+     */
+    public WorldlineIntersections(Collection<? extends SpacetimeEvent> events) {
+        int n = events.size();
+        double[] t = new double[n];
+        double[] x = new double[n];
+        double[] beta = new double[n];
+        byte[] kinds = new byte[n];
+
+        if (events instanceof SpacetimeEventStore) {
+            ((SpacetimeEventStore) events).copyColumns(t, x, beta, kinds);
+        } else {
+            int i = 0;
+            for (SpacetimeEvent evt : events) {
+                t[i] = evt.getRestT();
+                x[i] = evt.getRestX();
+                kinds[i] = SpacetimeEventStore.kindOf(evt);
+                if (kinds[i] == SpacetimeEventStore.TRAVELLER) {
+                    beta[i] = ((SpacetimeTraveller) evt).getRestBeta();
+                }
+                i++;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] == SpacetimeEventStore.TRAVELLER) {
+                count++;
+            }
+        }
+
+        size = count;
+        rows = new int[size];
+        names = new String[size];
+        intercepts = new double[size];
+        betas = new double[size];
+
+        boolean columns = events instanceof SpacetimeEventStore;
+        int k = 0;
+        int i = 0;
+        for (SpacetimeEvent evt : events) {
+            if (kinds[i] == SpacetimeEventStore.TRAVELLER) {
+                rows[k] = i;
+                names[k] = columns ? ((SpacetimeEventStore) events).getName(i) : evt.getName();
+                intercepts[k] = x[i] - beta[i] * t[i];
+                betas[k] = beta[i];
+                k++;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Returns the number of travellers
+     * 
+     * @return the number of travellers in the collection
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index in the collection of a traveller
+     * 
+     * @param i the number of the traveller
+     * @return its index in the collection the travellers were read from
+     * @throws IndexOutOfBoundsException if {@code i} is out of range
+     */
+    public int getRow(int i) {
+        return rows[i];
+    }
+
+    /**
+     * Returns the name of a traveller
+     * 
+     * @param i the number of the traveller
+     * @return the name it had when the travellers were read
+     * @throws IndexOutOfBoundsException if {@code i} is out of range
+     */
+    public String getName(int i) {
+        return names[i];
+    }
+
+    /**
+     * Returns the times of the first and last meetings of any travellers. The
+     * first and last meetings are always between travellers whose speeds are
+     * next to each other, so this takes {@code O(n log n)} time.
+     * 
+     * @return the times of the first and last meetings in the rest frame, or
+     *         {@code null} if no travellers meet
+     */
+    public double[] getTimeRange() {
+        // The travellers by speed, and the extreme intercepts of each speed
+        int[] bySpeed = IndexSort.sortedIndices(size, betas, null);
+
+        double first = Double.POSITIVE_INFINITY;
+        double last = Double.NEGATIVE_INFINITY;
+
+        double prevBeta = Double.NaN;
+        double prevMin = Double.NaN;
+        double prevMax = Double.NaN;
+
+        for (int start = 0; start < size;) {
+            double beta = betas[bySpeed[start]];
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+
+            int end = start;
+            for (; end < size && betas[bySpeed[end]] == beta; end++) {
+                min = Math.min(min, intercepts[bySpeed[end]]);
+                max = Math.max(max, intercepts[bySpeed[end]]);
+            }
+
+            if (start > 0) {
+                // Travellers meet at t = (x0 - x0') / (beta' - beta)
+                double speed = beta - prevBeta;
+                first = Math.min(first, (prevMin - max) / speed);
+                last = Math.max(last, (prevMax - min) / speed);
+            }
+
+            prevBeta = beta;
+            prevMin = min;
+            prevMax = max;
+            start = end;
+        }
+
+        return first <= last ? new double[] { first, last } : null;
+    }
+
+    /**
+     * Finds every meeting of two travellers between the specified times,
+     * including meetings at those times. Meetings that only fall outside the
+     * window by rounding, such as several travellers meeting in one place at
+     * {@code tMax}, are given the time of the nearest end of the window.
+     * 
+     * @param tMin    the earliest time of a meeting in the rest frame
+     * @param tMax    the latest time of a meeting in the rest frame
+     * @param visitor receives the meetings, in order of time
+     * @return the number of meetings
+     * @throws IllegalArgumentException if the times are not finite or
+     *                                  {@code tMax < tMin}
+     */
+    public long find(double tMin, double tMax, MeetingVisitor visitor) {
+        if (!Double.isFinite(tMin) || !Double.isFinite(tMax) || tMax < tMin) {
+            throw new IllegalArgumentException("Bad time window: " + tMin + " to " + tMax);
+        }
+
+        // The times of meetings are rounded differently depending on which pair they
+        // are worked out from, so meetings right at the start may already look like
+        // they have passed, and ones right at the end like they are still to come.
+        // Sweep a little past both ends, and count those meetings as at the ends.
+        double margin = SWEEP_MARGIN * Math.max(1, Math.max(Math.max(Math.abs(tMin), Math.abs(tMax)), tMax - tMin));
+        double start = tMin - margin;
+        double end = tMax + margin;
+
+        // The travellers from left to right at the start. Travellers in the same
+        // place have the faster one on the left, so they meet straight away.
+        double[] startX = new double[size];
+        double[] negativeBetas = new double[size];
+        for (int i = 0; i < size; i++) {
+            startX[i] = intercepts[i] + betas[i] * start;
+            negativeBetas[i] = -betas[i];
+        }
+        int[] order = IndexSort.sortedIndices(size, startX, negativeBetas);
+
+        int[] position = new int[size];
+        for (int p = 0; p < size; p++) {
+            position[order[p]] = p;
+        }
+
+        MeetingQueue queue = new MeetingQueue(size);
+        for (int p = 0; p + 1 < size; p++) {
+            queueMeeting(queue, order[p], order[p + 1], start, end);
+        }
+
+        long count = 0;
+        while (!queue.isEmpty()) {
+            double t = queue.peekTime();
+            int a = queue.peekFirst();
+            int b = queue.peekSecond();
+            queue.remove();
+
+            // The travellers may have stopped being neighbours since this was queued
+            int p = position[a];
+            if (p + 1 >= size || order[p + 1] != b) {
+                continue;
+            }
+
+            double tMeet = Math.min(Math.max(t, tMin), tMax);
+            visitor.meet(a, b, tMeet, intercepts[a] + betas[a] * tMeet);
+            count++;
+
+            order[p] = b;
+            order[p + 1] = a;
+            position[a] = p + 1;
+            position[b] = p;
+
+            if (p > 0) {
+                queueMeeting(queue, order[p - 1], b, t, end);
+            }
+            if (p + 2 < size) {
+                queueMeeting(queue, a, order[p + 2], t, end);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Finds every meeting of two travellers between the specified times, and
+     * makes an event for each, named after the travellers
+     * 
+     * @param tMin the earliest time of a meeting in the rest frame
+     * @param tMax the latest time of a meeting in the rest frame
+     * @return the meetings, in order of time
+     * @throws IllegalArgumentException if the times are not finite or
+     *                                  {@code tMax < tMin}
+     */
+    public List<SpacetimeEvent> findEvents(double tMin, double tMax) {
+        List<SpacetimeEvent> meetings = new ArrayList<>();
+
+        find(tMin, tMax, (a, b, t, x) -> meetings.add(new SpacetimeEvent(names[a] + " meets " + names[b], t, x)));
+
+        return meetings;
+    }
+
+    /**
+     * Queues the meeting of neighbouring travellers if they meet in the window.
+     * Travellers that should already have met meet now, which only happens when
+     * rounding puts their meeting a little before a meeting of another pair.
+     */
+    private void queueMeeting(MeetingQueue queue, int left, int right, double now, double end) {
+        double speed = betas[left] - betas[right];
+
+        // Only a faster traveller on the left can catch up with one on the right
+        if (!(speed > 0)) {
+            return;
+        }
+
+        double t = Math.max(now, (intercepts[right] - intercepts[left]) / speed);
+        if (t <= end) {
+            queue.add(t, left, right);
+        }
+    }
+
+    /**
+     * A binary heap of meetings ordered by time, kept in primitive arrays
+     */
+    private static class MeetingQueue {
+        private double[] times;
+        private int[] firsts;
+        private int[] seconds;
+        private int size;
+
+        private MeetingQueue(int capacity) {
+            capacity = Math.max(16, capacity);
+            times = new double[capacity];
+            firsts = new int[capacity];
+            seconds = new int[capacity];
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private double peekTime() {
+            return times[0];
+        }
+
+        private int peekFirst() {
+            return firsts[0];
+        }
+
+        private int peekSecond() {
+            return seconds[0];
+        }
+
+        private void add(double t, int first, int second) {
+            if (size == times.length) {
+                int capacity = 2 * size;
+                times = Arrays.copyOf(times, capacity);
+                firsts = Arrays.copyOf(firsts, capacity);
+                seconds = Arrays.copyOf(seconds, capacity);
+            }
+
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (times[parent] <= t) {
+                    break;
+                }
+                move(parent, i);
+                i = parent;
+            }
+
+            times[i] = t;
+            firsts[i] = first;
+            seconds[i] = second;
+        }
+
+        private void remove() {
+            size--;
+
+            double t = times[size];
+            int first = firsts[size];
+            int second = seconds[size];
+
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && times[child + 1] < times[child]) {
+                    child++;
+                }
+                if (t <= times[child]) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+
+            times[i] = t;
+            firsts[i] = first;
+            seconds[i] = second;
+        }
+
+        private void move(int from, int to) {
+            times[to] = times[from];
+            firsts[to] = firsts[from];
+            seconds[to] = seconds[from];
+        }
+    }
+}
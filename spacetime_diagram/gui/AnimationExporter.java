@@ -0,0 +1,435 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Exports an animation of a diagram as the speed of the observer sweeps from
+ * one value to another, either as numbered PNG images or as an animated GIF.
+ * 
+ * Frames are drawn in parallel, each thread drawing into its own image. Only a
+ * few frames per thread are ever in memory at once, however many frames there
+ * are: PNG frames are written by the thread that drew them, and GIF frames are
+ * handed to the thread writing the GIF in order.
+ * 
+ * @author Jonathan Elsner
+ * @see DiagramRenderer
+ */
+public class AnimationExporter {
+
+    /**
+     * The speed of the observer in the first frame, when none is given
+     */
+    public static final double DEFAULT_START_BETA = -0.99;
+
+    /**
+     * The speed of the observer in the last frame, when none is given
+     */
+    public static final double DEFAULT_END_BETA = 0.99;
+
+    // Number of frames per thread that can be drawn but not yet written
+    private static final int FRAMES_PER_THREAD = 2;
+
+    // How the GIF frames are colored. Built from the colors the diagram is drawn
+    // with, each blended with the white background in steps, which covers the
+    // edges of antialiased lines
+    private static final IndexColorModel GIF_PALETTE = createPalette();
+
+    private final DiagramRenderer renderer;
+    private final int threads;
+
+    /**
+     * Constructs an exporter that draws the frames on one thread per core
+     * 
+     * @param renderer draws the frames
+     */
+    public AnimationExporter(DiagramRenderer renderer) {
+        this(renderer, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an exporter that draws the frames on the specified number of
+     * threads
+     * 
+     * @param renderer draws the frames
+     * @param threads  the number of frames drawn at once
+     * @throws IllegalArgumentException if {@code threads < 1}
+     */
+    public AnimationExporter(DiagramRenderer renderer, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads < 1: " + threads);
+        }
+
+        this.renderer = renderer;
+        this.threads = threads;
+    }
+
+    /**
+     * Exports the animation as numbered PNG images named
+     * {@code prefix_0000.png}, {@code prefix_0001.png} and so on
+     * 
+     * @param dir       the directory in which to write the images
+     * @param prefix    the start of the name of each image
+     * @param startBeta the speed of the observer in the first frame
+     * @param endBeta   the speed of the observer in the last frame
+     * @param frames    the number of frames
+     * @param progress  called with the number of frames written so far, or
+     *                  {@code null}
+     * @throws IOException              if an image can't be written
+     * @throws InterruptedException     if the calling thread is interrupted, which
+     *                                  stops the export
+     * @throws IllegalArgumentException if {@code frames < 1} or a speed is not
+     *                                  between -1 and 1
+     */
+    public void exportPngs(File dir, String prefix, double startBeta, double endBeta, int frames,
+            IntConsumer progress) throws IOException, InterruptedException {
+        checkSweep(startBeta, endBeta, frames);
+
+        // At least four digits, so the images sort in order
+        int digits = Math.max(4, String.valueOf(frames - 1).length());
+        String format = "%s_%0" + digits + "d.png";
+
+        export(frames, (frame, image) -> {
+            renderer.render(beta(startBeta, endBeta, frames, frame), image);
+
+            File file = new File(dir, String.format(Locale.ROOT, format, prefix, frame));
+            if (!ImageIO.write(image, "png", file)) {
+                throw new IOException("No PNG writer available");
+            }
+
+            return null;
+        }, (frame, result) -> {
+        }, progress);
+    }
+
+    /**
+     * Exports the animation as an animated GIF that loops forever
+     * 
+     * @param file        the GIF file to write
+     * @param startBeta   the speed of the observer in the first frame
+     * @param endBeta     the speed of the observer in the last frame
+     * @param frames      the number of frames
+     * @param frameMillis how long each frame is shown, in milliseconds. GIFs
+     *                    store this in hundredths of a second
+     * @param progress    called with the number of frames written so far, or
+     *                    {@code null}
+     * @throws IOException              if the GIF can't be written
+     * @throws InterruptedException     if the calling thread is interrupted, which
+     *                                  stops the export
+     * @throws IllegalArgumentException if {@code frames < 1} or a speed is not
+     *                                  between -1 and 1
+     */
+    public void exportGif(File file, double startBeta, double endBeta, int frames, int frameMillis,
+            IntConsumer progress) throws IOException, InterruptedException {
+        checkSweep(startBeta, endBeta, frames);
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+
+        // Colors already looked up, for each thread
+        ThreadLocal<HashMap<Integer, Byte>> colorCaches = ThreadLocal.withInitial(HashMap::new);
+
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            if (out == null) {
+                throw new IOException("Could not open " + file);
+            }
+
+            writer.setOutput(out);
+            writer.prepareWriteSequence(gifStreamMetadata(writer));
+
+            export(frames, (frame, image) -> {
+                renderer.render(beta(startBeta, endBeta, frames, frame), image);
+                return toIndexed(image, colorCaches.get());
+            }, (frame, indexed) -> {
+                IIOMetadata metadata = gifMetadata(writer, indexed, frameMillis, frame == 0);
+                writer.writeToSequence(new IIOImage(indexed, null, metadata), null);
+            }, progress);
+
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Draws every frame on the worker threads and hands the results to the
+     * calling thread in order, keeping only a few frames per thread in flight
+     */
+    private <T> void export(int frames, FrameRenderer<T> render, FrameWriter<T> write, IntConsumer progress)
+            throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<BufferedImage> buffers = ThreadLocal.withInitial(
+                () -> new BufferedImage(renderer.getWidth(), renderer.getHeight(), BufferedImage.TYPE_INT_RGB));
+
+        ArrayDeque<Future<T>> inFlight = new ArrayDeque<>();
+        int submitted = 0;
+
+        try {
+            for (int written = 0; written < frames; written++) {
+                while (submitted < frames && inFlight.size() < threads * FRAMES_PER_THREAD) {
+                    int frame = submitted++;
+                    inFlight.add(pool.submit(() -> render.render(frame, buffers.get())));
+                }
+
+                T result;
+                try {
+                    result = inFlight.remove().get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) cause).getCause();
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+
+                write.write(written, result);
+
+                if (progress != null) {
+                    progress.accept(written + 1);
+                }
+            }
+        } finally {
+            // Stop drawing frames nobody will write
+            inFlight.forEach(f -> f.cancel(true));
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Draws a frame on a worker thread
+     */
+    private interface FrameRenderer<T> {
+        T render(int frame, BufferedImage buffer) throws Exception;
+    }
+
+    /**
+     * Writes a drawn frame on the calling thread
+     */
+    private interface FrameWriter<T> {
+        void write(int frame, T result) throws IOException;
+    }
+
+    /**
+     * Returns the speed of the observer in a frame, spaced evenly from the first
+     * frame to the last
+     */
+    private static double beta(double startBeta, double endBeta, int frames, int frame) {
+        return frames == 1 ? startBeta : startBeta + (endBeta - startBeta) * frame / (frames - 1);
+    }
+
+    private static void checkSweep(double startBeta, double endBeta, int frames) {
+        if (frames < 1) {
+            throw new IllegalArgumentException("Frames < 1: " + frames);
+        }
+        if (!(Math.abs(startBeta) <= 1) || !(Math.abs(endBeta) <= 1)) {
+            throw new IllegalArgumentException("|beta| > 1 or NaN: " + startBeta + " to " + endBeta);
+        }
+    }
+
+    /**
+     * Converts a drawn frame to the GIF palette, using the closest color for each
+     * pixel without dithering
+     */
+    private static BufferedImage toIndexed(BufferedImage image, HashMap<Integer, Byte> cache) {
+        int[] rgb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        BufferedImage indexed = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_BYTE_INDEXED, GIF_PALETTE);
+        byte[] pixels = ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+
+        // Diagrams are mostly runs of the same color, so remember the last one
+        int lastColor = -1;
+        byte lastIndex = 0;
+
+        for (int i = 0; i < rgb.length; i++) {
+            int color = rgb[i] & 0xFFFFFF;
+
+            if (color != lastColor) {
+                lastColor = color;
+                lastIndex = cache.computeIfAbsent(color, AnimationExporter::closestColor);
+            }
+
+            pixels[i] = lastIndex;
+        }
+
+        return indexed;
+    }
+
+    /**
+     * Finds the index of the palette color closest to the specified color
+     */
+    private static byte closestColor(int color) {
+        int r = (color >> 16) & 0xFF;
+        int g = (color >> 8) & 0xFF;
+        int b = color & 0xFF;
+
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+
+        for (int i = 0; i < GIF_PALETTE.getMapSize(); i++) {
+            int dr = r - GIF_PALETTE.getRed(i);
+            int dg = g - GIF_PALETTE.getGreen(i);
+            int db = b - GIF_PALETTE.getBlue(i);
+            int distance = dr * dr + dg * dg + db * db;
+
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+
+        return (byte) best;
+    }
+
+    private static IndexColorModel createPalette() {
+        Color[] colors = new Color[DiagramPainter.LINE_COLORS.length + 2];
+        colors[0] = Color.black;
+        colors[1] = Color.yellow;
+        System.arraycopy(DiagramPainter.LINE_COLORS, 0, colors, 2, DiagramPainter.LINE_COLORS.length);
+
+        // White, then each color in as many steps from white as fit
+        int steps = 255 / colors.length;
+        byte[] r = new byte[1 + colors.length * steps];
+        byte[] g = new byte[r.length];
+        byte[] b = new byte[r.length];
+
+        r[0] = g[0] = b[0] = (byte) 255;
+
+        int i = 1;
+        for (Color color : colors) {
+            for (int step = 1; step <= steps; step++) {
+                double amount = (double) step / steps;
+
+                r[i] = (byte) Math.round(255 + (color.getRed() - 255) * amount);
+                g[i] = (byte) Math.round(255 + (color.getGreen() - 255) * amount);
+                b[i] = (byte) Math.round(255 + (color.getBlue() - 255) * amount);
+                i++;
+            }
+        }
+
+        return new IndexColorModel(8, r.length, r, g, b);
+    }
+
+    /**
+     * Creates the metadata for the whole GIF, which holds the palette shared by
+     * every frame. Without it the writer falls back to a palette of its own that
+     * the frames don't use.
+     */
+    private static IIOMetadata gifStreamMetadata(ImageWriter writer) throws IOException {
+        IIOMetadata metadata = writer.getDefaultStreamMetadata(null);
+        String format = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+        // GIF color tables hold a power of two colors, so pad with white
+        IIOMetadataNode table = new IIOMetadataNode("GlobalColorTable");
+        table.setAttribute("sizeOfGlobalColorTable", "256");
+        table.setAttribute("backgroundColorIndex", "0");
+        table.setAttribute("sortFlag", "FALSE");
+
+        for (int i = 0; i < 256; i++) {
+            int rgb = i < GIF_PALETTE.getMapSize() ? GIF_PALETTE.getRGB(i) : GIF_PALETTE.getRGB(0);
+
+            IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+            entry.setAttribute("index", String.valueOf(i));
+            entry.setAttribute("red", String.valueOf((rgb >> 16) & 0xFF));
+            entry.setAttribute("green", String.valueOf((rgb >> 8) & 0xFF));
+            entry.setAttribute("blue", String.valueOf(rgb & 0xFF));
+            table.appendChild(entry);
+        }
+
+        root.appendChild(table);
+        metadata.mergeTree(format, root);
+
+        return metadata;
+    }
+
+    /**
+     * Creates the metadata for a GIF frame, which sets how long it is shown and,
+     * for the first frame, makes the animation loop forever
+     */
+    private static IIOMetadata gifMetadata(ImageWriter writer, BufferedImage image, int frameMillis, boolean first)
+            throws IOException {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image),
+                null);
+        String format = metadata.getNativeMetadataFormatName();
+
+        // Built from scratch, since the default metadata holds a palette of its own
+        // that would replace the one shared by every frame
+        IIOMetadataNode root = new IIOMetadataNode(format);
+
+        IIOMetadataNode descriptor = new IIOMetadataNode("ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", "0");
+        descriptor.setAttribute("imageTopPosition", "0");
+        descriptor.setAttribute("imageWidth", String.valueOf(image.getWidth()));
+        descriptor.setAttribute("imageHeight", String.valueOf(image.getHeight()));
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+        root.appendChild(descriptor);
+
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", String.valueOf(Math.max(1, Math.round(frameMillis / 10.0))));
+        control.setAttribute("transparentColorIndex", "0");
+        root.appendChild(control);
+
+        if (first) {
+            IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+
+            // Sub-block 1 holds the number of times to loop, 0 meaning forever
+            loop.setUserObject(new byte[] { 1, 0, 0 });
+
+            extensions.appendChild(loop);
+            root.appendChild(extensions);
+        }
+
+        metadata.setFromTree(format, root);
+
+        return metadata;
+    }
+}
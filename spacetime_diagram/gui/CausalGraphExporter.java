@@ -0,0 +1,123 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.IntConsumer;
+
+import spacetime_diagram.CausalGraph;
+import spacetime_diagram.SpacetimeEventStore;
+
+/**
+ * Exports the causal graph of a diagram as a CSV file, with one row for each
+ * edge of its transitive reduction: each event and the events right after it
+ * in time, with the interval between them.
+ * 
+ * Events are identified by their index in the list of events, so the file can
+ * be matched up with the diagram.
+ * 
+ * @author Jonathan Elsner
+ * @see CausalGraph#transitiveReduction(IntConsumer)
+ * @see SpacetimeDiagramGUI
+ */
+class CausalGraphExporter {
+
+    // How many events are written between progress reports
+    private static final int PROGRESS_INTERVAL = 4096;
+
+    private final SpacetimeEventStore events;
+
+    // Only holds the events that aren't travellers, which are what is exported
+    private final CausalGraph graph;
+
+    /**
+     * Constructs an exporter for the events in the list as they are now. The
+     * events are copied, so must be constructed on the event dispatch thread.
+     * 
+     * @param objects the list whose causal graph is exported
+     */
+    CausalGraphExporter(SpacetimeEventListModel objects) {
+        events = new SpacetimeEventStore(objects.size());
+        events.addAll(objects.getBackingList());
+        graph = new CausalGraph(events);
+    }
+
+    /**
+     * Returns how much there is to do, in the units {@link #export} reports its
+     * progress in
+     * 
+     * @return the total progress of an export
+     */
+    int getTotal() {
+        return 2 * graph.size();
+    }
+
+    /**
+     * Builds the causal graph and writes its edges to the file. Stops if the
+     * thread is interrupted.
+     * 
+     * @param file     the CSV file to write
+     * @param progress called with how much of the export is done
+     * @throws IOException          if the file could not be written
+     * @throws InterruptedException if the thread is interrupted
+     */
+    void export(File file, IntConsumer progress) throws IOException, InterruptedException {
+        int size = graph.size();
+        int[][] successors = graph.transitiveReduction(progress);
+
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("from,to,from_name,to_name,interval,type\n");
+
+            for (int i = 0; i < size; i++) {
+                if (i % PROGRESS_INTERVAL == 0) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    progress.accept(size + i);
+                }
+
+                int from = graph.getRow(i);
+
+                for (int j : successors[i]) {
+                    int to = graph.getRow(j);
+                    double interval = graph.interval(i, j);
+
+                    out.write(from + "," + to + "," + quote(events.getName(from)) + ","
+                            + quote(events.getName(to)) + "," + interval + ","
+                            + (CausalGraph.classify(interval) == CausalGraph.TIMELIKE ? "timelike" : "lightlike")
+                            + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Quotes a name if it has characters that mean something in CSV
+     */
+    private static String quote(String name) {
+        if (name.indexOf(',') < 0 && name.indexOf('"') < 0 && name.indexOf('\n') < 0 && name.indexOf('\r') < 0) {
+            return name;
+        }
+
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+}
@@ -21,7 +21,9 @@ import java.awt.Canvas;
 import java.awt.Graphics2D;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
-import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
@@ -40,9 +42,15 @@ import java.awt.*;
  * Position (x) is on the horizontal axis and time (t) is on the vertical axis,
  * as is standard practice for spacetime diagrams.
  * 
+ * The diagram is not drawn on the event dispatch thread. Whenever something
+ * changes, a background thread draws the diagram into a back buffer, which is
+ * swapped in and shown once it is finished. Drawings that are made out of date
+ * by another change before they finish are abandoned.
+ * 
  * @author Jonathan Elsner
  * @see SpacetimeDiagramGUI
  * @see LorentzTransform
+ * @see DiagramPainter
  */
 public class Diagram extends Canvas implements ComponentListener, ListDataListener {
 
@@ -83,14 +91,18 @@ public class Diagram extends Canvas implements ComponentListener, ListDataListen
      */
     private boolean drawLabels = true;
 
-    // How the lines are painted
-    private Stroke lineStroke = new BasicStroke(3);
+    /**
+     * Whether to shade areas crowded with events instead of drawing every event
+     */
+    private boolean levelOfDetail = true;
 
-    // Worldline colors
-    // Color pallete is chosen to be accessible for colorblind people
-    // https://davidmathlogic.com/colorblind/#%23332288-%23117733-%2344AA99-%2388CCEE-%23DDCC77-%23CC6677-%23AA4499-%23882255
-    private Color[] lineColors = new Color[] { new Color(0x332288), new Color(0x117733), new Color(0x44AA99),
-            new Color(0x88CCEE), new Color(0xDDCC77), new Color(0xCC6677), new Color(0xAA4499), new Color(0x882255) };
+    /**
+     * Whether to highlight the light cone of the focused event
+     */
+    private boolean drawCausalFocus = true;
+
+    // The rest frame t- and x-coordinates of the focused event, or null
+    private double[] causalFocus;
 
     // How fast the reference frame for the graph is moving
     private double referenceFrameBeta = 0.0;
@@ -98,10 +110,42 @@ public class Diagram extends Canvas implements ComponentListener, ListDataListen
     // The list of objects to draw on the graph
     private Iterable<SpacetimeEvent> objects;
 
+    // Copy of the rest frame coordinates of the objects, null when the objects
+    // have changed since it was taken. Only touched on the event dispatch thread
+    private RestFrameSnapshot cachedSnapshot;
+
+    // The coordinates of the objects in the most recently drawn reference frame
+    private volatile TransformedFrame cachedFrame;
+
     /**
-     * Create a Spacetime diagram for the iterable of SpacetimeObjects. As the
-     * iterable updates, changes will be reflected on the Diagram as soon as the
-     * diagram is repainted.
+     * The number of objects at which transforming them is split across cores
+     */
+    private int parallelThreshold = TransformedFrame.DEFAULT_PARALLEL_THRESHOLD;
+
+    // Incremented every time something changes that changes how the diagram looks
+    private volatile int generation = 0;
+
+    // The generation for which a drawing was last requested
+    private int requestedGeneration = -1;
+
+    // The generation shown in the front buffer
+    private int renderedGeneration = -1;
+
+    // The finished drawing shown on screen, and the image the renderer draws into.
+    // Both are swapped while holding bufferLock
+    private BufferedImage frontBuffer;
+    private BufferedImage backBuffer;
+    private final Object bufferLock = new Object();
+
+    // The thread on which the diagram is drawn. Only started once the diagram is
+    // drawn on screen, and stopped when it is taken off the screen
+    private transient ExecutorService renderer;
+
+    /**
+     * Create a Spacetime diagram for the iterable of SpacetimeObjects. The diagram
+     * caches the coordinates of the objects, so changes to the iterable are only
+     * reflected once the diagram is notified through its {@code ListDataListener}
+     * methods.
      * 
      * @param objects the objects to draw on the spacetime diagram
      */
@@ -140,7 +184,31 @@ public class Diagram extends Canvas implements ComponentListener, ListDataListen
      */
     public void setDrawLabels(boolean drawLabels) {
         this.drawLabels = drawLabels;
-        repaint();
+        diagramChanged();
+    }
+
+    /**
+     * Whether areas with too many events to tell apart are shaded instead of
+     * drawing every event in them
+     * 
+     * @return {@code true} if crowded areas are shaded
+     */
+    public boolean isLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    /**
+     * Sets whether areas with too many events to tell apart are shaded instead of
+     * drawing every event and label in them. Shading keeps huge diagrams quick to
+     * draw; zooming in spreads the events out so they are drawn individually
+     * again.
+     * 
+     * @param levelOfDetail {@code true} to shade crowded areas, {@code false} to
+     *                      always draw every event
+     */
+    public void setLevelOfDetail(boolean levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+        diagramChanged();
     }
 
     /**
@@ -161,72 +229,144 @@ public class Diagram extends Canvas implements ComponentListener, ListDataListen
      */
     public void setDrawLightCone(boolean drawLightCone) {
         this.drawLightCone = drawLightCone;
-        repaint();
+        diagramChanged();
+    }
+
+    /**
+     * Whether the light cone of the focused event is highlighted
+     * 
+     * @return {@code true} if the light cone is highlighted
+     * @see #setCausalFocus(SpacetimeEvent)
+     */
+    public boolean isDrawCausalFocus() {
+        return drawCausalFocus;
+    }
+
+    /**
+     * Sets whether the light cone of the focused event is highlighted
+     * 
+     * @param drawCausalFocus {@code true} to draw the light cone of the focused
+     *                        event and fade the events outside it
+     * @see #setCausalFocus(SpacetimeEvent)
+     */
+    public void setDrawCausalFocus(boolean drawCausalFocus) {
+        this.drawCausalFocus = drawCausalFocus;
+        diagramChanged();
     }
 
     /**
-     * Draw the Spacetime diagram with the specified Graphics instance.
+     * Focuses the diagram on an event, drawing its light cone and fading every
+     * event outside it, which can neither affect it nor be affected by it. The
+     * coordinates of the event are copied, so this must be called again after
+     * the event moves.
      * 
-     * @param g the Graphics2D instance with which to draw the spacetime diagram
+     * @param evt the event to focus on, or {@code null} to focus on nothing.
+     *            Travellers are not focused on, since every event is in the light
+     *            cone of some point on their worldline.
+     * @see spacetime_diagram.CausalIndex
+     */
+    public void setCausalFocus(SpacetimeEvent evt) {
+        if (evt == null || evt instanceof SpacetimeTraveller) {
+            causalFocus = null;
+        } else {
+            causalFocus = new double[] { evt.getRestT(), evt.getRestX() };
+        }
+
+        if (drawCausalFocus) {
+            diagramChanged();
+        }
+    }
+
+    /**
+     * Show the most recent drawing of the diagram, and start drawing a new one in
+     * the background if the diagram changed since.
+     * 
+     * @param g the Graphics instance with which to show the spacetime diagram
      */
     public void paint(Graphics g) {
-        Graphics2D g2d = (Graphics2D) g;
-        Font font = g2d.getFont();
-        AffineTransform transform = g2d.getTransform();
-
-        // Flip y-axis so this behaves like "normal" cartesian coordinates
-        transform.concatenate(AffineTransform.getScaleInstance(1, -1));
-        // Translate y-axis down so positive values are actually visible
-        // Translate x-axis over so the y-axis is centered
-        transform.translate(this.getWidth() / 2, -(drawingHeight + topPadding));
-
-        // Apply transform
-        g2d.transform(transform);
-        g2d.setFont(font.deriveFont(AffineTransform.getScaleInstance(1, -1)));
-
-        g2d.setStroke(lineStroke);
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        // Draw x-axis
-        g.setColor(Color.BLACK);
-        g.drawLine(-drawingWidth / 2, 0, drawingWidth / 2, 0);
-        // Draw y-axis
-        g.drawLine(0, 0, 0, drawingHeight);
-
-        // Draw light-cone from origin
-        if (drawLightCone) {
-            g.setColor(Color.yellow);
-            drawWorldLine(g2d, 0, -1);
-            drawWorldLine(g2d, 0, 1);
+        boolean painted = false;
+        int shownGeneration;
+
+        synchronized (bufferLock) {
+            if (frontBuffer != null) {
+                g.drawImage(frontBuffer, 0, 0, null);
+                painted = true;
+            }
+
+            shownGeneration = renderedGeneration;
         }
 
-        // Draw all of the SpacetimeObjects
-        int color = 0;
-        for (SpacetimeEvent obj : objects) {
-            int x = (int) Math.round(obj.getX(referenceFrameBeta) * pixelsPerUnit);
-            int t = (int) Math.round(obj.getT(referenceFrameBeta) * pixelsPerUnit);
-            int radius = 5;
+        // Nothing has been drawn yet, so show an empty diagram until it has
+        if (!painted) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
 
-            g2d.setColor(lineColors[(color++ % lineColors.length)]);
+        if (shownGeneration != generation && requestedGeneration != generation) {
+            requestRender();
+        }
+    }
 
-            // Draw a worldline if the object moves
-            if (obj instanceof SpacetimeTraveller) {
-                SpacetimeTraveller traveller = (SpacetimeTraveller) obj;
+    /**
+     * Paint without clearing first, since the whole canvas is covered by the buffer
+     * 
+     * @param g the Graphics instance with which to show the spacetime diagram
+     */
+    @Override
+    public void update(Graphics g) {
+        paint(g);
+    }
 
-                // Find the speed and x-intercept of the traveller
-                double travellerBeta = traveller.getBeta(referenceFrameBeta);
-                int travellerIntercept = (int) Math.round(traveller.getXIntercept(referenceFrameBeta) * pixelsPerUnit);
+    /**
+     * Stops the thread the diagram is drawn on when the diagram is taken off the
+     * screen, such as when its window is disposed
+     */
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        dispose();
+    }
 
-                drawWorldLine(g2d, travellerIntercept, travellerBeta);
-            } else { // Draw a dot if the object is an event
-                g2d.fillOval(x - radius, t - radius, radius * 2, radius * 2);
-            }
+    /**
+     * Stops the thread the diagram is drawn on in the background. A diagram that
+     * was never shown on screen has no such thread. If the diagram is drawn on
+     * screen again afterwards, a new thread is started. Must be called on the
+     * event dispatch thread.
+     */
+    public void dispose() {
+        if (renderer != null) {
+            renderer.shutdown();
+            renderer = null;
+        }
+    }
 
-            if (drawLabels) {
-                g2d.setColor(Color.black);
-                g2d.drawString(obj.getName(), x + (int) (radius * 1.1), t + (int) (radius * 1.1));
-            }
+    /**
+     * Draw the Spacetime diagram with the specified Graphics instance right away,
+     * on the calling thread. Used to draw the diagram somewhere other than on
+     * screen, like into an image.
+     * 
+     * @param g2d the Graphics2D instance with which to draw the spacetime diagram
+     */
+    public void paintDiagram(Graphics2D g2d) {
+        DiagramPainter painter = createPainter();
+        painter.paint(g2d, getFrame(takeSnapshot(), referenceFrameBeta, painter.getViewport()));
+    }
+
+    /**
+     * Returns a renderer that draws the diagram as it currently is, at its current
+     * size and with its current settings. The renderer does not change when the
+     * diagram does, so it can be used to draw many images on other threads. Must be
+     * called on the event dispatch thread.
+     * 
+     * @return a renderer for the current state of the diagram
+     * @throws IllegalStateException if the diagram has no size yet
+     */
+    public DiagramRenderer createRenderer() {
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            throw new IllegalStateException("Diagram has no size");
         }
+
+        return new DiagramRenderer(takeSnapshot(), createPainter(), getWidth(), getHeight());
     }
 
     /**
@@ -238,17 +378,153 @@ public class Diagram extends Canvas implements ComponentListener, ListDataListen
      *               the worldline will be {@code 1/beta}
      */
     public void drawWorldLine(Graphics2D g2d, int startX, double beta) {
-        int dt = drawingHeight;
-        int dx = (int) Math.round(dt * beta);
-
-        // Keep the lines from extending beyond the left and right edges of the graph so
-        // everything looks pretty.
-        if (Math.abs(startX + dx) > drawingWidth / 2) {
-            dx = (int) Math.copySign(drawingWidth / 2, dx) - startX;
-            dt = (int) Math.round(dx / beta);
+        createPainter().drawWorldLine(g2d, startX, beta);
+    }
+
+    /**
+     * Start drawing the current state of the diagram on the render thread. Must be
+     * called on the event dispatch thread.
+     */
+    private void requestRender() {
+        int width = getWidth();
+        int height = getHeight();
+
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        int requested = generation;
+        requestedGeneration = requested;
+
+        // Capture everything the render thread needs while we are still on the event
+        // dispatch thread
+        RestFrameSnapshot snapshot = takeSnapshot();
+        double beta = referenceFrameBeta;
+        DiagramPainter painter = createPainter();
+        Color background = getBackground();
+
+        if (renderer == null) {
+            renderer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "Diagram renderer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        renderer.execute(() -> {
+            // Skip drawings that were out of date before they even started
+            if (requested != generation) {
+                return;
+            }
+
+            BufferedImage image = backBuffer;
+            if (image == null || image.getWidth() != width || image.getHeight() != height) {
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+
+            Graphics2D g2d = image.createGraphics();
+            g2d.setColor(background);
+            g2d.fillRect(0, 0, width, height);
+
+            TransformedFrame frame = getFrame(snapshot, beta, painter.getViewport());
+            boolean finished = painter.paint(g2d, frame, () -> requested != generation);
+            g2d.dispose();
+
+            if (!finished) {
+                backBuffer = image;
+                return;
+            }
+
+            synchronized (bufferLock) {
+                backBuffer = frontBuffer;
+                frontBuffer = image;
+                renderedGeneration = requested;
+            }
+
+            // Show the new drawing
+            repaint();
+        });
+    }
+
+    /**
+     * Returns the rest frame coordinates of the objects, only reading them again if
+     * the objects changed since they were last read. Must be called on the event
+     * dispatch thread.
+     * 
+     * @return the snapshot of the objects on the diagram
+     */
+    private RestFrameSnapshot takeSnapshot() {
+        if (cachedSnapshot == null) {
+            cachedSnapshot = RestFrameSnapshot.of(objects);
+        }
+
+        return cachedSnapshot;
+    }
+
+    /**
+     * Returns the coordinates of the visible objects in the snapshot for the
+     * specified reference frame, only recomputing them if the objects, the
+     * reference frame or the viewport changed since they were last computed.
+     * 
+     * @param snapshot     the rest frame coordinates of the objects
+     * @param observerBeta the speed of the observer
+     * @param viewport     the part of the diagram that will be drawn
+     * @return the transformed coordinates of the visible objects on the diagram
+     */
+    private TransformedFrame getFrame(RestFrameSnapshot snapshot, double observerBeta, Viewport viewport) {
+        TransformedFrame frame = cachedFrame;
+
+        if (frame == null || frame.rest != snapshot || !frame.isFor(observerBeta, viewport)) {
+            frame = new TransformedFrame(snapshot, observerBeta, parallelThreshold, viewport);
+            cachedFrame = frame;
+        }
+
+        return frame;
+    }
+
+    /**
+     * Returns a painter with the current settings of the diagram
+     * 
+     * @return a painter that draws the diagram as it currently is
+     */
+    private DiagramPainter createPainter() {
+        return new DiagramPainter(getWidth(), getHeight(), drawingWidth, drawingHeight, topPadding, pixelsPerUnit,
+                drawLightCone, drawLabels, levelOfDetail, getFont(), drawCausalFocus ? causalFocus : null);
+    }
+
+    /**
+     * Note that the diagram looks different now, and show the change
+     */
+    private void diagramChanged() {
+        generation++;
+        repaint();
+    }
+
+    /**
+     * Returns the number of objects at which the diagram starts transforming them
+     * on several threads at once
+     * 
+     * @return the number of objects below which transforms are single-threaded
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the number of objects at which the diagram starts transforming them on
+     * several threads at once. Small diagrams are faster to transform on one
+     * thread.
+     * 
+     * @param parallelThreshold the number of objects below which transforms are
+     *                          single-threaded
+     * @throws IllegalArgumentException if {@code parallelThreshold < 1}
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("Threshold < 1: " + parallelThreshold);
         }
 
-        g2d.drawLine(startX, 0, startX + dx, dt);
+        this.parallelThreshold = parallelThreshold;
     }
 
     /**
@@ -268,7 +544,12 @@ public class Diagram extends Canvas implements ComponentListener, ListDataListen
      *                           observer drawing this diagram is travelling.
      */
     public void setReferenceFrameBeta(double referenceFrameBeta) {
-        this.referenceFrameBeta = referenceFrameBeta;
+        if (this.referenceFrameBeta != referenceFrameBeta) {
+            this.referenceFrameBeta = referenceFrameBeta;
+
+            // Any drawing for the old speed is now out of date
+            generation++;
+        }
     }
 
     @Override
@@ -280,6 +561,8 @@ public class Diagram extends Canvas implements ComponentListener, ListDataListen
 
         // Scale units with resize
         pixelsPerUnit = pixelsPerUnit * drawingWidth / oldWidth;
+
+        diagramChanged();
     }
 
     @Override
@@ -296,16 +579,19 @@ public class Diagram extends Canvas implements ComponentListener, ListDataListen
 
     @Override
     public void intervalAdded(ListDataEvent e) {
-        repaint();
+        cachedSnapshot = null;
+        diagramChanged();
     }
 
     @Override
     public void intervalRemoved(ListDataEvent e) {
-        repaint();
+        cachedSnapshot = null;
+        diagramChanged();
     }
 
     @Override
     public void contentsChanged(ListDataEvent e) {
-        repaint();
+        cachedSnapshot = null;
+        diagramChanged();
     }
 }
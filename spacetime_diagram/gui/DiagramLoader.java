@@ -0,0 +1,116 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.Component;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+
+import spacetime_diagram.EventIO;
+import spacetime_diagram.SpacetimeEventStore;
+
+/**
+ * Reads a diagram file on a background thread, adding the events to the list
+ * a chunk at a time as they are read. Each chunk is added with a single
+ * {@code ListDataEvent}, so the diagram can show the events already read while
+ * the rest of the file loads.
+ * 
+ * @author Jonathan Elsner
+ * @see EventIO#readSpacetimeEvents(File, int, java.util.function.Consumer)
+ * @see SpacetimeDiagramGUI
+ */
+class DiagramLoader extends SwingWorker<Boolean, SpacetimeEventStore> {
+
+    /**
+     * The largest number of events read before they are handed to the list
+     */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private final File file;
+    private final SpacetimeEventListModel objects;
+
+    // The component over which errors are shown
+    private final Component parent;
+
+    /**
+     * Constructs a loader that adds the events in a file to a list. The events are
+     * added after any already in the list.
+     * 
+     * @param file    the diagram file to read
+     * @param objects the list to add the events to
+     * @param parent  the component over which to show an error if the file can't
+     *                be read
+     */
+    DiagramLoader(File file, SpacetimeEventListModel objects, Component parent) {
+        this.file = file;
+        this.objects = objects;
+        this.parent = parent;
+    }
+
+    @Override
+    protected Boolean doInBackground() {
+        return EventIO.readSpacetimeEvents(file, CHUNK_SIZE, chunk -> publish(chunk));
+    }
+
+    /**
+     * Adds the chunks read since the last call to the list, on the event dispatch
+     * thread
+     */
+    @Override
+    protected void process(List<SpacetimeEventStore> chunks) {
+        // Chunks may still arrive after loading was cancelled
+        if (isCancelled()) {
+            return;
+        }
+
+        for (SpacetimeEventStore chunk : chunks) {
+            try {
+                objects.addAll(chunk);
+            } catch (IllegalArgumentException ex) {
+                // An event in this chunk has the same UUID as one already in the list
+                cancel(true);
+                JOptionPane.showMessageDialog(parent, "Could not open " + file.getName(), "Open Diagram",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lets the user know if the file could not be read
+     */
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            return;
+        }
+
+        try {
+            if (!get()) {
+                JOptionPane.showMessageDialog(parent, "Could not open " + file.getName(), "Open Diagram",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            ex.printStackTrace();
+        }
+    }
+}
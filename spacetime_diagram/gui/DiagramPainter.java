@@ -0,0 +1,630 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.util.BitSet;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import spacetime_diagram.LorentzFrame;
+import spacetime_diagram.PiecewiseWorldline;
+
+/**
+ * Draws a {@code TransformedFrame} onto any {@code Graphics2D}, such as the
+ * back buffer of a {@code Diagram} or an image being exported, or onto any other
+ * {@code DiagramSurface}, such as a vector file being written. A painter holds
+ * a copy of all the settings needed to draw, so it can safely be used away from
+ * the event dispatch thread while the {@code Diagram} changes.
+ * 
+ * @author Jonathan Elsner
+ * @see Diagram
+ * @see DiagramSurface
+ * @see TransformedFrame
+ */
+class DiagramPainter {
+
+    // How the lines are painted
+    static final int LINE_WIDTH = 3;
+    private static final Stroke LINE_STROKE = new BasicStroke(LINE_WIDTH);
+
+    // Worldline colors
+    // Color pallete is chosen to be accessible for colorblind people
+    // https://davidmathlogic.com/colorblind/#%23332288-%23117733-%2344AA99-%2388CCEE-%23DDCC77-%23CC6677-%23AA4499-%23882255
+    static final Color[] LINE_COLORS = new Color[] { new Color(0x332288), new Color(0x117733),
+            new Color(0x44AA99), new Color(0x88CCEE), new Color(0xDDCC77), new Color(0xCC6677), new Color(0xAA4499),
+            new Color(0x882255) };
+
+    // Color of the events that are outside the highlighted light cone
+    private static final Color ELSEWHERE_COLOR = new Color(0xDDDDDD);
+
+    // Radius of the dot drawn for an event
+    private static final int RADIUS = 5;
+
+    // How many objects are drawn between checks for cancellation
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    // How far outside the canvas, in pixels, an event can be and still have part
+    // of its dot or its label visible. Dots also bleed by rounding and antialiasing
+    private static final int DOT_MARGIN = RADIUS + 3;
+    private static final int LABEL_MARGIN = 150;
+
+    // Size in pixels of the cells events are grouped into when drawing in less
+    // detail, and how many events a cell holds before it is shaded instead
+    private static final int DENSITY_CELL_SIZE = 8;
+    private static final int DENSITY_THRESHOLD = 8;
+
+    private final int width;
+    private final int height;
+    private final int drawingWidth;
+    private final int drawingHeight;
+    private final int topPadding;
+    private final double pixelsPerUnit;
+    private final boolean drawLightCone;
+    private final boolean drawLabels;
+    private final boolean levelOfDetail;
+    private final Font font;
+    private final double[] causalFocus;
+
+    /**
+     * Constructs a painter with the specified settings
+     * 
+     * @param width         the full width of the area being painted
+     * @param height        the full height of the area being painted
+     * @param drawingWidth  the width of the graph inside the area
+     * @param drawingHeight the height of the graph inside the area
+     * @param topPadding    the space between the top of the area and the graph
+     * @param pixelsPerUnit pixels per unit of x and t
+     * @param drawLightCone whether to draw a light cone from the origin
+     * @param drawLabels    whether to draw a label for each object
+     * @param levelOfDetail whether to shade crowded areas instead of drawing each
+     *                      event in them
+     * @param font          the font for labels, or {@code null} to use the font
+     *                      of the {@code Graphics2D}
+     * @param causalFocus   the rest frame t- and x-coordinates of the point whose
+     *                      light cone is highlighted, or {@code null} to not
+     *                      highlight one
+     */
+    DiagramPainter(int width, int height, int drawingWidth, int drawingHeight, int topPadding,
+            double pixelsPerUnit, boolean drawLightCone, boolean drawLabels, boolean levelOfDetail, Font font,
+            double[] causalFocus) {
+        this.width = width;
+        this.height = height;
+        this.drawingWidth = drawingWidth;
+        this.drawingHeight = drawingHeight;
+        this.topPadding = topPadding;
+        this.pixelsPerUnit = pixelsPerUnit;
+        this.drawLightCone = drawLightCone;
+        this.drawLabels = drawLabels;
+        this.levelOfDetail = levelOfDetail;
+        this.font = font;
+        this.causalFocus = causalFocus;
+    }
+
+    /**
+     * Returns the full width of the area being painted
+     * 
+     * @return the width in pixels
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the full height of the area being painted
+     * 
+     * @return the height in pixels
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns where the origin of the graph is in the area being painted,
+     * measured from the left
+     * 
+     * @return the distance of the origin from the left edge in pixels
+     */
+    int getOriginX() {
+        return width / 2;
+    }
+
+    /**
+     * Returns where the origin of the graph is in the area being painted,
+     * measured from the top
+     * 
+     * @return the distance of the origin from the top edge in pixels
+     */
+    int getOriginY() {
+        return drawingHeight + topPadding;
+    }
+
+    /**
+     * Returns the font for labels
+     * 
+     * @return the font, or {@code null} if labels use the font of the
+     *         {@code Graphics2D}
+     */
+    Font getFont() {
+        return font;
+    }
+
+    /**
+     * Returns the part of the diagram that this painter can show, in the units of
+     * the diagram. A frame culled to this viewport draws the same as the full
+     * frame.
+     * 
+     * @return the visible part of the diagram, including enough margin for dots
+     *         and labels that are partly visible
+     */
+    Viewport getViewport() {
+        int bottomPadding = height - drawingHeight - topPadding;
+        int labelMargin = drawLabels ? LABEL_MARGIN : 0;
+
+        return new Viewport((-width / 2 - DOT_MARGIN - labelMargin) / pixelsPerUnit,
+                (width / 2 + DOT_MARGIN) / pixelsPerUnit, (-bottomPadding - DOT_MARGIN - labelMargin) / pixelsPerUnit,
+                (drawingHeight + topPadding + DOT_MARGIN) / pixelsPerUnit, (drawingWidth / 2) / pixelsPerUnit,
+                drawingHeight / pixelsPerUnit);
+    }
+
+    /**
+     * Returns the part of the diagram that can show in a band of rows of the area
+     * being painted, so a large image can be drawn a strip at a time. A frame
+     * culled to this viewport draws the same rows as the full frame, including the
+     * shading of crowded areas.
+     * 
+     * @param top    the first row of the band, counting down from the top of the
+     *               area
+     * @param bottom the row after the last row of the band
+     * @return the part of the diagram visible in the band
+     */
+    Viewport getViewport(int top, int bottom) {
+        Viewport full = getViewport();
+        int labelMargin = drawLabels ? LABEL_MARGIN : 0;
+
+        // Rows count down from the top, t counts up from the x-axis. Two more cells
+        // each way, so every cell holding something that reaches the band is counted
+        // in full
+        double minT = (getOriginY() - bottom - DOT_MARGIN - labelMargin - 2 * DENSITY_CELL_SIZE) / pixelsPerUnit;
+        double maxT = (getOriginY() - top + DOT_MARGIN + 2 * DENSITY_CELL_SIZE) / pixelsPerUnit;
+
+        return new Viewport(full.minX, full.maxX, Math.max(full.minT, minT), Math.min(full.maxT, maxT),
+                full.lineHalfWidth, full.lineHeight);
+    }
+
+    /**
+     * Draws the frame
+     * 
+     * @param g2d   the Graphics2D instance with which to draw the spacetime diagram
+     * @param frame the coordinates of the objects to draw
+     */
+    void paint(Graphics2D g2d, TransformedFrame frame) {
+        paint(g2d, frame, () -> false);
+    }
+
+    /**
+     * Draws the frame, stopping early if the drawing is no longer needed
+     * 
+     * @param g2d       the Graphics2D instance with which to draw the spacetime
+     *                  diagram
+     * @param frame     the coordinates of the objects to draw
+     * @param cancelled checked every so often while drawing, drawing stops once it
+     *                  returns {@code true}
+     * @return {@code true} if the whole frame was drawn, {@code false} if drawing
+     *         was cancelled
+     */
+    boolean paint(Graphics2D g2d, TransformedFrame frame, BooleanSupplier cancelled) {
+        Font font = this.font != null ? this.font : g2d.getFont();
+        AffineTransform transform = g2d.getTransform();
+
+        // Flip y-axis so this behaves like "normal" cartesian coordinates
+        transform.concatenate(AffineTransform.getScaleInstance(1, -1));
+        // Translate y-axis down so positive values are actually visible
+        // Translate x-axis over so the y-axis is centered
+        transform.translate(getOriginX(), -getOriginY());
+
+        // Apply transform, on top of any the Graphics2D already has
+        g2d.setTransform(transform);
+        g2d.setFont(font.deriveFont(AffineTransform.getScaleInstance(1, -1)));
+
+        g2d.setStroke(LINE_STROKE);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        return paint(new GraphicsSurface(g2d), frame, cancelled);
+    }
+
+    /**
+     * Draws the frame onto a surface, stopping early if the drawing is no longer
+     * needed. The surface is expected to draw lines {@link #LINE_WIDTH} pixels
+     * wide, and to already be set up with the font for labels.
+     * 
+     * @param surface   what to draw the spacetime diagram onto
+     * @param frame     the coordinates of the objects to draw
+     * @param cancelled checked every so often while drawing, drawing stops once it
+     *                  returns {@code true}
+     * @return {@code true} if the whole frame was drawn, {@code false} if drawing
+     *         was cancelled
+     */
+    boolean paint(DiagramSurface surface, TransformedFrame frame, BooleanSupplier cancelled) {
+        return paint(surface, frame, cancelled, null);
+    }
+
+    /**
+     * Draws the frame onto a surface like {@link #paint(DiagramSurface,
+     * TransformedFrame, BooleanSupplier)}, reporting how far along the drawing is
+     * 
+     * @param surface   what to draw the spacetime diagram onto
+     * @param frame     the coordinates of the objects to draw
+     * @param cancelled checked every so often while drawing, drawing stops once it
+     *                  returns {@code true}
+     * @param progress  called every so often with the number of objects drawn so
+     *                  far, or {@code null}
+     * @return {@code true} if the whole frame was drawn, {@code false} if drawing
+     *         was cancelled
+     */
+    boolean paint(DiagramSurface surface, TransformedFrame frame, BooleanSupplier cancelled, IntConsumer progress) {
+        // Draw x-axis
+        surface.setColor(Color.BLACK);
+        surface.drawLine(-drawingWidth / 2, 0, drawingWidth / 2, 0);
+        // Draw y-axis
+        surface.drawLine(0, 0, 0, drawingHeight);
+
+        // Draw light-cone from origin
+        if (drawLightCone) {
+            surface.setColor(Color.yellow);
+            drawWorldLine(surface, 0, -1);
+            drawWorldLine(surface, 0, 1);
+        }
+
+        RestFrameSnapshot rest = frame.rest;
+
+        // Draw the light cone of the focus, and fade the events that are outside it
+        BitSet insideCone = null;
+        if (causalFocus != null) {
+            insideCone = rest.insideLightCone(causalFocus[0], causalFocus[1], frame.c);
+
+            int focusX = (int) Math.round(frame.frame.transformX(causalFocus[1], causalFocus[0]) * pixelsPerUnit);
+            int focusT = (int) Math.round(frame.frame.transformT(causalFocus[1], causalFocus[0]) * pixelsPerUnit);
+
+            surface.setColor(Color.yellow);
+            drawWorldLine(surface, focusX - focusT, 1);
+            drawWorldLine(surface, focusX + focusT, -1);
+        }
+
+        // Shade the areas too crowded to draw each event in
+        DensityGrid density = levelOfDetail ? new DensityGrid(frame) : null;
+        if (density != null) {
+            density.paint(surface);
+        }
+
+        // Draw all of the SpacetimeObjects
+        for (int k = 0; k < frame.size; k++) {
+            if (k % CANCEL_CHECK_INTERVAL == 0) {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+                if (progress != null) {
+                    progress.accept(k);
+                }
+            }
+
+            // Color by position in the list, so colors don't change as objects are culled
+            int i = frame.rows[k];
+            int x = (int) Math.round(frame.x[k] * pixelsPerUnit);
+            int t = (int) Math.round(frame.t[k] * pixelsPerUnit);
+
+            // Events in shaded areas are already drawn as part of the shading
+            if (density != null && !rest.travellers[i] && density.isCrowded(x, t)) {
+                continue;
+            }
+
+            boolean faded = insideCone != null && !rest.travellers[i] && !insideCone.get(i);
+
+            surface.setColor(faded ? ELSEWHERE_COLOR : LINE_COLORS[i % LINE_COLORS.length]);
+
+            // Draw a worldline if the object moves, bending it where the speed changes
+            if (rest.worldlines[i] != null) {
+                drawWorldLine(surface, rest.worldlines[i], frame.frame);
+            } else if (rest.travellers[i]) {
+                int travellerIntercept = (int) Math.round(frame.xIntercept[k] * pixelsPerUnit);
+
+                drawWorldLine(surface, travellerIntercept, frame.beta[k]);
+            } else { // Draw a dot if the object is an event
+                surface.fillOval(x - RADIUS, t - RADIUS, RADIUS * 2, RADIUS * 2);
+            }
+
+            if (drawLabels) {
+                surface.setColor(faded ? Color.gray : Color.black);
+                surface.drawString(rest.names[i], x + (int) (RADIUS * 1.1), t + (int) (RADIUS * 1.1));
+            }
+        }
+
+        if (progress != null) {
+            progress.accept(frame.size);
+        }
+
+        return true;
+    }
+
+    /**
+     * Draw a worldline with the specified Graphics instance
+     * 
+     * @param g2d    the Graphics2D instance with which to draw the world line
+     * @param startX the x-intercept from which to draw the worldline
+     * @param beta   the speed of the traveller along this world line. The slope of
+     *               the worldline will be {@code 1/beta}
+     */
+    void drawWorldLine(Graphics2D g2d, int startX, double beta) {
+        drawWorldLine(new GraphicsSurface(g2d), startX, beta);
+    }
+
+    /**
+     * Draw a worldline onto a surface
+     * 
+     * @param surface what to draw the world line onto
+     * @param startX  the x-intercept from which to draw the worldline
+     * @param beta    the speed of the traveller along this world line. The slope
+     *                of the worldline will be {@code 1/beta}
+     */
+    void drawWorldLine(DiagramSurface surface, int startX, double beta) {
+        int dt = drawingHeight;
+        int dx = (int) Math.round(dt * beta);
+
+        // Keep the lines from extending beyond the left and right edges of the graph so
+        // everything looks pretty.
+        if (Math.abs(startX + dx) > drawingWidth / 2) {
+            dx = (int) Math.copySign(drawingWidth / 2, dx) - startX;
+            dt = (int) Math.round(dx / beta);
+        }
+
+        surface.drawLine(startX, 0, startX + dx, dt);
+    }
+
+    /**
+     * Draw the worldline of a traveller whose speed changes onto a surface, as a
+     * single path through the points where it bends. Only the parts of the path
+     * between the left and right edges of the graph are drawn.
+     * 
+     * @param surface   what to draw the world line onto
+     * @param worldline the worldline of the traveller
+     * @param frame     the frame of the observer
+     */
+    void drawWorldLine(DiagramSurface surface, PiecewiseWorldline worldline, LorentzFrame frame) {
+        double[] path = worldline.getPath(frame, 0, drawingHeight / pixelsPerUnit);
+        int points = path.length / 2;
+        double edge = drawingWidth / 2;
+
+        // Each piece inside the edges is drawn as soon as the path leaves them
+        int[] xs = new int[points];
+        int[] ts = new int[points];
+        int count = 0;
+
+        for (int p = 1; p < points; p++) {
+            double x1 = path[2 * p - 2] * pixelsPerUnit;
+            double t1 = path[2 * p - 1] * pixelsPerUnit;
+            double x2 = path[2 * p] * pixelsPerUnit;
+            double t2 = path[2 * p + 1] * pixelsPerUnit;
+
+            // Cut the line where it crosses the edges
+            double from = 0;
+            double to = 1;
+            if (x1 != x2) {
+                double left = (-edge - x1) / (x2 - x1);
+                double right = (edge - x1) / (x2 - x1);
+                from = Math.max(from, Math.min(left, right));
+                to = Math.min(to, Math.max(left, right));
+            } else if (Math.abs(x1) > edge) {
+                to = -1;
+            }
+
+            if (from > to) {
+                count = drawPolyline(surface, xs, ts, count);
+                continue;
+            }
+
+            if (count == 0 || from > 0) {
+                count = drawPolyline(surface, xs, ts, count);
+                count = addPoint(xs, ts, count, x1 + from * (x2 - x1), t1 + from * (t2 - t1));
+            }
+            count = addPoint(xs, ts, count, x1 + to * (x2 - x1), t1 + to * (t2 - t1));
+
+            if (to < 1) {
+                count = drawPolyline(surface, xs, ts, count);
+            }
+        }
+
+        drawPolyline(surface, xs, ts, count);
+    }
+
+    /**
+     * Adds a point to a path, rounded to the nearest pixel, unless it rounds to
+     * the last point added
+     * 
+     * @return the number of points in the path
+     */
+    private static int addPoint(int[] xs, int[] ts, int count, double x, double t) {
+        int px = (int) Math.round(x);
+        int pt = (int) Math.round(t);
+
+        if (count > 0 && xs[count - 1] == px && ts[count - 1] == pt) {
+            return count;
+        }
+
+        xs[count] = px;
+        ts[count] = pt;
+        return count + 1;
+    }
+
+    /**
+     * Draws a path if it has more than one point
+     * 
+     * @return the number of points left in the path, which is none
+     */
+    private static int drawPolyline(DiagramSurface surface, int[] xs, int[] ts, int count) {
+        if (count > 1) {
+            surface.drawPolyline(xs, ts, count);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Draws onto a {@code Graphics2D} that has already been transformed so the
+     * origin of the graph is at (0, 0) and t increases upwards
+     */
+    private static class GraphicsSurface implements DiagramSurface {
+        private final Graphics2D g2d;
+
+        private GraphicsSurface(Graphics2D g2d) {
+            this.g2d = g2d;
+        }
+
+        @Override
+        public void setColor(Color color) {
+            g2d.setColor(color);
+        }
+
+        @Override
+        public void drawLine(int x1, int t1, int x2, int t2) {
+            g2d.drawLine(x1, t1, x2, t2);
+        }
+
+        @Override
+        public void drawPolyline(int[] x, int[] t, int count) {
+            g2d.drawPolyline(x, t, count);
+        }
+
+        @Override
+        public void fillOval(int x, int t, int width, int height) {
+            g2d.fillOval(x, t, width, height);
+        }
+
+        @Override
+        public void fillRect(int x, int t, int width, int height) {
+            g2d.fillRect(x, t, width, height);
+        }
+
+        @Override
+        public void drawString(String str, int x, int t) {
+            g2d.drawString(str, x, t);
+        }
+    }
+
+    /**
+     * Counts how many events fall into each small square of the canvas, so that
+     * squares with too many events to tell apart can be drawn as a single shaded
+     * square. This keeps the cost of drawing dense diagrams bounded by the size of
+     * the canvas, not by the number of events.
+     */
+    private class DensityGrid {
+        private final int columns;
+        private final int firstRow;
+        private final int lastRow;
+        private final int left;
+        private final int bottom;
+        private final int[] counts;
+
+        /**
+         * Counts the events in the frame
+         */
+        private DensityGrid(TransformedFrame frame) {
+            left = -width / 2;
+            bottom = -(height - drawingHeight - topPadding);
+            columns = (width + DENSITY_CELL_SIZE - 1) / DENSITY_CELL_SIZE;
+
+            // Only the rows of cells wholly inside the viewport hold all of their
+            // events, so only those are counted. Events are counted in the cell of the
+            // pixel they round to
+            int rows = (height + DENSITY_CELL_SIZE - 1) / DENSITY_CELL_SIZE;
+            if (frame.viewport != null) {
+                firstRow = Math.max(0,
+                        (int) Math.ceil((frame.viewport.minT * pixelsPerUnit + 0.5 - bottom) / DENSITY_CELL_SIZE));
+                lastRow = Math.min(rows,
+                        (int) Math.floor((frame.viewport.maxT * pixelsPerUnit + 0.5 - bottom) / DENSITY_CELL_SIZE));
+            } else {
+                firstRow = 0;
+                lastRow = rows;
+            }
+
+            counts = new int[columns * Math.max(0, lastRow - firstRow)];
+
+            for (int k = 0; k < frame.size; k++) {
+                if (!frame.rest.travellers[frame.rows[k]]) {
+                    int cell = cell((int) Math.round(frame.x[k] * pixelsPerUnit),
+                            (int) Math.round(frame.t[k] * pixelsPerUnit));
+
+                    if (cell >= 0) {
+                        counts[cell]++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Shades every crowded cell, darker the more events it holds
+         */
+        private void paint(DiagramSurface surface) {
+            Color base = LINE_COLORS[0];
+
+            for (int r = firstRow; r < lastRow; r++) {
+                for (int c = 0; c < columns; c++) {
+                    int count = counts[(r - firstRow) * columns + c];
+
+                    if (count > DENSITY_THRESHOLD) {
+                        // Logarithmic, so a few very dense cells don't wash out the rest
+                        double darkness = Math.log((double) count / DENSITY_THRESHOLD) / Math.log(64);
+                        int alpha = (int) (96 + 159 * Math.min(1, darkness));
+
+                        surface.setColor(new Color(base.getRed(), base.getGreen(), base.getBlue(), alpha));
+                        surface.fillRect(left + c * DENSITY_CELL_SIZE, bottom + r * DENSITY_CELL_SIZE,
+                                DENSITY_CELL_SIZE, DENSITY_CELL_SIZE);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Whether the event drawn at the specified pixel is part of a shaded cell
+         */
+        private boolean isCrowded(int x, int t) {
+            int cell = cell(x, t);
+            return cell >= 0 && counts[cell] > DENSITY_THRESHOLD;
+        }
+
+        /**
+         * Returns the cell containing the pixel, or {@code -1} if it is off the canvas
+         * or outside the rows counted
+         */
+        private int cell(int x, int t) {
+            int c = Math.floorDiv(x - left, DENSITY_CELL_SIZE);
+            int r = Math.floorDiv(t - bottom, DENSITY_CELL_SIZE);
+
+            if (c < 0 || columns <= c || r < firstRow || lastRow <= r) {
+                return -1;
+            }
+
+            return (r - firstRow) * columns + c;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import spacetime_diagram.SpacetimeEvent;
+
+/**
+ * Draws a spacetime diagram into images without a {@code Diagram} on screen,
+ * so diagrams can be exported in headless mode. The diagram is laid out the
+ * same way as a {@code Diagram} of the same size.
+ * 
+ * The events are copied when the renderer is constructed, and a renderer never
+ * changes after that, so one renderer can draw the diagram for many observers
+ * on many threads at once.
+ * 
+ * @author Jonathan Elsner
+ * @see Diagram
+ */
+public class DiagramRenderer {
+
+    /**
+     * Width of the images when no width is given, the same as a new
+     * {@code Diagram}
+     */
+    public static final int DEFAULT_WIDTH = 770;
+
+    /**
+     * Height of the images when no height is given, the same as a new
+     * {@code Diagram}
+     */
+    public static final int DEFAULT_HEIGHT = 520;
+
+    // Layout of a Diagram: the padding around the graph, and the scale of a graph
+    // 750 pixels wide. The scale grows with the width of the graph
+    private static final int PADDING = 10;
+    private static final double PIXELS_PER_UNIT = 25;
+    private static final int SCALE_WIDTH = 750;
+
+    private final RestFrameSnapshot snapshot;
+    private final DiagramPainter painter;
+    private final int width;
+    private final int height;
+
+    /**
+     * Constructs a renderer that draws images of the default size, with labels
+     * and with crowded areas shaded
+     * 
+     * @param events the events to draw
+     */
+    public DiagramRenderer(Iterable<SpacetimeEvent> events) {
+        this(events, DEFAULT_WIDTH, DEFAULT_HEIGHT, false, true, true);
+    }
+
+    /**
+     * Constructs a renderer with the specified settings
+     * 
+     * @param events        the events to draw
+     * @param width         the width of the images in pixels
+     * @param height        the height of the images in pixels
+     * @param drawLightCone whether to draw a light cone from the origin
+     * @param drawLabels    whether to draw a label for each object
+     * @param levelOfDetail whether to shade crowded areas instead of drawing each
+     *                      event in them
+     * @throws IllegalArgumentException if the images would be too small to hold
+     *                                  the graph
+     */
+    public DiagramRenderer(Iterable<SpacetimeEvent> events, int width, int height, boolean drawLightCone,
+            boolean drawLabels, boolean levelOfDetail) {
+        if (width <= 2 * PADDING || height <= 2 * PADDING) {
+            throw new IllegalArgumentException("Image too small: " + width + "x" + height);
+        }
+
+        this.snapshot = RestFrameSnapshot.of(events);
+        this.width = width;
+        this.height = height;
+
+        int drawingWidth = width - 2 * PADDING;
+        int drawingHeight = height - 2 * PADDING;
+
+        this.painter = new DiagramPainter(width, height, drawingWidth, drawingHeight, PADDING,
+                PIXELS_PER_UNIT * drawingWidth / SCALE_WIDTH, drawLightCone, drawLabels, levelOfDetail, null,
+                null);
+    }
+
+    /**
+     * Constructs a renderer that draws a snapshot with an existing painter, like
+     * one set up by a {@code Diagram}
+     * 
+     * @param snapshot the events to draw
+     * @param painter  the settings to draw with
+     * @param width    the width of the images in pixels
+     * @param height   the height of the images in pixels
+     * @see Diagram#createRenderer()
+     */
+    DiagramRenderer(RestFrameSnapshot snapshot, DiagramPainter painter, int width, int height) {
+        this.snapshot = snapshot;
+        this.painter = painter;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the width of the images this renderer draws
+     * 
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the images this renderer draws
+     * 
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of events this renderer draws
+     * 
+     * @return the number of events
+     */
+    public int getEventCount() {
+        return snapshot.size;
+    }
+
+    /**
+     * Draws the diagram seen by an observer into a new image
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @return the image of the diagram
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1}
+     */
+    public BufferedImage render(double observerBeta) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        render(observerBeta, image);
+        return image;
+    }
+
+    /**
+     * Draws the diagram seen by an observer into an existing image, so images can
+     * be reused from one drawing to the next
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @param image        the image to draw into, at least {@link #getWidth()} by
+     *                     {@link #getHeight()} pixels
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1}
+     */
+    public void render(double observerBeta, BufferedImage image) {
+        // Transform before touching the image, so a bad speed leaves it alone
+        TransformedFrame frame = transform(observerBeta);
+
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setColor(Color.white);
+            g2d.fillRect(0, 0, width, height);
+
+            painter.paint(g2d, frame);
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    /**
+     * Transforms the events into the frame of an observer, keeping only the ones
+     * this renderer can show
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @return the coordinates of the events to draw
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1}
+     */
+    TransformedFrame transform(double observerBeta) {
+        return new TransformedFrame(snapshot, observerBeta, TransformedFrame.DEFAULT_PARALLEL_THRESHOLD,
+                painter.getViewport());
+    }
+
+    /**
+     * Transforms the events that can show in a band of rows of the image into the
+     * frame of an observer, on the calling thread
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @param top          the first row of the band
+     * @param bottom       the row after the last row of the band
+     * @return the coordinates of the events to draw in the band
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1}
+     * @see DiagramPainter#getViewport(int, int)
+     */
+    TransformedFrame transform(double observerBeta, int top, int bottom) {
+        return new TransformedFrame(snapshot, observerBeta, Integer.MAX_VALUE, painter.getViewport(top, bottom));
+    }
+
+    /**
+     * Returns the painter with the settings this renderer draws with
+     * 
+     * @return the painter
+     */
+    DiagramPainter getPainter() {
+        return painter;
+    }
+}
@@ -0,0 +1,110 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.Component;
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+
+import spacetime_diagram.EventIO;
+import spacetime_diagram.SpacetimeEventStore;
+
+/**
+ * Saves a copy of the diagram on a background thread, so the diagram can keep
+ * being edited while a large file is written. Shows how far along the save is
+ * and lets the user cancel it, which leaves the file as it was.
+ * 
+ * @author Jonathan Elsner
+ * @see EventIO#saveSpacetimeEvents(File, java.util.Collection,
+ *      java.util.function.IntConsumer)
+ * @see DiagramLoader
+ * @see SpacetimeDiagramGUI
+ */
+class DiagramSaver extends SwingWorker<Void, Void> {
+
+    private final File file;
+    private final SpacetimeEventStore events;
+    private final ProgressMonitor monitor;
+
+    // The component over which progress and errors are shown
+    private final Component parent;
+
+    /**
+     * Constructs a saver for the events in the list as they are now. The events
+     * are copied, so must be constructed on the event dispatch thread.
+     * 
+     * @param file    the diagram file to write
+     * @param objects the list whose events are saved
+     * @param parent  the component over which to show progress and errors
+     */
+    DiagramSaver(File file, SpacetimeEventListModel objects, Component parent) {
+        this.file = file;
+        this.parent = parent;
+
+        // Copying the columns is much faster than writing them
+        events = new SpacetimeEventStore(objects.size());
+        events.addAll(objects.getBackingList());
+
+        monitor = new ProgressMonitor(parent, "Saving " + file.getName(), null, 0, 100);
+        addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                monitor.setProgress((Integer) evt.getNewValue());
+            }
+        });
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        int total = Math.max(1, events.size());
+
+        EventIO.saveSpacetimeEvents(file, events, done -> {
+            // Cancelling from the monitor interrupts this thread, which stops the save
+            if (monitor.isCanceled()) {
+                cancel(true);
+            }
+            setProgress((int) ((long) done * 100 / total));
+        });
+
+        return null;
+    }
+
+    /**
+     * Closes the progress monitor and lets the user know if the save failed
+     */
+    @Override
+    protected void done() {
+        monitor.close();
+
+        try {
+            get();
+        } catch (CancellationException ex) {
+            // The user stopped the save, and the file was not changed
+        } catch (InterruptedException | ExecutionException ex) {
+            ex.printStackTrace();
+
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            JOptionPane.showMessageDialog(parent, "Could not save " + file.getName() + ": " + cause.getMessage(),
+                    "Save Diagram", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.Color;
+
+/**
+ * Something a {@code DiagramPainter} can draw onto, such as a
+ * {@code Graphics2D} or a vector file being written. Coordinates are in pixels
+ * from the origin of the graph, with t increasing upwards, and shapes are
+ * given the same way as to a {@code Graphics2D} in those coordinates.
+ * 
+ * @author Jonathan Elsner
+ * @see DiagramPainter
+ */
+interface DiagramSurface {
+
+    /**
+     * Sets the color of everything drawn after this
+     * 
+     * @param color the color, which may be translucent
+     */
+    void setColor(Color color);
+
+    /**
+     * Draws a line between two points
+     * 
+     * @param x1 the x of the first point
+     * @param t1 the t of the first point
+     * @param x2 the x of the second point
+     * @param t2 the t of the second point
+     */
+    void drawLine(int x1, int t1, int x2, int t2);
+
+    /**
+     * Draws a connected path of lines through a series of points
+     * 
+     * @param x     the x of each point
+     * @param t     the t of each point
+     * @param count the number of points to draw, at most the length of the
+     *              arrays
+     */
+    void drawPolyline(int[] x, int[] t, int count);
+
+    /**
+     * Fills an oval inside a rectangle
+     * 
+     * @param x      the smallest x of the rectangle
+     * @param t      the smallest t of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    void fillOval(int x, int t, int width, int height);
+
+    /**
+     * Fills a rectangle
+     * 
+     * @param x      the smallest x of the rectangle
+     * @param t      the smallest t of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    void fillRect(int x, int t, int width, int height);
+
+    /**
+     * Draws a string upright, starting at a point on its baseline
+     * 
+     * @param str the string
+     * @param x   the x of the start of the baseline
+     * @param t   the t of the baseline
+     */
+    void drawString(String str, int x, int t);
+}
@@ -0,0 +1,170 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the rest frame coordinates of the events in a
+ * {@code RestFrameSnapshot}, used to quickly find the events near the visible
+ * part of a diagram. Travellers are not stored in the grid, since their
+ * worldlines cross every row of it.
+ * 
+ * The rows of each cell are stored one after the other in a single array, so
+ * the whole grid is only a couple of {@code int} arrays.
+ * 
+ * @author Jonathan Elsner
+ * @see RestFrameSnapshot
+ * @see Viewport
+ */
+class EventGridIndex {
+
+    // Average number of events per cell the grid aims for
+    private static final int EVENTS_PER_CELL = 4;
+
+    // Most cells along each side of the grid
+    private static final int MAX_CELLS_PER_SIDE = 2048;
+
+    private final double minX;
+    private final double minT;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+
+    // cellRows[cellStart[c]] to cellRows[cellStart[c + 1] - 1] are the snapshot
+    // indices of the events in cell c
+    private final int[] cellStart;
+    private final int[] cellRows;
+
+    /**
+     * Builds a grid over the events in the snapshot
+     * 
+     * @param snapshot the snapshot whose events to index
+     */
+    EventGridIndex(RestFrameSnapshot snapshot) {
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minT = Double.POSITIVE_INFINITY, maxT = Double.NEGATIVE_INFINITY;
+        int count = 0;
+
+        for (int i = 0; i < snapshot.size; i++) {
+            if (isIndexed(snapshot, i)) {
+                minX = Math.min(minX, snapshot.x[i]);
+                maxX = Math.max(maxX, snapshot.x[i]);
+                minT = Math.min(minT, snapshot.t[i]);
+                maxT = Math.max(maxT, snapshot.t[i]);
+                count++;
+            }
+        }
+
+        int side = (int) Math.ceil(Math.sqrt((double) count / EVENTS_PER_CELL));
+        side = Math.max(1, Math.min(side, MAX_CELLS_PER_SIDE));
+
+        this.minX = count == 0 ? 0 : minX;
+        this.minT = count == 0 ? 0 : minT;
+        this.columns = side;
+        this.rows = side;
+
+        // Avoid zero-sized cells when every event has the same coordinate
+        this.cellWidth = count == 0 || maxX == minX ? 1 : (maxX - minX) / side;
+        this.cellHeight = count == 0 || maxT == minT ? 1 : (maxT - minT) / side;
+
+        // Counting sort of the events into their cells
+        cellStart = new int[columns * rows + 1];
+        cellRows = new int[count];
+
+        int[] cells = new int[snapshot.size];
+        for (int i = 0; i < snapshot.size; i++) {
+            if (isIndexed(snapshot, i)) {
+                cells[i] = column(snapshot.x[i]) + row(snapshot.t[i]) * columns;
+                cellStart[cells[i] + 1]++;
+            }
+        }
+
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        int[] next = Arrays.copyOf(cellStart, columns * rows);
+        for (int i = 0; i < snapshot.size; i++) {
+            if (isIndexed(snapshot, i)) {
+                cellRows[next[cells[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot indices of the events in every cell that overlaps the
+     * specified rectangle in the rest frame. Some of the events may be just outside
+     * the rectangle.
+     * 
+     * @param minX the left edge of the rectangle
+     * @param maxX the right edge of the rectangle
+     * @param minT the bottom edge of the rectangle
+     * @param maxT the top edge of the rectangle
+     * @return the indices of the events, in increasing order
+     */
+    int[] query(double minX, double maxX, double minT, double maxT) {
+        if (cellRows.length == 0 || maxX < this.minX || maxT < this.minT
+                || minX > this.minX + cellWidth * columns || minT > this.minT + cellHeight * rows) {
+            return new int[0];
+        }
+
+        int firstColumn = column(minX), lastColumn = column(maxX);
+        int firstRow = row(minT), lastRow = row(maxT);
+
+        int count = 0;
+        for (int r = firstRow; r <= lastRow; r++) {
+            count += cellStart[r * columns + lastColumn + 1] - cellStart[r * columns + firstColumn];
+        }
+
+        // The cells of a row are next to each other, so copy whole runs of them
+        int[] result = new int[count];
+        int n = 0;
+        for (int r = firstRow; r <= lastRow; r++) {
+            int from = cellStart[r * columns + firstColumn];
+            int to = cellStart[r * columns + lastColumn + 1];
+
+            System.arraycopy(cellRows, from, result, n, to - from);
+            n += to - from;
+        }
+
+        // Keep the order of the list, so overlapping objects are drawn the same way
+        Arrays.sort(result);
+        return result;
+    }
+
+    private int column(double x) {
+        return clamp((int) Math.floor((x - minX) / cellWidth), columns);
+    }
+
+    private int row(double t) {
+        return clamp((int) Math.floor((t - minT) / cellHeight), rows);
+    }
+
+    private static int clamp(int cell, int cells) {
+        return Math.max(0, Math.min(cell, cells - 1));
+    }
+
+    /**
+     * Whether the object at index i belongs in the grid
+     */
+    private static boolean isIndexed(RestFrameSnapshot snapshot, int i) {
+        return !snapshot.travellers[i] && Double.isFinite(snapshot.x[i]) && Double.isFinite(snapshot.t[i]);
+    }
+}
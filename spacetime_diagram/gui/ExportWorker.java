@@ -0,0 +1,119 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.Component;
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntConsumer;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+
+/**
+ * Runs a long export on a background thread, showing how far along it is and
+ * letting the user cancel it.
+ * 
+ * @author Jonathan Elsner
+ * @see AnimationExporter
+ * @see TiledPngExporter
+ * @see SpacetimeDiagramGUI
+ */
+class ExportWorker extends SwingWorker<Void, Void> {
+
+    /**
+     * An export that reports its progress
+     */
+    interface Export {
+
+        /**
+         * Runs the export, stopping if the thread is interrupted
+         * 
+         * @param progress called with how much of the export is done
+         * @throws Exception if the export fails
+         */
+        void run(IntConsumer progress) throws Exception;
+    }
+
+    private final String title;
+    private final File file;
+    private final int total;
+    private final Export export;
+    private final ProgressMonitor monitor;
+
+    // The component over which errors are shown
+    private final Component parent;
+
+    /**
+     * Constructs a worker that runs an export to a file
+     * 
+     * @param title  the name of the export, shown on errors
+     * @param file   the file being written
+     * @param total  how much there is to do, in the units the export reports its
+     *               progress in
+     * @param export the export, which must not touch Swing
+     * @param parent the component over which to show progress and errors
+     */
+    ExportWorker(String title, File file, int total, Export export, Component parent) {
+        this.title = title;
+        this.file = file;
+        this.total = Math.max(1, total);
+        this.export = export;
+        this.parent = parent;
+
+        monitor = new ProgressMonitor(parent, "Exporting " + file.getName(), null, 0, 100);
+        addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                monitor.setProgress((Integer) evt.getNewValue());
+            }
+        });
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        export.run(done -> {
+            // Cancelling from the monitor interrupts this thread, which stops the export
+            if (monitor.isCanceled()) {
+                cancel(true);
+            }
+            setProgress((int) ((long) done * 100 / total));
+        });
+
+        return null;
+    }
+
+    /**
+     * Closes the progress monitor and lets the user know if the export failed
+     */
+    @Override
+    protected void done() {
+        monitor.close();
+
+        try {
+            get();
+        } catch (CancellationException ex) {
+            // The user stopped the export
+        } catch (InterruptedException | ExecutionException ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(parent, "Could not export " + file.getName(), title,
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
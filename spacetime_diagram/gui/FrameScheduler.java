@@ -0,0 +1,172 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.util.function.DoubleConsumer;
+
+import javax.swing.Timer;
+
+/**
+ * Limits how often a new reference frame speed is applied to at most once per
+ * frame of the display. Speeds submitted while a frame is already pending
+ * replace the pending speed, so only the latest one is ever applied.
+ * 
+ * The first speed submitted after a quiet period is applied right away, so a
+ * single change is not delayed. Must only be used on the event dispatch
+ * thread. How many speeds were coalesced is logged when the window closes.
+ * 
+ * @author Jonathan Elsner
+ * @see SpacetimeDiagramGUI
+ */
+class FrameScheduler {
+
+    /**
+     * The frame rate used when the display does not report one
+     */
+    static final int DEFAULT_FRAMES_PER_SECOND = 60;
+
+    // What to do with each speed that is applied
+    private final DoubleConsumer action;
+
+    // Fires once per frame while speeds are being submitted
+    private final Timer timer;
+
+    // The latest speed that has not been applied yet
+    private double pendingBeta;
+    private boolean pending = false;
+
+    // Metrics
+    private long submittedCount = 0;
+    private long appliedCount = 0;
+
+    /**
+     * Constructs a scheduler that applies speeds at most
+     * {@code framesPerSecond} times a second
+     * 
+     * @param framesPerSecond the maximum number of speeds applied each second
+     * @param action          called on the event dispatch thread with each speed
+     *                        that is applied
+     * @throws IllegalArgumentException if {@code framesPerSecond < 1}
+     */
+    FrameScheduler(int framesPerSecond, DoubleConsumer action) {
+        if (framesPerSecond < 1) {
+            throw new IllegalArgumentException("Frames per second < 1: " + framesPerSecond);
+        }
+
+        this.action = action;
+
+        timer = new Timer(1000 / framesPerSecond, e -> onFrame());
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Submit a new speed. It is applied right away if no speed was applied during
+     * the current frame, otherwise it is applied at the start of the next frame,
+     * unless another speed replaces it first.
+     * 
+     * @param beta the new speed of the reference frame as a fraction of the speed
+     *             of light
+     */
+    void submit(double beta) {
+        submittedCount++;
+
+        if (timer.isRunning()) {
+            pendingBeta = beta;
+            pending = true;
+        } else {
+            apply(beta);
+            timer.start();
+        }
+    }
+
+    /**
+     * Apply the pending speed, or stop ticking once speeds stop coming
+     */
+    private void onFrame() {
+        if (pending) {
+            pending = false;
+            apply(pendingBeta);
+        } else {
+            timer.stop();
+        }
+    }
+
+    private void apply(double beta) {
+        appliedCount++;
+        action.accept(beta);
+    }
+
+    /**
+     * Returns the number of speeds submitted to this scheduler
+     * 
+     * @return the number of speeds submitted
+     */
+    long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    /**
+     * Returns the number of speeds that were actually applied
+     * 
+     * @return the number of speeds applied, at most one per frame
+     */
+    long getAppliedCount() {
+        return appliedCount;
+    }
+
+    /**
+     * Returns the number of speeds that were dropped because a newer speed was
+     * submitted during the same frame
+     * 
+     * @return the number of coalesced speeds
+     */
+    long getCoalescedCount() {
+        return submittedCount - appliedCount - (pending ? 1 : 0);
+    }
+
+    /**
+     * Describes how many speeds were submitted, applied and coalesced, such as to
+     * log how well the scheduler kept up
+     * 
+     * @return the counts of speeds on one line
+     */
+    @Override
+    public String toString() {
+        return "Reference frame updates: " + getSubmittedCount() + " submitted, " + getAppliedCount()
+                + " applied, " + getCoalescedCount() + " coalesced";
+    }
+
+    /**
+     * Returns the refresh rate of the default screen
+     * 
+     * @return the refresh rate of the screen in frames per second, or
+     *         {@link #DEFAULT_FRAMES_PER_SECOND} if it is not known
+     */
+    static int displayFramesPerSecond() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return DEFAULT_FRAMES_PER_SECOND;
+        }
+
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode()
+                .getRefreshRate();
+
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_FRAMES_PER_SECOND : rate;
+    }
+}
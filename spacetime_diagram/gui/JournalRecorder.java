@@ -0,0 +1,198 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.util.UUID;
+
+import javax.swing.Timer;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import spacetime_diagram.EditJournal;
+import spacetime_diagram.PiecewiseTraveller;
+import spacetime_diagram.SpacetimeEvent;
+import spacetime_diagram.SpacetimeEventStore;
+import spacetime_diagram.SpacetimeTraveller;
+
+/**
+ * Records the changes to a {@code SpacetimeEventListModel} in an
+ * {@code EditJournal}. Events are edited in place, so a copy of the list is
+ * kept to find out what changed when the list says an event changed.
+ * 
+ * Changes to many events at once, such as opening a diagram, are not recorded
+ * one event at a time. The journal is compacted shortly afterwards instead, as
+ * it is when the journal grows too long or after writing it failed. Must only
+ * be used on the event dispatch thread.
+ * 
+ * @author Jonathan Elsner
+ * @see EditJournal
+ * @see SpacetimeDiagramGUI
+ */
+class JournalRecorder implements ListDataListener {
+
+    /**
+     * The most events changed at once that are recorded one at a time
+     */
+    static final int MAX_RECORDED_CHANGE = 10_000;
+
+    /**
+     * How long, in bytes, the journal can get before it is compacted
+     */
+    static final long MAX_JOURNAL_LENGTH = 4 << 20;
+
+    // How long to wait for more changes before compacting, in milliseconds
+    private static final int COMPACT_DELAY = 2000;
+
+    private final SpacetimeEventListModel objects;
+    private final EditJournal journal;
+
+    // The events as they were after the last change
+    private final SpacetimeEventStore copy;
+
+    // Fires once changes have stopped for a while
+    private final Timer compactTimer;
+
+    /**
+     * Starts recording the changes to the list. The journal must have started
+     * from the events in the list now.
+     * 
+     * @param objects the list to record the changes to
+     * @param journal the journal to record the changes in
+     */
+    JournalRecorder(SpacetimeEventListModel objects, EditJournal journal) {
+        this.objects = objects;
+        this.journal = journal;
+
+        copy = new SpacetimeEventStore(objects.size());
+        copy.addAll(objects.getBackingList());
+
+        compactTimer = new Timer(COMPACT_DELAY, e -> journal.compact(copy));
+        compactTimer.setRepeats(false);
+    }
+
+    @Override
+    public void intervalAdded(ListDataEvent e) {
+        int from = e.getIndex0();
+        int to = e.getIndex1() + 1;
+
+        copy.addAll(from, objects.subList(from, to));
+
+        if (isRecorded(to - from)) {
+            for (int i = from; i < to; i++) {
+                journal.recordAdd(i, copy.get(i));
+            }
+        }
+
+        compactIfLong();
+    }
+
+    @Override
+    public void intervalRemoved(ListDataEvent e) {
+        int from = e.getIndex0();
+        int to = e.getIndex1() + 1;
+
+        // Each event is at the same index once the ones before it are gone
+        if (isRecorded(to - from)) {
+            for (int i = from; i < to; i++) {
+                journal.recordRemove(from, copy.getUUID(i));
+            }
+        }
+
+        copy.subList(from, to).clear();
+
+        compactIfLong();
+    }
+
+    @Override
+    public void contentsChanged(ListDataEvent e) {
+        int from = e.getIndex0();
+        int to = e.getIndex1() + 1;
+
+        // Removing events that are not next to each other changes the size, and the
+        // event covers every index, so start over from the whole list
+        if (copy.size() != objects.size() || !isRecorded(to - from)) {
+            copy.clear();
+            copy.addAll(objects.getBackingList());
+            compactTimer.restart();
+            return;
+        }
+
+        for (int i = from; i < to; i++) {
+            record(i, objects.get(i));
+            copy.set(i, objects.get(i));
+        }
+
+        compactIfLong();
+    }
+
+    /**
+     * Records how the event at the specified index differs from the copy
+     */
+    private void record(int i, SpacetimeEvent evt) {
+        UUID uuid = evt.getUUID();
+        byte kind = SpacetimeEventStore.kindOf(evt);
+
+        // A piecewise traveller whose worldline changed is written out again whole,
+        // so replaying it does not round the segments differently
+        boolean replaced = kind == SpacetimeEventStore.PIECEWISE
+                && !((PiecewiseTraveller) evt).getWorldline().equals(copy.getWorldline(i));
+
+        if (!uuid.equals(copy.getUUID(i)) || kind != copy.getKind(i) || replaced) {
+            journal.recordRemove(i, copy.getUUID(i));
+            journal.recordAdd(i, evt);
+            return;
+        }
+
+        if (!evt.getName().equals(copy.getName(i))) {
+            journal.recordRename(i, uuid, evt.getName());
+        }
+
+        if (Double.compare(evt.getRestT(), copy.getRestT(i)) != 0
+                || Double.compare(evt.getRestX(), copy.getRestX(i)) != 0) {
+            journal.recordMove(i, uuid, evt.getRestT(), evt.getRestX());
+        }
+
+        if (kind == SpacetimeEventStore.TRAVELLER) {
+            double beta = ((SpacetimeTraveller) evt).getRestBeta();
+
+            if (Double.compare(beta, copy.getRestBeta(i)) != 0) {
+                journal.recordBeta(i, uuid, beta);
+            }
+        }
+    }
+
+    /**
+     * Whether a change to this many events is recorded one event at a time. If
+     * not, a compaction is scheduled instead.
+     */
+    private boolean isRecorded(int count) {
+        if (count > MAX_RECORDED_CHANGE || journal.hasFailed()) {
+            compactTimer.restart();
+            return false;
+        }
+
+        return true;
+    }
+
+    private void compactIfLong() {
+        if (journal.getLength() > MAX_JOURNAL_LENGTH) {
+            compactTimer.stop();
+            journal.compact(copy);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package spacetime_diagram.gui;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+
+import spacetime_diagram.SpacetimeEvent;
+import spacetime_diagram.WorldlineIntersections;
+
+/**
+ * Finds where the travellers in the diagram meet on a background thread, then
+ * adds an event for each meeting to the list with a single
+ * {@code ListDataEvent}. If there are a lot of meetings, the user is asked
+ * before they are added.
+ * 
+ * The meetings are found in a single sweep, which keeps at most
+ * {@link #MAX_MEETINGS} of them but counts them all.
+ * 
+ * @author Jonathan Elsner
+ * @see WorldlineIntersections
+ * @see SpacetimeDiagramGUI
+ */
+class MeetingFinder extends SwingWorker<List<SpacetimeEvent>, Void> {
+
+    /**
+     * How many meetings of travellers can be added without asking first
+     */
+    static final long MEETINGS_WITHOUT_ASKING = 10_000;
+
+    /**
+     * The most meetings that are kept to be added, so that a diagram where
+     * travellers meet billions of times can't run out of memory
+     */
+    static final int MAX_MEETINGS = 1_000_000;
+
+    // How many meetings are found between checks for cancellation
+    private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+    private static final String TITLE = "Add Meetings";
+
+    private final WorldlineIntersections meetings;
+    private final SpacetimeEventListModel objects;
+    private final ProgressMonitor monitor;
+
+    // How many meetings there are, including those that weren't kept
+    private long count;
+
+    // The component over which progress and questions are shown
+    private final Component parent;
+
+    /**
+     * Constructs a finder for the meetings of the travellers in the list as they
+     * are now. The travellers are copied, so must be constructed on the event
+     * dispatch thread.
+     * 
+     * @param objects the list whose travellers are used, and to which the
+     *                meetings are added
+     * @param parent  the component over which to show progress and questions
+     */
+    MeetingFinder(SpacetimeEventListModel objects, Component parent) {
+        this.objects = objects;
+        this.parent = parent;
+
+        meetings = new WorldlineIntersections(objects.getBackingList());
+
+        monitor = new ProgressMonitor(parent, "Finding meetings of travellers", null, 0, 100);
+        addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                monitor.setProgress((Integer) evt.getNewValue());
+            }
+        });
+    }
+
+    /**
+     * Finds the meetings, keeping the first {@link #MAX_MEETINGS}
+     * 
+     * @return the events where the travellers meet, or {@code null} if no
+     *         travellers meet
+     */
+    @Override
+    protected List<SpacetimeEvent> doInBackground() {
+        double[] range = meetings.getTimeRange();
+        if (range == null) {
+            return null;
+        }
+
+        double duration = range[1] - range[0];
+        List<SpacetimeEvent> found = new ArrayList<>();
+
+        long[] seen = { 0 };
+
+        // Meetings are found in order of time, which is how far along the sweep is
+        count = meetings.find(range[0], range[1], (first, second, t, x) -> {
+            if (found.size() < MAX_MEETINGS) {
+                found.add(new SpacetimeEvent(meetings.getName(first) + " meets " + meetings.getName(second), t, x));
+            }
+
+            if (++seen[0] % CANCEL_CHECK_INTERVAL == 0) {
+                if (monitor.isCanceled()) {
+                    cancel(true);
+                }
+                if (isCancelled()) {
+                    throw new CancellationException();
+                }
+                setProgress(duration > 0 ? (int) Math.min(99, (t - range[0]) * 100 / duration) : 0);
+            }
+        });
+
+        return found;
+    }
+
+    /**
+     * Closes the progress monitor, asks the user whether to add the meetings if
+     * there are a lot of them, and adds them
+     */
+    @Override
+    protected void done() {
+        monitor.close();
+
+        List<SpacetimeEvent> found;
+        try {
+            found = get();
+        } catch (CancellationException ex) {
+            // The user stopped the search
+            return;
+        } catch (InterruptedException | ExecutionException ex) {
+            ex.printStackTrace();
+            return;
+        }
+
+        if (found == null) {
+            JOptionPane.showMessageDialog(parent, "No travellers meet", TITLE, JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        if (count > MEETINGS_WITHOUT_ASKING) {
+            String question = count > found.size()
+                    ? "Travellers meet " + count + " times. Add the first " + found.size() + " meetings?"
+                    : "Add " + count + " meetings of travellers?";
+
+            int choice = JOptionPane.showConfirmDialog(parent, question, TITLE, JOptionPane.YES_NO_OPTION);
+            if (choice != JOptionPane.YES_OPTION) {
+                return;
+            }
+        }
+
+        objects.addAll(found);
+    }
+}
@@ -0,0 +1,361 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an RGB PNG image a strip of rows at a time, so the whole image never
+ * has to be in memory. Strips are compressed independently by
+ * {@link StripCompressor}s, which may run on any thread, and then written in
+ * order by the encoder.
+ * 
+ * The compressed strips are joined into the single zlib stream a PNG holds by
+ * ending each one on a byte boundary with a sync flush, and combining their
+ * checksums.
+ * 
+ * @author Jonathan Elsner
+ * @see TiledPngExporter
+ */
+class PngEncoder {
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    // zlib header for a 32K window and the default compression level
+    private static final byte[] ZLIB_HEADER = { 0x78, (byte) 0x9C };
+
+    // A final, empty block of fixed Huffman codes, which ends the deflate stream
+    private static final byte[] FINAL_BLOCK = { 0x03, 0x00 };
+
+    // The largest IDAT chunk written, so decoders never need huge buffers
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+
+    // The modulus of the Adler-32 checksum
+    private static final int ADLER_BASE = 65521;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+
+    private int rowsWritten = 0;
+    private long adler = 1;
+    private boolean headerWritten = false;
+
+    /**
+     * Constructs an encoder and writes the start of the PNG
+     * 
+     * @param out    where to write the PNG
+     * @param width  the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @throws IOException              if the stream can't be written to
+     * @throws IllegalArgumentException if the image has no pixels
+     */
+    PngEncoder(OutputStream out, int width, int height) throws IOException {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Image has no pixels: " + width + "x" + height);
+        }
+
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+
+        this.out.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream data = new DataOutputStream(header);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8); // Bits per channel
+        data.writeByte(2); // RGB
+        data.writeByte(0); // Deflate
+        data.writeByte(0); // Adaptive filtering
+        data.writeByte(0); // Not interlaced
+
+        writeChunk("IHDR", header.toByteArray(), 0, header.size());
+    }
+
+    /**
+     * Writes the next strip of the image
+     * 
+     * @param strip a strip compressed by a {@code StripCompressor}, starting at the
+     *              row after the last strip written
+     * @throws IOException              if the stream can't be written to
+     * @throws IllegalArgumentException if the strip is the wrong width or has more
+     *                                  rows than are left in the image
+     */
+    void write(CompressedStrip strip) throws IOException {
+        if (strip.width != width || rowsWritten + strip.rows > height) {
+            throw new IllegalArgumentException("Strip does not fit the image");
+        }
+
+        if (!headerWritten) {
+            writeChunk("IDAT", ZLIB_HEADER, 0, ZLIB_HEADER.length);
+            headerWritten = true;
+        }
+
+        for (int off = 0; off < strip.length; off += MAX_CHUNK_SIZE) {
+            writeChunk("IDAT", strip.data, off, Math.min(MAX_CHUNK_SIZE, strip.length - off));
+        }
+
+        adler = combineAdler(adler, strip.adler, strip.rawLength);
+        rowsWritten += strip.rows;
+    }
+
+    /**
+     * Writes the end of the PNG, once every row has been written. The stream is
+     * flushed but not closed.
+     * 
+     * @throws IOException           if the stream can't be written to
+     * @throws IllegalStateException if some rows have not been written
+     */
+    void finish() throws IOException {
+        if (rowsWritten != height) {
+            throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows written");
+        }
+
+        byte[] end = new byte[FINAL_BLOCK.length + 4];
+        System.arraycopy(FINAL_BLOCK, 0, end, 0, FINAL_BLOCK.length);
+        end[2] = (byte) (adler >>> 24);
+        end[3] = (byte) (adler >>> 16);
+        end[4] = (byte) (adler >>> 8);
+        end[5] = (byte) adler;
+
+        writeChunk("IDAT", end, 0, end.length);
+        writeChunk("IEND", end, 0, 0);
+        out.flush();
+    }
+
+    private void writeChunk(String type, byte[] data, int off, int len) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, off, len);
+
+        out.writeInt(len);
+        out.write(typeBytes);
+        out.write(data, off, len);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Returns the Adler-32 checksum of two pieces of data one after the other,
+     * from the checksum of each piece
+     * 
+     * @param adler1  the checksum of the first piece
+     * @param adler2  the checksum of the second piece
+     * @param length2 the length of the second piece
+     * @return the checksum of both pieces
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+
+        long sum1 = (adler1 & 0xFFFF) + (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        long sum2 = (remainder * (adler1 & 0xFFFF)) % ADLER_BASE + ((adler1 >>> 16) & 0xFFFF)
+                + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+
+        return (sum1 % ADLER_BASE) | ((sum2 % ADLER_BASE) << 16);
+    }
+
+    /**
+     * A strip of rows, filtered and compressed, ready to be written
+     */
+    static class CompressedStrip {
+        private final int width;
+        private final int rows;
+        private final byte[] data;
+        private final int length;
+        private final long adler;
+        private final long rawLength;
+
+        private CompressedStrip(int width, int rows, byte[] data, int length, long adler, long rawLength) {
+            this.width = width;
+            this.rows = rows;
+            this.data = data;
+            this.length = length;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /**
+     * Filters and compresses strips of rows. A compressor keeps its buffers from
+     * one strip to the next, so each thread should have its own.
+     */
+    static class StripCompressor {
+        private final int width;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final Adler32 adler = new Adler32();
+
+        // The unfiltered row above, and the row filtered each of the five ways
+        private byte[] previous;
+        private byte[] current;
+        private final byte[][] filtered = new byte[5][];
+
+        private final byte[] buffer = new byte[1 << 16];
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        /**
+         * Constructs a compressor for strips of the specified width
+         * 
+         * @param width the width of the image in pixels
+         */
+        StripCompressor(int width) {
+            this.width = width;
+
+            previous = new byte[3 * width];
+            current = new byte[3 * width];
+            for (int i = 0; i < filtered.length; i++) {
+                filtered[i] = new byte[1 + 3 * width];
+                filtered[i][0] = (byte) i;
+            }
+        }
+
+        /**
+         * Filters and compresses rows of pixels
+         * 
+         * @param rgb    the pixels, packed as in {@code TYPE_INT_RGB}
+         * @param offset the index of the first pixel of the first row
+         * @param stride the distance between rows in the array
+         * @param rows   the number of rows
+         * @return the compressed rows
+         */
+        CompressedStrip compress(int[] rgb, int offset, int stride, int rows) {
+            deflater.reset();
+            adler.reset();
+            compressed.reset();
+
+            for (int row = 0; row < rows; row++) {
+                int start = offset + row * stride;
+                for (int x = 0; x < width; x++) {
+                    int pixel = rgb[start + x];
+                    current[3 * x] = (byte) (pixel >> 16);
+                    current[3 * x + 1] = (byte) (pixel >> 8);
+                    current[3 * x + 2] = (byte) pixel;
+                }
+
+                // Strips are compressed apart, so the first row can't refer to the row
+                // above it, which belongs to another strip
+                byte[] line = filter(row > 0);
+
+                adler.update(line);
+                deflater.setInput(line);
+                while (!deflater.needsInput()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH));
+                }
+
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+
+            // End on a byte boundary, so the next strip can follow straight on
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                compressed.write(buffer, 0, n);
+            } while (n == buffer.length);
+
+            return new CompressedStrip(width, rows, compressed.toByteArray(), compressed.size(), adler.getValue(),
+                    (long) rows * (1 + 3 * width));
+        }
+
+        /**
+         * Filters the current row every way and returns the one likely to compress
+         * best, the one whose bytes are smallest as signed numbers. Without the row
+         * above, only the filters that don't use it are tried.
+         */
+        private byte[] filter(boolean above) {
+            byte[] none = filtered[0];
+            byte[] sub = filtered[1];
+            byte[] up = filtered[2];
+            byte[] average = filtered[3];
+            byte[] paeth = filtered[4];
+
+            long noneSum = 0;
+            long subSum = 0;
+            long upSum = 0;
+            long averageSum = 0;
+            long paethSum = 0;
+
+            for (int i = 0; i < current.length; i++) {
+                int value = current[i] & 0xFF;
+                int left = i >= 3 ? current[i - 3] & 0xFF : 0;
+                int upper = above ? previous[i] & 0xFF : 0;
+                int upperLeft = above && i >= 3 ? previous[i - 3] & 0xFF : 0;
+
+                none[i + 1] = (byte) value;
+                sub[i + 1] = (byte) (value - left);
+                up[i + 1] = (byte) (value - upper);
+                average[i + 1] = (byte) (value - ((left + upper) >> 1));
+                paeth[i + 1] = (byte) (value - paethPredictor(left, upper, upperLeft));
+
+                noneSum += Math.abs(none[i + 1]);
+                subSum += Math.abs(sub[i + 1]);
+                upSum += Math.abs(up[i + 1]);
+                averageSum += Math.abs(average[i + 1]);
+                paethSum += Math.abs(paeth[i + 1]);
+            }
+
+            if (!above) {
+                return subSum < noneSum ? sub : none;
+            }
+
+            byte[] best = none;
+            long bestSum = noneSum;
+            if (subSum < bestSum) {
+                best = sub;
+                bestSum = subSum;
+            }
+            if (upSum < bestSum) {
+                best = up;
+                bestSum = upSum;
+            }
+            if (averageSum < bestSum) {
+                best = average;
+                bestSum = averageSum;
+            }
+            if (paethSum < bestSum) {
+                best = paeth;
+            }
+
+            return best;
+        }
+
+        private static int paethPredictor(int left, int up, int upLeft) {
+            int estimate = left + up - upLeft;
+            int toLeft = Math.abs(estimate - left);
+            int toUp = Math.abs(estimate - up);
+            int toUpLeft = Math.abs(estimate - upLeft);
+
+            if (toLeft <= toUp && toLeft <= toUpLeft) {
+                return left;
+            } else if (toUp <= toUpLeft) {
+                return up;
+            }
+            return upLeft;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import spacetime_diagram.CausalIndex;
+import spacetime_diagram.PiecewiseTraveller;
+import spacetime_diagram.PiecewiseWorldline;
+import spacetime_diagram.SpacetimeEvent;
+import spacetime_diagram.SpacetimeEventStore;
+import spacetime_diagram.SpacetimeTraveller;
+
+/**
+ * An unchanging copy of the rest frame coordinates of every object in a
+ * diagram, stored in columns. The {@code Diagram} takes a snapshot when the
+ * list of objects changes and transforms it whenever the reference frame
+ * changes, so it does not have to walk the objects themselves on every paint.
+ * 
+ * @author Jonathan Elsner
+ * @see TransformedFrame
+ * @see Diagram
+ */
+class RestFrameSnapshot {
+
+    /**
+     * The number of objects in the snapshot
+     */
+    final int size;
+
+    /**
+     * Whether each object is a {@code SpacetimeTraveller}
+     */
+    final boolean[] travellers;
+
+    /**
+     * The rest frame t-coordinate of each object
+     */
+    final double[] t;
+
+    /**
+     * The rest frame x-coordinate of each object
+     */
+    final double[] x;
+
+    /**
+     * The rest frame speed of each object, {@code 0} for events
+     */
+    final double[] beta;
+
+    /**
+     * The name of each object
+     */
+    final String[] names;
+
+    /**
+     * The worldline of each {@code PiecewiseTraveller}, {@code null} for every
+     * other object. The coordinates and speed of a piecewise traveller are those
+     * of its first segment.
+     */
+    final PiecewiseWorldline[] worldlines;
+
+    /**
+     * The number of objects at which a spatial index is used to find the visible
+     * objects, instead of transforming every object
+     */
+    static final int INDEX_THRESHOLD = 10_000;
+
+    // Built the first time it is needed, since small or unchanging diagrams do not
+    // need it
+    private EventGridIndex grid;
+    private int[] travellerRows;
+
+    // Built the first time a light cone is highlighted, along with the events in
+    // the last light cone asked for
+    private CausalIndex causalIndex;
+    private double coneT;
+    private double coneX;
+    private BitSet coneRows;
+
+    private RestFrameSnapshot(int size) {
+        this.size = size;
+
+        travellers = new boolean[size];
+        t = new double[size];
+        x = new double[size];
+        beta = new double[size];
+        names = new String[size];
+        worldlines = new PiecewiseWorldline[size];
+    }
+
+    /**
+     * Returns the indices of the objects that might be visible to an observer in
+     * the specified viewport. All travellers are included, along with the events
+     * in the part of the rest frame that the viewport covers.
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @param viewport     the visible part of the diagram according to the
+     *                     observer
+     * @return the indices of the objects in increasing order, or {@code null} if
+     *         the snapshot is too small to be worth searching and every object
+     *         should be considered
+     */
+    int[] candidates(double observerBeta, Viewport viewport) {
+        if (size < INDEX_THRESHOLD) {
+            return null;
+        }
+
+        buildIndex();
+
+        double[] bounds = viewport.restFrameBounds(observerBeta);
+        int[] events = grid.query(bounds[0], bounds[1], bounds[2], bounds[3]);
+
+        // Merge the two sorted lists of indices
+        int[] merged = new int[events.length + travellerRows.length];
+        int e = 0, tr = 0, m = 0;
+        while (e < events.length && tr < travellerRows.length) {
+            merged[m++] = events[e] < travellerRows[tr] ? events[e++] : travellerRows[tr++];
+        }
+        while (e < events.length) {
+            merged[m++] = events[e++];
+        }
+        while (tr < travellerRows.length) {
+            merged[m++] = travellerRows[tr++];
+        }
+
+        return merged;
+    }
+
+    /**
+     * Returns the events inside the light cone of the specified point, in either
+     * its future or its past. The answer for the last point asked about is kept,
+     * since it is the same for every reference frame. The snapshot may be shared
+     * by several render threads.
+     * 
+     * @param focusT the t-coordinate of the point in the rest frame
+     * @param focusX the x-coordinate of the point in the rest frame
+     * @param c      the speed of light
+     * @return the indices of the events inside the light cone. Must not be
+     *         changed.
+     * @see CausalIndex
+     */
+    synchronized BitSet insideLightCone(double focusT, double focusX, double c) {
+        if (causalIndex == null || causalIndex.getC() != c) {
+            causalIndex = new CausalIndex(t, x, size, i -> !travellers[i], c);
+            coneRows = null;
+        }
+
+        if (coneRows == null || coneT != focusT || coneX != focusX) {
+            BitSet rows = causalIndex.future(focusT, focusX);
+            rows.or(causalIndex.past(focusT, focusX));
+
+            coneRows = rows;
+            coneT = focusT;
+            coneX = focusX;
+        }
+
+        return coneRows;
+    }
+
+    /**
+     * Build the grid of events and the list of travellers, if not already built.
+     * The snapshot may be shared by several render threads.
+     */
+    private synchronized void buildIndex() {
+        if (grid != null) {
+            return;
+        }
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (travellers[i]) {
+                count++;
+            }
+        }
+
+        int[] rows = new int[count];
+        for (int i = 0, n = 0; i < size; i++) {
+            if (travellers[i]) {
+                rows[n++] = i;
+            }
+        }
+
+        travellerRows = rows;
+        grid = new EventGridIndex(this);
+    }
+
+    /**
+     * Takes a snapshot of the specified objects. If the objects are stored in a
+     * {@code SpacetimeEventStore}, the columns are copied directly.
+     * 
+     * @param objects the objects to take a snapshot of
+     * @return the snapshot
+     */
+    static RestFrameSnapshot of(Iterable<SpacetimeEvent> objects) {
+        if (objects instanceof SpacetimeEventListModel) {
+            objects = ((SpacetimeEventListModel) objects).getBackingList();
+        }
+
+        if (objects instanceof SpacetimeEventStore) {
+            SpacetimeEventStore store = (SpacetimeEventStore) objects;
+            RestFrameSnapshot snapshot = new RestFrameSnapshot(store.size());
+
+            store.copyColumns(snapshot.t, snapshot.x, snapshot.beta, null);
+            for (int i = 0; i < snapshot.size; i++) {
+                snapshot.travellers[i] = store.isTraveller(i);
+                snapshot.names[i] = store.getName(i);
+                snapshot.worldlines[i] = store.getWorldline(i);
+            }
+
+            return snapshot;
+        }
+
+        List<SpacetimeEvent> events;
+        if (objects instanceof List) {
+            events = (List<SpacetimeEvent>) objects;
+        } else {
+            events = new ArrayList<>();
+            objects.forEach(events::add);
+        }
+
+        RestFrameSnapshot snapshot = new RestFrameSnapshot(events.size());
+
+        int i = 0;
+        for (SpacetimeEvent obj : events) {
+            snapshot.t[i] = obj.getRestT();
+            snapshot.x[i] = obj.getRestX();
+            snapshot.names[i] = obj.getName();
+
+            if (obj instanceof SpacetimeTraveller) {
+                snapshot.travellers[i] = true;
+                snapshot.beta[i] = ((SpacetimeTraveller) obj).getRestBeta();
+            }
+            if (obj instanceof PiecewiseTraveller) {
+                snapshot.worldlines[i] = ((PiecewiseTraveller) obj).getWorldline();
+            }
+
+            i++;
+        }
+
+        return snapshot;
+    }
+}
@@ -24,10 +24,12 @@ import java.awt.Graphics2D;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
-import java.util.Collection;
 import java.util.Hashtable;
 
 import javax.imageio.ImageIO;
@@ -44,16 +46,19 @@ import javax.swing.JList;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JScrollPane;
 import javax.swing.JSlider;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
-import spacetime_diagram.EventIO;
+import spacetime_diagram.EditJournal;
 import spacetime_diagram.LorentzTransform;
 import spacetime_diagram.SpacetimeEvent;
+import spacetime_diagram.SpacetimeEventStore;
 import spacetime_diagram.SpacetimeTraveller;
 
 /**
@@ -70,6 +75,21 @@ public class SpacetimeDiagramGUI extends JFrame {
 
     public static final Font MONOSPACE_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
 
+    // The frames in an exported animation, and how long each is shown
+    private static final int ANIMATION_FRAMES = 199;
+    private static final int ANIMATION_FRAME_MILLIS = 40;
+
+    // How many times larger than the window high resolution images can be
+    private static final Integer[] HIGH_RESOLUTION_SCALES = { 2, 4, 8, 16, 32 };
+
+    // Where the diagram is autosaved, in the user's home directory
+    private static final String AUTOSAVE_DIRECTORY = ".spacetime_diagram";
+    private static final String AUTOSAVE_SNAPSHOT = "autosave.diagram";
+    private static final String AUTOSAVE_JOURNAL = "autosave.journal";
+
+    // The longest the window waits for the autosave to stop when it is closed
+    private static final long AUTOSAVE_DISCARD_MILLIS = 1000;
+
     /**
      * Where the spacetime diagram is drawn.
      * 
@@ -94,6 +114,35 @@ public class SpacetimeDiagramGUI extends JFrame {
 
     private SpacetimeEventOptionsPanel objSettingsPnl;
 
+    /**
+     * Applies changes to the reference frame speed at most once per frame
+     * 
+     * @see FrameScheduler
+     */
+    private FrameScheduler frameScheduler;
+
+    /**
+     * Reads the diagram being opened, if any
+     * 
+     * @see DiagramLoader
+     */
+    private DiagramLoader loader;
+
+    /**
+     * Writes the diagram being saved, if any
+     * 
+     * @see DiagramSaver
+     */
+    private DiagramSaver saver;
+
+    /**
+     * Autosaves every edit to the diagram, or {@code null} if autosaving could not
+     * be started
+     * 
+     * @see EditJournal
+     */
+    private EditJournal journal;
+
     /**
      * Construct the {@code GUI} and its subcomponents
      * 
@@ -108,8 +157,9 @@ public class SpacetimeDiagramGUI extends JFrame {
         ImageIcon icon = new ImageIcon(iconURL);
         this.setIconImage(icon.getImage());
 
-        // Create the list where we store all of the spacetime objects
-        objects = new SpacetimeEventListModel();
+        // Create the list where we store all of the spacetime objects. The objects
+        // are kept in columns so that large diagrams stay small in memory
+        objects = new SpacetimeEventListModel(new SpacetimeEventStore());
 
         // Initialize the diagram with some preset items for testing
         // objects.add(new SpacetimeTraveller("foo", 0.1, 0, 0));
@@ -147,7 +197,15 @@ public class SpacetimeDiagramGUI extends JFrame {
                     saveFile = new File(saveFile.getParentFile(), saveFile.getName() + ".diagram");
                 }
 
-                EventIO.saveSpacetimeEvents(saveFile, objects);
+                // Two saves at once would write the same temporary file
+                if (saver != null && !saver.isDone()) {
+                    JOptionPane.showMessageDialog(this, "The diagram is still being saved", "Save Diagram",
+                            JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+
+                saver = new DiagramSaver(saveFile, objects, this);
+                saver.execute();
             }
         });
 
@@ -165,9 +223,15 @@ public class SpacetimeDiagramGUI extends JFrame {
             if (returnVal == JFileChooser.APPROVE_OPTION) {
                 File openFile = fileChooser.getSelectedFile();
 
-                Collection<SpacetimeEvent> events = EventIO.readSpacetimeEvents(openFile);
+                // Stop loading any other file first, so the two don't get mixed together
+                if (loader != null) {
+                    loader.cancel(true);
+                }
+
                 objects.clear();
-                objects.addAll(events);
+
+                loader = new DiagramLoader(openFile, objects, this);
+                loader.execute();
             }
         });
 
@@ -182,7 +246,7 @@ public class SpacetimeDiagramGUI extends JFrame {
             JFileChooser fileChooser = new JFileChooser();
             fileChooser.setAcceptAllFileFilterUsed(false);
             fileChooser.setFileFilter(
-                    new FileNameExtensionFilter("Image Files (.png, .jpg, .jpeg)", "png", "jpg", "jpeg"));
+                    new FileNameExtensionFilter("Image Files (.png, .jpg, .jpeg, .svg)", "png", "jpg", "jpeg", "svg"));
 
             int returnVal = fileChooser.showSaveDialog(this);
 
@@ -193,6 +257,18 @@ public class SpacetimeDiagramGUI extends JFrame {
                 int index = saveFile.getName().lastIndexOf('.');
                 String ext = saveFile.getName().substring(index + 1);
 
+                // Vector images are written as they are drawn, so they can be any size. Snapshot
+                // the diagram now, so editing it doesn't change the image
+                if (ext.equalsIgnoreCase("svg")) {
+                    DiagramRenderer renderer = graph.createRenderer();
+                    SvgExporter exporter = new SvgExporter(renderer);
+                    double beta = graph.getReferenceFrameBeta();
+
+                    new ExportWorker("Export Graph as Image", saveFile, renderer.getEventCount(),
+                            progress -> exporter.export(beta, saveFile, progress), this).execute();
+                    return;
+                }
+
                 BufferedImage img = new BufferedImage(graph.getWidth(), graph.getHeight(), BufferedImage.TYPE_INT_ARGB);
                 Graphics2D graphics = (Graphics2D) img.getGraphics();
 
@@ -201,7 +277,7 @@ public class SpacetimeDiagramGUI extends JFrame {
                 graphics.setColor(Color.white);
                 graphics.fillRect(0, 0, graph.getWidth(), graph.getHeight());
 
-                graph.paint(graphics);
+                graph.paintDiagram(graphics);
                 try {
                     ImageIO.write(img, ext, saveFile);
                 } catch (Exception ex) {
@@ -210,6 +286,108 @@ public class SpacetimeDiagramGUI extends JFrame {
             }
         });
 
+        JMenuItem exportAnimationItem = new JMenuItem("Export Animation");
+        exportAnimationItem.setToolTipText("Export the diagram as the observer speeds up from -0.99c to 0.99c");
+        exportAnimationItem.setMnemonic('A');
+        fileMenu.add(exportAnimationItem);
+        exportAnimationItem.addActionListener(e -> {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setAcceptAllFileFilterUsed(false);
+            fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("Animated GIF (.gif)", "gif"));
+            fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("Numbered PNG Images (.png)", "png"));
+
+            int returnVal = fileChooser.showSaveDialog(this);
+
+            if (returnVal == JFileChooser.APPROVE_OPTION) {
+                File saveFile = fileChooser.getSelectedFile();
+                String ext = ((FileNameExtensionFilter) fileChooser.getFileFilter()).getExtensions()[0];
+
+                if (!saveFile.getName().toLowerCase().endsWith("." + ext)) {
+                    saveFile = new File(saveFile.getParentFile(), saveFile.getName() + "." + ext);
+                }
+
+                // Snapshot the diagram now, so editing it doesn't change the animation
+                AnimationExporter exporter = new AnimationExporter(graph.createRenderer());
+                File animationFile = saveFile;
+
+                new ExportWorker("Export Animation", animationFile, ANIMATION_FRAMES, progress -> {
+                    if (ext.equals("gif")) {
+                        exporter.exportGif(animationFile, AnimationExporter.DEFAULT_START_BETA,
+                                AnimationExporter.DEFAULT_END_BETA, ANIMATION_FRAMES, ANIMATION_FRAME_MILLIS, progress);
+                    } else {
+                        // Each image is named after the file chosen, without its extension
+                        String name = animationFile.getName();
+                        exporter.exportPngs(animationFile.getAbsoluteFile().getParentFile(),
+                                name.substring(0, name.length() - ext.length() - 1),
+                                AnimationExporter.DEFAULT_START_BETA, AnimationExporter.DEFAULT_END_BETA,
+                                ANIMATION_FRAMES, progress);
+                    }
+                }, this).execute();
+            }
+        });
+
+        JMenuItem exportLargeImageItem = new JMenuItem("Export High Resolution Image");
+        exportLargeImageItem.setToolTipText("Export the diagram as a PNG image many times larger than the window");
+        exportLargeImageItem.setMnemonic('H');
+        fileMenu.add(exportLargeImageItem);
+        exportLargeImageItem.addActionListener(e -> {
+            Object scale = JOptionPane.showInputDialog(this, "Times larger than the window:",
+                    "Export High Resolution Image", JOptionPane.QUESTION_MESSAGE, null, HIGH_RESOLUTION_SCALES,
+                    HIGH_RESOLUTION_SCALES[1]);
+            if (scale == null) {
+                return;
+            }
+
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setAcceptAllFileFilterUsed(false);
+            fileChooser.setFileFilter(new FileNameExtensionFilter("PNG Image (.png)", "png"));
+
+            int returnVal = fileChooser.showSaveDialog(this);
+
+            if (returnVal == JFileChooser.APPROVE_OPTION) {
+                File saveFile = fileChooser.getSelectedFile();
+
+                if (!saveFile.getName().toLowerCase().endsWith(".png")) {
+                    saveFile = new File(saveFile.getParentFile(), saveFile.getName() + ".png");
+                }
+
+                // Snapshot the diagram now, so editing it doesn't change the image
+                TiledPngExporter exporter = new TiledPngExporter(graph.createRenderer(), (Integer) scale);
+                double beta = graph.getReferenceFrameBeta();
+                File imageFile = saveFile;
+
+                new ExportWorker("Export High Resolution Image", imageFile, exporter.getHeight(),
+                        progress -> exporter.export(beta, imageFile, progress), this).execute();
+            }
+        });
+
+        JMenuItem exportCausalGraphItem = new JMenuItem("Export Causal Graph");
+        exportCausalGraphItem.setToolTipText("Export which events can affect which others as a CSV file");
+        exportCausalGraphItem.setMnemonic('C');
+        fileMenu.add(exportCausalGraphItem);
+        exportCausalGraphItem.addActionListener(e -> {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setAcceptAllFileFilterUsed(false);
+            fileChooser.setFileFilter(new FileNameExtensionFilter("CSV File (.csv)", "csv"));
+
+            int returnVal = fileChooser.showSaveDialog(this);
+
+            if (returnVal == JFileChooser.APPROVE_OPTION) {
+                File saveFile = fileChooser.getSelectedFile();
+
+                if (!saveFile.getName().toLowerCase().endsWith(".csv")) {
+                    saveFile = new File(saveFile.getParentFile(), saveFile.getName() + ".csv");
+                }
+
+                // Snapshot the diagram now, so editing it doesn't change the graph
+                CausalGraphExporter exporter = new CausalGraphExporter(objects);
+                File graphFile = saveFile;
+
+                new ExportWorker("Export Causal Graph", graphFile, exporter.getTotal(),
+                        progress -> exporter.export(graphFile, progress), this).execute();
+            }
+        });
+
         JMenu optionsMenu = new JMenu("Options");
         optionsMenu.setMnemonic('O');
         menuBar.add(optionsMenu);
@@ -253,6 +431,15 @@ public class SpacetimeDiagramGUI extends JFrame {
         });
         optionsMenu.add(drawLightConeCheckbox);
 
+        JCheckBoxMenuItem causalFocusCheckbox = new JCheckBoxMenuItem("Highlight light cone of selected event", true);
+        causalFocusCheckbox.setMnemonic('h');
+        causalFocusCheckbox
+                .setToolTipText("Fade the events that can neither affect nor be affected by the selected event");
+        causalFocusCheckbox.addActionListener(evt -> {
+            graph.setDrawCausalFocus(causalFocusCheckbox.getState());
+        });
+        optionsMenu.add(causalFocusCheckbox);
+
         JCheckBoxMenuItem labelsOnGraphCheckbox = new JCheckBoxMenuItem("Labels elements on graph", true);
         labelsOnGraphCheckbox.setMnemonic('l');
         labelsOnGraphCheckbox.addActionListener(evt -> {
@@ -260,6 +447,14 @@ public class SpacetimeDiagramGUI extends JFrame {
         });
         optionsMenu.add(labelsOnGraphCheckbox);
 
+        JCheckBoxMenuItem levelOfDetailCheckbox = new JCheckBoxMenuItem("Shade crowded areas of graph", true);
+        levelOfDetailCheckbox.setMnemonic('s');
+        levelOfDetailCheckbox.setToolTipText("Draw areas with too many events to tell apart as shaded squares");
+        levelOfDetailCheckbox.addActionListener(evt -> {
+            graph.setLevelOfDetail(levelOfDetailCheckbox.getState());
+        });
+        optionsMenu.add(levelOfDetailCheckbox);
+
         optionsMenu.addSeparator();
 
         JMenuItem aboutBtn = new JMenuItem("About...");
@@ -312,11 +507,16 @@ public class SpacetimeDiagramGUI extends JFrame {
         observerSpeed.setPaintTicks(true);
         observerSpeed.setPaintLabels(true);
         // observerSpeed.setSnapToTicks(true);
-        observerSpeed.addChangeListener(e -> {
-            observerBetaField.setText(String.valueOf(observerSpeed.getValue() / 100.0));
-            graph.setReferenceFrameBeta(((JSlider) e.getSource()).getValue() / 100.0);
+
+        // Dragging the slider quickly changes its value far more often than the screen
+        // can show, so only apply the latest value once per frame of the display
+        frameScheduler = new FrameScheduler(FrameScheduler.displayFramesPerSecond(), beta -> {
+            observerBetaField.setText(String.valueOf(beta));
+            graph.setReferenceFrameBeta(beta);
             graph.repaint();
+            objSettingsPnl.setReferenceFrameBeta(beta);
         });
+        observerSpeed.addChangeListener(e -> frameScheduler.submit(observerSpeed.getValue() / 100.0));
 
         observerBetaField.addActionListener(evt -> {
             try {
@@ -413,6 +613,16 @@ public class SpacetimeDiagramGUI extends JFrame {
         listPnlGbc.gridx++;
 
         objectListPanel.add(removeBtn, listPnlGbc);
+        listPnlGbc.gridx = 0;
+        listPnlGbc.gridy++;
+
+        JButton addMeetingsBtn = new JButton("Add Meetings");
+        addMeetingsBtn.setToolTipText("Add an event wherever two travellers meet");
+        addMeetingsBtn.addActionListener(e -> new MeetingFinder(objects, this).execute());
+
+        listPnlGbc.gridwidth = 3;
+        objectListPanel.add(addMeetingsBtn, listPnlGbc);
+        listPnlGbc.gridwidth = 1;
 
         // Add the object list panel to the GUI
         masterGBC.anchor = GridBagConstraints.CENTER;
@@ -425,15 +635,14 @@ public class SpacetimeDiagramGUI extends JFrame {
         // #endregion object_list
 
         objSettingsPnl = new SpacetimeEventOptionsPanel();
-        observerSpeed.addChangeListener(evt -> objSettingsPnl.setReferenceFrameBeta(observerSpeed.getValue() / 100.0));
         objectList.addListSelectionListener(evt -> objSettingsPnl.setCurrentEvent(objectList.getSelectedValue()));
-        objSettingsPnl.addActionListener(evt -> {
-            if (evt.getActionCommand() == "name") {
-                objects.fireChangeEvent(objectList.getSelectedValue());
-            } else {
-                graph.repaint();
-            }
-        });
+        // Any edit to the selected object changes the list, so the list shows the new
+        // name and the graph knows to recompute the object's coordinates
+        objSettingsPnl.addActionListener(evt -> objects.fireChangeEvent(objectList.getSelectedValue()));
+
+        // Highlight the light cone of the selected event, following it as it is edited
+        objectList.addListSelectionListener(evt -> graph.setCausalFocus(objectList.getSelectedValue()));
+        objSettingsPnl.addActionListener(evt -> graph.setCausalFocus(objectList.getSelectedValue()));
 
         masterGBC.anchor = GridBagConstraints.PAGE_END;
         masterGBC.fill = GridBagConstraints.HORIZONTAL;
@@ -476,6 +685,79 @@ public class SpacetimeDiagramGUI extends JFrame {
 
         // Set minimum size so components don't get crushed
         this.setMinimumSize(this.getSize());
+
+        startAutosave();
+    }
+
+    /**
+     * Offers to recover the autosaved diagram if the program did not close
+     * cleanly last time, then starts autosaving this diagram. The autosave is
+     * deleted when the window is closed.
+     */
+    private void startAutosave() {
+        File directory = new File(System.getProperty("user.home"), AUTOSAVE_DIRECTORY);
+        File snapshotFile = new File(directory, AUTOSAVE_SNAPSHOT);
+        File journalFile = new File(directory, AUTOSAVE_JOURNAL);
+
+        if (EditJournal.exists(snapshotFile, journalFile)) {
+            int choice = JOptionPane.showConfirmDialog(this,
+                    "The last diagram was not closed properly. Recover it?\nIf not, it will be kept in " + directory
+                            + " with names ending in " + EditJournal.SET_ASIDE_SUFFIX + " until this happens again.",
+                    "Recover Diagram", JOptionPane.YES_NO_OPTION);
+
+            boolean recovered = false;
+            if (choice == JOptionPane.YES_OPTION) {
+                try {
+                    objects.addAll(EditJournal.recover(snapshotFile, journalFile));
+                    recovered = true;
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    JOptionPane.showMessageDialog(this, "Could not recover the diagram: " + ex.getMessage(),
+                            "Recover Diagram", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+
+            // Keep an autosave that wasn't recovered, instead of writing over it
+            if (!recovered) {
+                try {
+                    EditJournal.setAside(snapshotFile, journalFile);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    JOptionPane.showMessageDialog(this,
+                            "Could not move the last diagram out of the way, so this diagram will not be autosaved: "
+                                    + ex.getMessage(),
+                            "Autosave", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            JOptionPane.showMessageDialog(this,
+                    "Could not create " + directory + ", so the diagram will not be autosaved", "Autosave",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        journal = new EditJournal(snapshotFile, journalFile, objects.getBackingList(), ex -> {
+            ex.printStackTrace();
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                    "Could not autosave the diagram: " + ex.getMessage(), "Autosave", JOptionPane.ERROR_MESSAGE));
+        });
+        objects.addListDataListener(new JournalRecorder(objects, journal));
+
+        // Closing normally leaves nothing to recover
+        this.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                // The window waits on this, so don't let a slow disk keep it open
+                try {
+                    journal.discard(AUTOSAVE_DISCARD_MILLIS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
     }
 
     /**
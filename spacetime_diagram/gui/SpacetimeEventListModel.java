@@ -19,13 +19,21 @@ package spacetime_diagram.gui;
 
 import java.util.AbstractSequentialList;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import javax.swing.ListModel;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
 import spacetime_diagram.SpacetimeEvent;
+import spacetime_diagram.SpacetimeEventStore;
 import spacetime_diagram.SpacetimeTraveller;
 
 /**
@@ -33,6 +41,10 @@ import spacetime_diagram.SpacetimeTraveller;
  * custom list is used so that changes to this list fire updates in the GUI that
  * is used to display information about the objects in this list.
  * 
+ * Bulk changes, such as {@link #addAll(Collection)} and {@link #clear()},
+ * change the backing list once and fire a single {@code ListDataEvent}, instead
+ * of one event for each object.
+ * 
  * @apiNote using functions to manipulate the stored elements other than the
  *          ones implemented here may not properly fire {@code ListDataEvent}s
  *          as necessary.
@@ -50,8 +62,9 @@ class SpacetimeEventListModel extends AbstractSequentialList<SpacetimeEvent> imp
      * 
      * @see SpacetimeEvent
      * @see SpacetimeTraveller
+     * @see SpacetimeEventStore
      */
-    private ArrayList<SpacetimeEvent> objects;
+    private List<SpacetimeEvent> objects;
 
     /**
      * The listeners waiting for changes to this list
@@ -64,10 +77,33 @@ class SpacetimeEventListModel extends AbstractSequentialList<SpacetimeEvent> imp
      * Constructs the {@code SpacetimeObjectListModel}
      */
     public SpacetimeEventListModel() {
-        objects = new ArrayList<>();
+        this(new ArrayList<>());
+    }
+
+    /**
+     * Constructs the {@code SpacetimeObjectListModel} on top of the specified list.
+     * Pass a {@code SpacetimeEventStore} to keep the objects in compact columns
+     * instead of one object per event.
+     * 
+     * @param backingList the (usually empty) list in which the objects are stored
+     * 
+     * @see SpacetimeEventStore
+     */
+    public SpacetimeEventListModel(List<SpacetimeEvent> backingList) {
+        objects = backingList;
         listeners = new ArrayList<>();
     }
 
+    /**
+     * Returns the list in which the objects are actually stored, so that readers
+     * can take advantage of how it stores them.
+     * 
+     * @return the backing list. Changing it directly will not notify listeners.
+     */
+    List<SpacetimeEvent> getBackingList() {
+        return objects;
+    }
+
     /**
      * Returns the number of {@code SpacetimeObject}s in this list.
      * 
@@ -144,6 +180,46 @@ class SpacetimeEventListModel extends AbstractSequentialList<SpacetimeEvent> imp
         }
     }
 
+    /**
+     * Appends all of the specified objects at the end of this list, and notify
+     * {@code ListDataListener}s of the change with a single event.
+     * 
+     * @param objs The {@code SpacetimeObject}s to add
+     * 
+     * @return {@code true} if this list changed
+     */
+    @Override
+    public boolean addAll(Collection<? extends SpacetimeEvent> objs) {
+        return addAll(objects.size(), objs);
+    }
+
+    /**
+     * Inserts all of the specified objects into this list at the specified index,
+     * and notify {@code ListDataListener}s of the change with a single event.
+     * 
+     * @param index The index at which to insert the first object
+     * @param objs  The {@code SpacetimeObject}s to add
+     * 
+     * @return {@code true} if this list changed
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public boolean addAll(int index, Collection<? extends SpacetimeEvent> objs) {
+        int oldSize = objects.size();
+
+        if (objects.addAll(index, objs)) {
+
+            // Construct event and notify listeners
+            ListDataEvent e = new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, index,
+                    index + objects.size() - oldSize - 1);
+            listeners.forEach(l -> l.intervalAdded(e));
+
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     /**
      * Remove the object from the list and notify {@code ListDataListener}s of the
      * change.
@@ -153,9 +229,10 @@ class SpacetimeEventListModel extends AbstractSequentialList<SpacetimeEvent> imp
      */
     @Override
     public boolean remove(Object obj) {
-        int i = objects.indexOf(obj);
+        int i = indexOf(obj);
 
-        if (objects.remove(obj)) {
+        if (i >= 0) {
+            objects.remove(i);
 
             // Construct and notify listeners
             ListDataEvent e = new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, i, i);
@@ -188,6 +265,135 @@ class SpacetimeEventListModel extends AbstractSequentialList<SpacetimeEvent> imp
         return o;
     }
 
+    /**
+     * Remove the objects between the specified indices and notify
+     * {@code ListDataListener}s of the change with a single event.
+     * 
+     * @param fromIndex the index of the first object to remove
+     * @param toIndex   the index after the last object to remove
+     * 
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > objects.size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex + ") out of bounds");
+        }
+
+        if (fromIndex == toIndex) {
+            return;
+        }
+
+        objects.subList(fromIndex, toIndex).clear();
+
+        // Construct event and notify listeners
+        ListDataEvent e = new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, fromIndex, toIndex - 1);
+        listeners.forEach(l -> l.intervalRemoved(e));
+    }
+
+    /**
+     * Remove all of the objects from this list and notify
+     * {@code ListDataListener}s of the change with a single event.
+     */
+    @Override
+    public void clear() {
+        removeRange(0, objects.size());
+    }
+
+    /**
+     * Remove every object that is also in the specified collection and notify
+     * {@code ListDataListener}s of the change with a single event.
+     * 
+     * @param objs The objects to remove
+     * @return {@code true} if this list changed
+     * 
+     * @see #removeIf(Predicate)
+     */
+    @Override
+    public boolean removeAll(Collection<?> objs) {
+        Collection<?> lookup = objs instanceof Set ? objs : new HashSet<>(objs);
+        return removeIf(lookup::contains);
+    }
+
+    /**
+     * Remove every object that is not in the specified collection and notify
+     * {@code ListDataListener}s of the change with a single event.
+     * 
+     * @param objs The objects to keep
+     * @return {@code true} if this list changed
+     * 
+     * @see #removeIf(Predicate)
+     */
+    @Override
+    public boolean retainAll(Collection<?> objs) {
+        Collection<?> lookup = objs instanceof Set ? objs : new HashSet<>(objs);
+        return removeIf(o -> !lookup.contains(o));
+    }
+
+    /**
+     * Remove every object matching the filter and notify {@code ListDataListener}s
+     * of the change with a single event. If the removed objects are next to each
+     * other, the event is an {@code INTERVAL_REMOVED} event for them. Otherwise it
+     * is a {@code CONTENTS_CHANGED} event covering every index the list had before
+     * the removal.
+     * 
+     * @param filter Returns {@code true} for the objects to remove
+     * @return {@code true} if this list changed
+     */
+    @Override
+    public boolean removeIf(Predicate<? super SpacetimeEvent> filter) {
+        // Test every object first, so the backing list is only changed once
+        BitSet removed = new BitSet();
+        int i = 0;
+        for (SpacetimeEvent o : objects) {
+            if (filter.test(o)) {
+                removed.set(i);
+            }
+            i++;
+        }
+
+        if (removed.isEmpty()) {
+            return false;
+        }
+
+        int first = removed.nextSetBit(0);
+        int last = removed.length() - 1;
+
+        if (removed.cardinality() == last - first + 1) {
+            removeRange(first, last + 1);
+        } else {
+            int oldSize = objects.size();
+
+            int[] index = { 0 };
+            objects.removeIf(o -> removed.get(index[0]++));
+
+            // Construct event and notify listeners
+            ListDataEvent e = new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, 0, oldSize - 1);
+            listeners.forEach(l -> l.contentsChanged(e));
+        }
+
+        return true;
+    }
+
+    /**
+     * Replace every object with the result of the operator and notify
+     * {@code ListDataListener}s of the change with a single event.
+     * 
+     * @param operator Computes the replacement for each object
+     */
+    @Override
+    public void replaceAll(UnaryOperator<SpacetimeEvent> operator) {
+        if (objects.isEmpty()) {
+            return;
+        }
+
+        objects.replaceAll(operator);
+
+        // Construct event and notify listeners
+        ListDataEvent e = new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, 0, objects.size() - 1);
+        listeners.forEach(l -> l.contentsChanged(e));
+    }
+
     /**
      * Let {@code ListDataListeners} know that an object in the list changed. Useful
      * for updating a JList that displays this data
@@ -200,11 +406,12 @@ class SpacetimeEventListModel extends AbstractSequentialList<SpacetimeEvent> imp
      * @see SpacetimeDiagramGUI
      */
     public void fireChangeEvent(SpacetimeEvent object) {
-        if (!objects.contains(object)) {
+        int i = indexOf(object);
+
+        if (i < 0) {
             throw new IllegalArgumentException("Object is not in this list");
         }
 
-        int i = objects.indexOf(object);
         fireChangeEvent(i);
     }
 
@@ -228,6 +435,37 @@ class SpacetimeEventListModel extends AbstractSequentialList<SpacetimeEvent> imp
         listeners.forEach(l -> l.contentsChanged(e));
     }
 
+    /**
+     * Returns the index of the first object with the same UUID as the specified
+     * object. A {@code SpacetimeEventStore} looks the UUID up in its own index, so
+     * this takes constant time instead of scanning the list.
+     * 
+     * @param obj The object to find
+     * @return the index of the object, or {@code -1} if it is not in this list
+     * 
+     * @see SpacetimeEvent#getUUID()
+     * @see SpacetimeEventStore#indexOf(Object)
+     */
+    @Override
+    public int indexOf(Object obj) {
+        // Objects are equal when their UUIDs are
+        return objects.indexOf(obj);
+    }
+
+    /**
+     * Returns whether an object with the same UUID as the specified object is in
+     * this list
+     * 
+     * @param obj The object to find
+     * @return {@code true} if the object is in this list
+     * 
+     * @see #indexOf(Object)
+     */
+    @Override
+    public boolean contains(Object obj) {
+        return indexOf(obj) >= 0;
+    }
+
     /**
      * Get the element at the specified index
      * 
@@ -265,7 +503,86 @@ class SpacetimeEventListModel extends AbstractSequentialList<SpacetimeEvent> imp
      */
     @Override
     public ListIterator<SpacetimeEvent> listIterator(int index) {
-        return objects.listIterator(index);
+        return new ModelIterator(objects.listIterator(index));
+    }
+
+    /**
+     * Wraps an iterator over the backing list so that changes made through it,
+     * including the inherited {@code add(int, E)} and {@code set(int, E)}, notify
+     * {@code ListDataListener}s
+     */
+    private class ModelIterator implements ListIterator<SpacetimeEvent> {
+
+        private final ListIterator<SpacetimeEvent> it;
+
+        /** The index of the object last returned by next or previous */
+        private int last = -1;
+
+        private ModelIterator(ListIterator<SpacetimeEvent> it) {
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        @Override
+        public SpacetimeEvent next() {
+            last = it.nextIndex();
+            return it.next();
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return it.hasPrevious();
+        }
+
+        @Override
+        public SpacetimeEvent previous() {
+            last = it.previousIndex();
+            return it.previous();
+        }
+
+        @Override
+        public int nextIndex() {
+            return it.nextIndex();
+        }
+
+        @Override
+        public int previousIndex() {
+            return it.previousIndex();
+        }
+
+        @Override
+        public void remove() {
+            it.remove();
+
+            int i = last;
+            last = -1;
+
+            ListDataEvent e = new ListDataEvent(SpacetimeEventListModel.this, ListDataEvent.INTERVAL_REMOVED, i, i);
+            listeners.forEach(l -> l.intervalRemoved(e));
+        }
+
+        @Override
+        public void set(SpacetimeEvent obj) {
+            it.set(obj);
+
+            ListDataEvent e = new ListDataEvent(SpacetimeEventListModel.this, ListDataEvent.CONTENTS_CHANGED, last,
+                    last);
+            listeners.forEach(l -> l.contentsChanged(e));
+        }
+
+        @Override
+        public void add(SpacetimeEvent obj) {
+            int i = it.nextIndex();
+            it.add(obj);
+            last = -1;
+
+            ListDataEvent e = new ListDataEvent(SpacetimeEventListModel.this, ListDataEvent.INTERVAL_ADDED, i, i);
+            listeners.forEach(l -> l.intervalAdded(e));
+        }
     }
 
 }
\ No newline at end of file
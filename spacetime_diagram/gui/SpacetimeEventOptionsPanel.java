@@ -32,6 +32,7 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
+import spacetime_diagram.LorentzFrame;
 import spacetime_diagram.LorentzTransform;
 import spacetime_diagram.SpacetimeEvent;
 import spacetime_diagram.SpacetimeTraveller;
@@ -71,6 +72,14 @@ public class SpacetimeEventOptionsPanel extends JPanel {
      */
     private double referenceFrameBeta;
 
+    /**
+     * The reference frame of the observer, kept so that the Lorentz factor isn't
+     * recomputed for every field
+     * 
+     * @see #getReferenceFrame()
+     */
+    private LorentzFrame referenceFrame;
+
     /**
      * The conversion of distance from light-seconds to whatever unit is being
      * displayed
@@ -103,6 +112,12 @@ public class SpacetimeEventOptionsPanel extends JPanel {
      */
     private JLabel betaLabel;
 
+    /**
+     * The field showing how much time passes on the current traveller's clock
+     * between {@code t = 0} and the time in the {@code tField}
+     */
+    private JTextField properTimeField;
+
     /**
      * Constructs a SpacetimeEventOptionsPanel
      */
@@ -154,12 +169,12 @@ public class SpacetimeEventOptionsPanel extends JPanel {
         xField.addActionListener(e -> {
             try {
                 double newX = Double.valueOf(xField.getText()) / distanceConversion;
-                currentEvent.setX(referenceFrameBeta, newX);
+                currentEvent.setX(getReferenceFrame(), newX);
 
                 ActionEvent lEvt = new ActionEvent(this, e.getID(), "x");
                 actionListeners.forEach(l -> l.actionPerformed(lEvt));
             } catch (NumberFormatException ex) {
-                xField.setText("" + currentEvent.getX(referenceFrameBeta));
+                xField.setText("" + currentEvent.getX(getReferenceFrame()));
             }
         });
 
@@ -180,12 +195,12 @@ public class SpacetimeEventOptionsPanel extends JPanel {
         tField.addActionListener(e -> {
             try {
                 double newT = Double.valueOf(tField.getText());
-                currentEvent.setT(referenceFrameBeta, newT);
+                currentEvent.setT(getReferenceFrame(), newT);
 
                 ActionEvent lEvt = new ActionEvent(this, e.getID(), "t");
                 actionListeners.forEach(l -> l.actionPerformed(lEvt));
             } catch (NumberFormatException ex) {
-                tField.setText("" + currentEvent.getT(referenceFrameBeta));
+                tField.setText("" + currentEvent.getT(getReferenceFrame()));
             }
         });
 
@@ -208,12 +223,12 @@ public class SpacetimeEventOptionsPanel extends JPanel {
 
             try {
                 double newBeta = Double.valueOf(betaField.getText());
-                betaField.setText("" + traveller.setBeta(referenceFrameBeta, newBeta));
+                betaField.setText("" + traveller.setBeta(getReferenceFrame(), newBeta));
 
                 ActionEvent lEvt = new ActionEvent(this, e.getID(), "beta");
                 actionListeners.forEach(l -> l.actionPerformed(lEvt));
             } catch (NumberFormatException ex) {
-                betaField.setText("" + traveller.getBeta(referenceFrameBeta));
+                betaField.setText("" + traveller.getBeta(getReferenceFrame()));
             }
         });
 
@@ -225,6 +240,23 @@ public class SpacetimeEventOptionsPanel extends JPanel {
         objSettingsGbc.gridx = 0;
         objSettingsGbc.gridy++;
 
+        JLabel properTimeLabel = new JLabel("Proper Time");
+        properTimeField = new JTextField(20);
+
+        properTimeField.setEnabled(false);
+        properTimeField.setEditable(false);
+        properTimeField.setToolTipText("The time on the selected traveller's clock from t = 0 to the time above");
+        properTimeField.setFont(
+                SpacetimeDiagramGUI.MONOSPACE_FONT.deriveFont(Font.PLAIN, properTimeField.getFont().getSize()));
+
+        properTimeLabel.setLabelFor(properTimeField);
+        this.add(properTimeLabel, objSettingsGbc);
+        objSettingsGbc.gridx++;
+
+        this.add(properTimeField, objSettingsGbc);
+        objSettingsGbc.gridx = 0;
+        objSettingsGbc.gridy++;
+
         objSettingsGbc.fill = GridBagConstraints.VERTICAL;
         objSettingsGbc.weighty = 1;
         this.add(Box.createVerticalGlue(), objSettingsGbc);
@@ -265,12 +297,16 @@ public class SpacetimeEventOptionsPanel extends JPanel {
         nameField.setText(currentEvent.getName());
 
         // TODO formatting
-        xField.setText(String.valueOf(currentEvent.getX(referenceFrameBeta) * distanceConversion));
-        tField.setText(String.valueOf(currentEvent.getT(referenceFrameBeta)));
+        xField.setText(String.valueOf(currentEvent.getX(getReferenceFrame()) * distanceConversion));
+        tField.setText(String.valueOf(currentEvent.getT(getReferenceFrame())));
 
         // Only update beta field if a traveller with a speed is selected
         if (currentEvent instanceof SpacetimeTraveller) {
-            betaField.setText(String.valueOf(((SpacetimeTraveller) currentEvent).getBeta(referenceFrameBeta)));
+            SpacetimeTraveller traveller = (SpacetimeTraveller) currentEvent;
+            LorentzFrame frame = getReferenceFrame();
+
+            betaField.setText(String.valueOf(traveller.getBeta(frame)));
+            properTimeField.setText(String.valueOf(traveller.getProperTime(frame, 0, traveller.getT(frame))));
         }
     }
 
@@ -289,6 +325,7 @@ public class SpacetimeEventOptionsPanel extends JPanel {
             xField.setEnabled(false);
             tField.setEnabled(false);
             betaField.setEnabled(false);
+            properTimeField.setEnabled(false);
 
             return;
         } else {
@@ -303,9 +340,12 @@ public class SpacetimeEventOptionsPanel extends JPanel {
         // Only enable the beta field if a traveller that can have a speed is selected
         if (currentEvent instanceof SpacetimeTraveller) {
             betaField.setEnabled(true);
+            properTimeField.setEnabled(true);
         } else {
             betaField.setText("");
             betaField.setEnabled(false);
+            properTimeField.setText("");
+            properTimeField.setEnabled(false);
         }
     }
 
@@ -336,6 +376,21 @@ public class SpacetimeEventOptionsPanel extends JPanel {
         updateValues();
     }
 
+    /**
+     * Returns the reference frame viewing the represented object, constructing it
+     * again if the speed of light has changed since it was constructed
+     * 
+     * @return the reference frame of the observer
+     */
+    private LorentzFrame getReferenceFrame() {
+        if (referenceFrame == null || referenceFrame.getBeta() != referenceFrameBeta
+                || referenceFrame.getC() != LorentzTransform.getC()) {
+            referenceFrame = new LorentzFrame(referenceFrameBeta);
+        }
+
+        return referenceFrame;
+    }
+
     /**
      * Returns the speed of the reference frame viewing the represented object
      * 
@@ -0,0 +1,329 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * Exports a diagram as an SVG image. The shapes are written to the file as the
+ * diagram is drawn, so no image is ever held in memory, however large the
+ * diagram is drawn. The image is drawn by the same {@code DiagramPainter} as
+ * the diagram on screen, so the two look the same.
+ * 
+ * @author Jonathan Elsner
+ * @see DiagramRenderer
+ */
+public class SvgExporter {
+
+    // Size of the buffer between the painter and the file
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The font of a Graphics2D that hasn't been given one
+    private static final Font DEFAULT_FONT = new Font(Font.DIALOG, Font.PLAIN, 12);
+
+    private final DiagramRenderer renderer;
+
+    /**
+     * Constructs an exporter that draws the diagram the same way as a renderer,
+     * at the same size
+     * 
+     * @param renderer the events and settings to draw with
+     */
+    public SvgExporter(DiagramRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Writes the diagram seen by an observer to an SVG file
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @param file         the file to write
+     * @throws IOException              if the file can't be written
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1}
+     */
+    public void export(double observerBeta, File file) throws IOException {
+        // Transform before creating the file, so a bad speed leaves it alone
+        TransformedFrame frame = renderer.transform(observerBeta);
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            export(frame, out, () -> false, null);
+        }
+    }
+
+    /**
+     * Writes the diagram seen by an observer to an SVG file, reporting how far
+     * along it is
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @param file         the file to write
+     * @param progress     called with the number of objects drawn so far, out of
+     *                     {@link DiagramRenderer#getEventCount()}, or
+     *                     {@code null}
+     * @throws IOException              if the file can't be written
+     * @throws InterruptedException     if the calling thread is interrupted, which
+     *                                  stops the export
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1}
+     */
+    public void export(double observerBeta, File file, IntConsumer progress)
+            throws IOException, InterruptedException {
+        TransformedFrame frame = renderer.transform(observerBeta);
+
+        boolean finished;
+        try (OutputStream out = new FileOutputStream(file)) {
+            finished = export(frame, out, Thread.currentThread()::isInterrupted, progress);
+        }
+
+        if (!finished) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Writes the diagram seen by an observer to a stream as an SVG image. The
+     * stream is flushed but not closed.
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @param out          the stream to write to
+     * @throws IOException              if the stream can't be written to
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1}
+     */
+    public void export(double observerBeta, OutputStream out) throws IOException {
+        export(renderer.transform(observerBeta), out, () -> false, null);
+    }
+
+    /**
+     * Writes the frame as an SVG image, stopping early if it is cancelled
+     * 
+     * @return {@code true} if the whole image was written
+     */
+    private boolean export(TransformedFrame frame, OutputStream out, BooleanSupplier cancelled, IntConsumer progress)
+            throws IOException {
+        DiagramPainter painter = renderer.getPainter();
+        Font font = painter.getFont() != null ? painter.getFont() : DEFAULT_FONT;
+        int width = painter.getWidth();
+        int height = painter.getHeight();
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height
+                + "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+
+        // The diagram doesn't paint a background, so paint it white like an exported
+        // image
+        writer.write("<rect width=\"" + width + "\" height=\"" + height + "\" fill=\"#ffffff\"/>\n");
+
+        writer.write("<g stroke-width=\"" + DiagramPainter.LINE_WIDTH + "\" stroke-linecap=\"square\" font-family=\""
+                + escape(fontFamily(font)) + "\" font-size=\"" + font.getSize() + "\""
+                + (font.isBold() ? " font-weight=\"bold\"" : "") + (font.isItalic() ? " font-style=\"italic\"" : "")
+                + ">\n");
+
+        boolean finished;
+        try {
+            finished = painter.paint(new SvgSurface(writer, painter.getOriginX(), painter.getOriginY()), frame,
+                    cancelled, progress);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        writer.write("</g>\n</svg>\n");
+        writer.flush();
+
+        return finished;
+    }
+
+    /**
+     * Returns the CSS font family closest to a Java font, since the logical fonts
+     * Java uses by default aren't known outside of Java
+     */
+    private static String fontFamily(Font font) {
+        switch (font.getFamily()) {
+        case Font.DIALOG:
+        case Font.DIALOG_INPUT:
+        case Font.SANS_SERIF:
+            return "sans-serif";
+        case Font.SERIF:
+            return "serif";
+        case Font.MONOSPACED:
+            return "monospace";
+        default:
+            return "'" + font.getFamily() + "', sans-serif";
+        }
+    }
+
+    /**
+     * Escapes the characters that have a meaning in XML text and attributes
+     */
+    private static String escape(String str) {
+        StringBuilder escaped = null;
+
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            String replacement;
+
+            switch (c) {
+            case '&':
+                replacement = "&amp;";
+                break;
+            case '<':
+                replacement = "&lt;";
+                break;
+            case '>':
+                replacement = "&gt;";
+                break;
+            case '"':
+                replacement = "&quot;";
+                break;
+            case '\'':
+                replacement = "&apos;";
+                break;
+            default:
+                // Control characters aren't allowed in XML at all
+                replacement = c < 0x20 && c != '\t' && c != '\n' && c != '\r' ? "" : null;
+            }
+
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(str.length() + 16).append(str, 0, i);
+            }
+
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+
+        return escaped != null ? escaped.toString() : str;
+    }
+
+    /**
+     * Writes each shape as an SVG element, flipping the coordinates of the graph,
+     * where t increases upwards, to those of the image, where y increases
+     * downwards
+     */
+    private static class SvgSurface implements DiagramSurface {
+        private final Writer writer;
+        private final int originX;
+        private final int originY;
+
+        // The current color as SVG attributes, e.g. "#332288" and opacity ""
+        private int argb = 0xFF000000;
+        private String color = "#000000";
+        private String opacity = "";
+
+        private SvgSurface(Writer writer, int originX, int originY) {
+            this.writer = writer;
+            this.originX = originX;
+            this.originY = originY;
+        }
+
+        @Override
+        public void setColor(Color color) {
+            // The painter changes color for nearly every shape, usually to the same few
+            if (color.getRGB() == argb) {
+                return;
+            }
+
+            argb = color.getRGB();
+            this.color = "#" + Integer.toHexString((argb & 0xFFFFFF) | 0x1000000).substring(1);
+            this.opacity = color.getAlpha() == 255 ? ""
+                    : " opacity=\"" + (float) (color.getAlpha() / 255.0) + "\"";
+        }
+
+        @Override
+        public void drawLine(int x1, int t1, int x2, int t2) {
+            write("<line x1=\"" + (originX + x1) + "\" y1=\"" + (originY - t1) + "\" x2=\"" + (originX + x2)
+                    + "\" y2=\"" + (originY - t2) + "\" stroke=\"" + color + "\"" + opacity + "/>\n");
+        }
+
+        @Override
+        public void drawPolyline(int[] x, int[] t, int count) {
+            StringBuilder points = new StringBuilder();
+            for (int p = 0; p < count; p++) {
+                if (p > 0) {
+                    points.append(' ');
+                }
+                points.append(originX + x[p]).append(',').append(originY - t[p]);
+            }
+
+            write("<polyline points=\"" + points + "\" fill=\"none\" stroke=\"" + color + "\"" + opacity + "/>\n");
+        }
+
+        @Override
+        public void fillOval(int x, int t, int width, int height) {
+            // Doubled, so the center stays a whole number for odd sizes
+            int cx2 = 2 * (originX + x) + width;
+            int cy2 = 2 * (originY - t) - height;
+
+            if (width == height) {
+                write("<circle cx=\"" + half(cx2) + "\" cy=\"" + half(cy2) + "\" r=\"" + half(width) + "\" fill=\""
+                        + color + "\"" + opacity + "/>\n");
+            } else {
+                write("<ellipse cx=\"" + half(cx2) + "\" cy=\"" + half(cy2) + "\" rx=\"" + half(width) + "\" ry=\""
+                        + half(height) + "\" fill=\"" + color + "\"" + opacity + "/>\n");
+            }
+        }
+
+        @Override
+        public void fillRect(int x, int t, int width, int height) {
+            write("<rect x=\"" + (originX + x) + "\" y=\"" + (originY - t - height) + "\" width=\"" + width
+                    + "\" height=\"" + height + "\" fill=\"" + color + "\"" + opacity + "/>\n");
+        }
+
+        @Override
+        public void drawString(String str, int x, int t) {
+            write("<text x=\"" + (originX + x) + "\" y=\"" + (originY - t) + "\" fill=\"" + color + "\"" + opacity
+                    + ">" + escape(str) + "</text>\n");
+        }
+
+        /**
+         * Returns half of a number, without a decimal point if it is whole
+         */
+        private static String half(int doubled) {
+            return doubled % 2 == 0 ? String.valueOf(doubled / 2) : String.valueOf(doubled / 2.0);
+        }
+
+        /**
+         * Writes an element, passing errors out through the painter unchecked
+         */
+        private void write(String element) {
+            try {
+                writer.write(element);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
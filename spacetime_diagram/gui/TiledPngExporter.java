@@ -0,0 +1,255 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Exports a diagram as a PNG image of any size, drawing it a strip of rows at a
+ * time. Strips are drawn and compressed in parallel and written in order, and
+ * only a few strips per thread are ever in memory at once, so the memory used
+ * doesn't grow with the size of the image.
+ * 
+ * The image is the diagram drawn by a renderer, scaled up. Lines, dots and
+ * labels are scaled with everything else, so the image looks the same as the
+ * diagram on screen, with more detail.
+ * 
+ * @author Jonathan Elsner
+ * @see DiagramRenderer
+ * @see PngEncoder
+ */
+public class TiledPngExporter {
+
+    // Roughly how many pixels are drawn at once in each strip
+    private static final int STRIP_PIXELS = 1 << 22;
+
+    // Number of strips per thread that can be drawn but not yet written
+    private static final int STRIPS_PER_THREAD = 2;
+
+    private final DiagramRenderer renderer;
+    private final double scale;
+    private final int threads;
+    private final int width;
+    private final int height;
+    private final int stripHeight;
+
+    /**
+     * Constructs an exporter that draws the strips on one thread per core
+     * 
+     * @param renderer draws the diagram
+     * @param scale    how many times larger than the renderer's images the image
+     *                 is
+     * @throws IllegalArgumentException if {@code scale} is not positive
+     */
+    public TiledPngExporter(DiagramRenderer renderer, double scale) {
+        this(renderer, scale, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an exporter that draws the strips on the specified number of
+     * threads
+     * 
+     * @param renderer draws the diagram
+     * @param scale    how many times larger than the renderer's images the image
+     *                 is
+     * @param threads  the number of strips drawn at once
+     * @throws IllegalArgumentException if {@code scale} is not positive, the image
+     *                                  would be too large for a PNG, or
+     *                                  {@code threads < 1}
+     */
+    public TiledPngExporter(DiagramRenderer renderer, double scale, int threads) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads < 1: " + threads);
+        }
+
+        double width = Math.ceil(renderer.getWidth() * scale);
+        double height = Math.ceil(renderer.getHeight() * scale);
+        if (width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image too large: " + width + "x" + height);
+        }
+
+        this.renderer = renderer;
+        this.scale = scale;
+        this.threads = threads;
+        this.width = (int) width;
+        this.height = (int) height;
+        this.stripHeight = Math.max(1, Math.min(this.height, STRIP_PIXELS / this.width));
+    }
+
+    /**
+     * Returns the width of the image
+     * 
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image
+     * 
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Writes the diagram seen by an observer to a PNG file
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @param file         the file to write
+     * @param progress     called with the number of rows written so far, or
+     *                     {@code null}
+     * @throws IOException              if the file can't be written
+     * @throws InterruptedException     if the calling thread is interrupted, which
+     *                                  stops the export
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1} or it is NaN
+     */
+    public void export(double observerBeta, File file, IntConsumer progress)
+            throws IOException, InterruptedException {
+        // Check the speed before creating the file, so a bad speed leaves it alone
+        checkBeta(observerBeta);
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            export(observerBeta, out, progress);
+        }
+    }
+
+    /**
+     * Writes the diagram seen by an observer to a stream as a PNG image. The
+     * stream is flushed but not closed.
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @param out          the stream to write to
+     * @param progress     called with the number of rows written so far, or
+     *                     {@code null}
+     * @throws IOException              if the stream can't be written to
+     * @throws InterruptedException     if the calling thread is interrupted, which
+     *                                  stops the export
+     * @throws IllegalArgumentException if {@code |observerBeta| > 1} or it is NaN
+     */
+    public void export(double observerBeta, OutputStream out, IntConsumer progress)
+            throws IOException, InterruptedException {
+        checkBeta(observerBeta);
+
+        PngEncoder encoder = new PngEncoder(out, width, height);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<BufferedImage> strips = ThreadLocal
+                .withInitial(() -> new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_RGB));
+        ThreadLocal<PngEncoder.StripCompressor> compressors = ThreadLocal
+                .withInitial(() -> new PngEncoder.StripCompressor(width));
+
+        ArrayDeque<Future<PngEncoder.CompressedStrip>> inFlight = new ArrayDeque<>();
+        int submitted = 0;
+
+        try {
+            for (int written = 0; written < height;) {
+                while (submitted < height && inFlight.size() < threads * STRIPS_PER_THREAD) {
+                    int top = submitted;
+                    int rows = Math.min(stripHeight, height - top);
+                    submitted += rows;
+
+                    inFlight.add(pool.submit(() -> {
+                        BufferedImage strip = strips.get();
+                        drawStrip(observerBeta, strip, top, rows);
+
+                        int[] rgb = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+                        return compressors.get().compress(rgb, 0, width, rows);
+                    }));
+                }
+
+                PngEncoder.CompressedStrip strip;
+                try {
+                    strip = inFlight.remove().get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IOException(cause);
+                }
+
+                encoder.write(strip);
+                written = Math.min(height, written + stripHeight);
+
+                if (progress != null) {
+                    progress.accept(written);
+                }
+            }
+
+            encoder.finish();
+        } finally {
+            // Stop drawing strips nobody will write
+            inFlight.forEach(f -> f.cancel(true));
+            pool.shutdownNow();
+        }
+    }
+
+    private static void checkBeta(double observerBeta) {
+        if (!(Math.abs(observerBeta) <= 1)) {
+            throw new IllegalArgumentException("|beta| > 1 or NaN: " + observerBeta);
+        }
+    }
+
+    /**
+     * Draws rows {@code [top, top + rows)} of the image into the top of a strip
+     */
+    private void drawStrip(double observerBeta, BufferedImage strip, int top, int rows) {
+        // The rows of the renderer's image the strip covers, rounded outwards
+        int rendererTop = (int) Math.floor(top / scale);
+        int rendererBottom = (int) Math.ceil((top + rows) / scale);
+        TransformedFrame frame = renderer.transform(observerBeta, rendererTop, rendererBottom);
+
+        Graphics2D g2d = strip.createGraphics();
+        try {
+            g2d.setColor(Color.white);
+            g2d.fillRect(0, 0, width, rows);
+
+            g2d.clipRect(0, 0, width, rows);
+            g2d.translate(0, -top);
+            g2d.scale(scale, scale);
+
+            renderer.getPainter().paint(g2d, frame);
+        } finally {
+            g2d.dispose();
+        }
+    }
+}
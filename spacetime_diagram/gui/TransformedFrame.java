@@ -0,0 +1,287 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import spacetime_diagram.LorentzFrame;
+import spacetime_diagram.LorentzTransform;
+
+/**
+ * The coordinates of the objects in a {@code RestFrameSnapshot} as seen by an
+ * observer moving at a particular speed. Once computed, drawing the frame needs
+ * no more physics math until the observer or the objects change.
+ * 
+ * If a {@code Viewport} is given, the frame only holds the objects that are
+ * visible in it. Entry {@code k} of the frame's arrays is then the object at
+ * index {@code rows[k]} of the snapshot.
+ * 
+ * Large frames are transformed in parallel on the common
+ * {@code ForkJoinPool}, each task transforming its own slice of the arrays.
+ * 
+ * @author Jonathan Elsner
+ * @see RestFrameSnapshot
+ * @see Diagram
+ */
+class TransformedFrame {
+
+    /**
+     * The snapshot this frame was computed from
+     */
+    final RestFrameSnapshot rest;
+
+    /**
+     * The speed of the observer as a fraction of the speed of light
+     */
+    final double observerBeta;
+
+    /**
+     * The speed of light when this frame was computed
+     */
+    final double c;
+
+    /**
+     * The reference frame of the observer
+     */
+    final LorentzFrame frame;
+
+    /**
+     * The part of the diagram the frame was culled to, or {@code null} if it holds
+     * every object
+     */
+    final Viewport viewport;
+
+    /**
+     * The number of objects in the frame
+     */
+    final int size;
+
+    /**
+     * The index in the snapshot of each object in the frame
+     */
+    final int[] rows;
+
+    /**
+     * The t-coordinate of each object according to the observer
+     */
+    final double[] t;
+
+    /**
+     * The x-coordinate of each object according to the observer
+     */
+    final double[] x;
+
+    /**
+     * The speed of each traveller according to the observer. Meaningless for
+     * events.
+     */
+    final double[] beta;
+
+    /**
+     * The x-coordinate of each traveller at {@code t = 0} according to the
+     * observer. Meaningless for events.
+     */
+    final double[] xIntercept;
+
+    /**
+     * The default number of objects below which frames are transformed on a
+     * single thread
+     */
+    static final int DEFAULT_PARALLEL_THRESHOLD = 50_000;
+
+    /**
+     * Transforms the snapshot into the reference frame of the observer on the
+     * calling thread
+     * 
+     * @param rest         the rest frame coordinates of the objects
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     */
+    TransformedFrame(RestFrameSnapshot rest, double observerBeta) {
+        this(rest, observerBeta, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Transforms the snapshot into the reference frame of the observer, splitting
+     * the work across cores if there are at least {@code parallelThreshold}
+     * objects.
+     * 
+     * @param rest              the rest frame coordinates of the objects
+     * @param observerBeta      the speed of the observer as a fraction of the speed
+     *                          of light
+     * @param parallelThreshold the number of objects below which the frame is
+     *                          transformed on the calling thread
+     */
+    TransformedFrame(RestFrameSnapshot rest, double observerBeta, int parallelThreshold) {
+        this(rest, observerBeta, parallelThreshold, null);
+    }
+
+    /**
+     * Transforms the objects in the snapshot that are visible in the viewport into
+     * the reference frame of the observer. Large snapshots use their spatial index
+     * so that objects far from the viewport are never transformed at all.
+     * 
+     * @param rest              the rest frame coordinates of the objects
+     * @param observerBeta      the speed of the observer as a fraction of the speed
+     *                          of light
+     * @param parallelThreshold the number of objects below which the frame is
+     *                          transformed on the calling thread
+     * @param viewport          the visible part of the diagram, or {@code null} to
+     *                          keep every object
+     */
+    TransformedFrame(RestFrameSnapshot rest, double observerBeta, int parallelThreshold, Viewport viewport) {
+        this.rest = rest;
+        this.observerBeta = observerBeta;
+        this.frame = new LorentzFrame(observerBeta);
+        this.c = frame.getC();
+        this.viewport = viewport;
+
+        int[] candidates = viewport == null ? null : rest.candidates(observerBeta, viewport);
+        if (candidates == null) {
+            candidates = new int[rest.size];
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = i;
+            }
+        }
+
+        rows = candidates;
+
+        int n = rows.length;
+        t = new double[n];
+        x = new double[n];
+        beta = new double[n];
+        xIntercept = new double[n];
+
+        if (n < parallelThreshold) {
+            transformRange(0, n);
+        } else {
+            ForkJoinPool.commonPool().invoke(new TransformTask(this, 0, n, parallelThreshold));
+        }
+
+        size = viewport == null ? n : cull(viewport);
+    }
+
+    /**
+     * Transforms the objects in {@code [from, to)} into the reference frame
+     */
+    private void transformRange(int from, int to) {
+        // Gather the candidates' rest frame coordinates, then transform them in place
+        for (int k = from; k < to; k++) {
+            int i = rows[k];
+            x[k] = rest.x[i];
+            t[k] = rest.t[i];
+            beta[k] = rest.beta[i];
+        }
+
+        frame.transform(x, t, x, t, from, to);
+        frame.velocities(beta, beta, from, to);
+
+        for (int k = from; k < to; k++) {
+            xIntercept[k] = x[k] - beta[k] * t[k];
+        }
+    }
+
+    /**
+     * Moves the objects that are visible in the viewport to the front of the
+     * arrays, keeping their order
+     * 
+     * @return the number of visible objects
+     */
+    private int cull(Viewport viewport) {
+        int visible = 0;
+
+        for (int k = 0; k < rows.length; k++) {
+            int i = rows[k];
+
+            // Piecewise travellers bend, so their first segment says little about
+            // where they are, and they are always kept
+            boolean keep;
+            if (rest.worldlines[i] != null) {
+                keep = true;
+            } else if (rest.travellers[i]) {
+                keep = viewport.intersectsWorldLine(xIntercept[k], beta[k]);
+            } else {
+                keep = viewport.contains(x[k], t[k]);
+            }
+
+            if (keep) {
+                rows[visible] = i;
+                x[visible] = x[k];
+                t[visible] = t[k];
+                beta[visible] = beta[k];
+                xIntercept[visible] = xIntercept[k];
+                visible++;
+            }
+        }
+
+        return visible;
+    }
+
+    /**
+     * Whether this frame is still accurate for the specified observer and
+     * viewport
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @param viewport     the visible part of the diagram, or {@code null} for
+     *                     every object
+     * @return {@code true} if the observer, the viewport and the speed of light
+     *         are unchanged
+     */
+    boolean isFor(double observerBeta, Viewport viewport) {
+        return this.observerBeta == observerBeta && c == LorentzTransform.getC()
+                && Objects.equals(this.viewport, viewport);
+    }
+
+    /**
+     * Transforms a slice of a frame, splitting it in half until the slices are
+     * small enough to be worth doing on one thread.
+     */
+    private static class TransformTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // The smallest slice that is still split across threads
+        private static final int MIN_SLICE = 4096;
+
+        private final TransformedFrame frame;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        private TransformTask(TransformedFrame frame, int from, int to, int threshold) {
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            int length = to - from;
+
+            if (length <= Math.max(MIN_SLICE, threshold / ForkJoinPool.getCommonPoolParallelism())) {
+                frame.transformRange(from, to);
+            } else {
+                int mid = from + length / 2;
+                invokeAll(new TransformTask(frame, from, mid, threshold), new TransformTask(frame, mid, to, threshold));
+            }
+        }
+    }
+}
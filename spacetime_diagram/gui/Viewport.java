@@ -0,0 +1,137 @@
+/*   
+Copyright (C) 2021  Jonathan Elsner
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package spacetime_diagram.gui;
+
+import java.util.Objects;
+
+import spacetime_diagram.LorentzFrame;
+
+/**
+ * The rectangle of x and t visible on a diagram, in the units of the diagram
+ * and according to the observer drawing it. Objects outside of it do not need
+ * to be drawn.
+ * 
+ * @author Jonathan Elsner
+ * @see DiagramPainter
+ * @see TransformedFrame
+ */
+class Viewport {
+
+    final double minX;
+    final double maxX;
+    final double minT;
+    final double maxT;
+
+    // The box worldlines are clipped to when they are drawn
+    final double lineHalfWidth;
+    final double lineHeight;
+
+    /**
+     * Constructs a viewport
+     * 
+     * @param minX          the left edge of the viewport
+     * @param maxX          the right edge of the viewport
+     * @param minT          the bottom edge of the viewport
+     * @param maxT          the top edge of the viewport
+     * @param lineHalfWidth how far left and right of the t-axis worldlines are
+     *                      drawn
+     * @param lineHeight    how far up from the x-axis worldlines are drawn
+     * @see DiagramPainter#drawWorldLine(java.awt.Graphics2D, int, double)
+     */
+    Viewport(double minX, double maxX, double minT, double maxT, double lineHalfWidth, double lineHeight) {
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minT = minT;
+        this.maxT = maxT;
+        this.lineHalfWidth = lineHalfWidth;
+        this.lineHeight = lineHeight;
+    }
+
+    /**
+     * Whether an event at the specified coordinates is visible
+     * 
+     * @param x the x-coordinate of the event according to the observer
+     * @param t the t-coordinate of the event according to the observer
+     * @return {@code true} if the event is inside the viewport
+     */
+    boolean contains(double x, double t) {
+        return minX <= x && x <= maxX && minT <= t && t <= maxT;
+    }
+
+    /**
+     * Whether the worldline drawn from the x-axis might cross the viewport. The
+     * line is clipped the same way the painter clips it, and the test is
+     * conservative: lines that just miss the viewport may also be reported.
+     * 
+     * @param xIntercept the x-coordinate of the worldline at {@code t = 0}
+     * @param beta       the speed of the traveller according to the observer
+     * @return {@code true} if some part of the worldline may be visible
+     */
+    boolean intersectsWorldLine(double xIntercept, double beta) {
+        double dt = lineHeight;
+        double dx = dt * beta;
+
+        if (Math.abs(xIntercept + dx) > lineHalfWidth) {
+            dx = Math.copySign(lineHalfWidth, dx) - xIntercept;
+            dt = dx / beta;
+        }
+
+        // Compare the bounding box of the drawn segment with the viewport
+        double endX = xIntercept + dx;
+
+        return Math.max(xIntercept, endX) >= minX && Math.min(xIntercept, endX) <= maxX && Math.max(0, dt) >= minT
+                && Math.min(0, dt) <= maxT;
+    }
+
+    /**
+     * Returns the smallest rectangle in the rest frame that contains everything the
+     * observer can see in this viewport. The viewport is a rectangle for the
+     * observer, but a parallelogram in the rest frame.
+     * 
+     * @param observerBeta the speed of the observer as a fraction of the speed of
+     *                     light
+     * @return {@code {minX, maxX, minT, maxT}} in the rest frame
+     */
+    double[] restFrameBounds(double observerBeta) {
+        double[] xs = { minX, maxX, minX, maxX };
+        double[] ts = { minT, minT, maxT, maxT };
+
+        new LorentzFrame(observerBeta).inverse(xs, ts, xs, ts, 0, xs.length);
+
+        return new double[] { Math.min(Math.min(xs[0], xs[1]), Math.min(xs[2], xs[3])),
+                Math.max(Math.max(xs[0], xs[1]), Math.max(xs[2], xs[3])),
+                Math.min(Math.min(ts[0], ts[1]), Math.min(ts[2], ts[3])),
+                Math.max(Math.max(ts[0], ts[1]), Math.max(ts[2], ts[3])) };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Viewport)) {
+            return false;
+        }
+
+        Viewport other = (Viewport) obj;
+        return minX == other.minX && maxX == other.maxX && minT == other.minT && maxT == other.maxT
+                && lineHalfWidth == other.lineHalfWidth && lineHeight == other.lineHeight;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(minX, maxX, minT, maxT, lineHalfWidth, lineHeight);
+    }
+}